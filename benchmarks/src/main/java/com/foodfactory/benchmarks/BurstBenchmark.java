@@ -0,0 +1,112 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.OvenPlacementEngine;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import com.foodfactory.model.Product;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of products arrives on a line at once, and every one of them goes to the ovens, cooks, and comes back to
+ * the line in order: the whole trip of the burst, but the cooking time. Two ways of doing it:
+ * - oneByOne: take(), place() and putAfter() for every product; what the Kitchen did before the batches.
+ * - inBatches: drainTo(), placeAll() and putAfterAll() for every 16 products; what it does now.
+ * Both place the products in the same ovens with the same policy, so the difference is what the batches save.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class BurstBenchmark {
+
+    private static final int BATCH_SIZE = 16; // The Kitchen's.
+    private static final int PRODUCT_SIZE = 20;
+    private static final int OVENS = 4;
+
+    @Param({"16", "256", "4096"})
+    public int burst;
+
+    private AssemblyLine assemblyLine;
+    private OvenPlacementEngine ovens;
+
+    @Setup(Level.Trial)
+    public void silenceTheLog() {
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+    }
+
+    @Setup(Level.Invocation)
+    public void burstArrives() {
+
+        assemblyLine = new AssemblyLine(0, new DiscreteEventScheduler());
+        ovens = new OvenPlacementEngine(OvenPlacementEngine.PlacementPolicy.FIRST_FIT);
+
+        for (int i = 0; i < OVENS; i++) {
+            ovens.addOven(new OvenImpl(burst * PRODUCT_SIZE / OVENS)); // Room for all of it.
+        }
+
+        List<Food> products = new ArrayList<>(burst);
+
+        for (long order = 0; order < burst; order++) {
+            Food food = new Food(PRODUCT_SIZE, 10L);
+            food.setAssemblyLineId(0);
+            food.setOrderNumber(order);
+            products.add(food);
+        }
+
+        assemblyLine.putBackAll(products); // As if the line had made them, all at once.
+    }
+
+    @Benchmark
+    public int oneByOne() {
+
+        List<OvenSlot> slots = new ArrayList<>(burst);
+        Product product;
+
+        while ((product = assemblyLine.take()) != null) {
+            slots.add(ovens.place(product));
+        }
+
+        for (OvenSlot slot : slots) {
+            slot.release();
+            assemblyLine.putAfter(slot.getProduct());
+        }
+
+        return assemblyLine.consumeFinishedProducts(finished -> {});
+    }
+
+    @Benchmark
+    public int inBatches() {
+
+        List<List<OvenSlot>> batches = new ArrayList<>(burst / BATCH_SIZE + 1);
+        List<Product> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (assemblyLine.drainTo(batch, BATCH_SIZE) > 0) {
+            batches.add(Arrays.asList(ovens.placeAll(batch)));
+            batch.clear();
+        }
+
+        for (List<OvenSlot> slots : batches) {
+            List<Product> cooked = new ArrayList<>(slots.size());
+            for (OvenSlot slot : slots) {
+                slot.release();
+                cooked.add(slot.getProduct());
+            }
+            assemblyLine.putAfterAll(cooked);
+        }
+
+        return assemblyLine.consumeFinishedProducts(finished -> {});
+    }
+}
@@ -0,0 +1,113 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.controllers.KitchenDispatcher;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Kitchen's dispatch path, with 1, 2, 4 or one dispatch worker per core ("N"): every line has 16 products
+ * waiting, and the workers take them to the ovens (fair shares, batches, placement, credits...) until all of them are
+ * cooking; the time from the wake up to the last product in an oven.
+ *
+ * Every worker gets the same lines, so the shards are sized alike whatever the workers; the ones that run out of their
+ * own steal from the rest. A fresh kitchen is built, and its workers parked, before every call; on a virtual clock
+ * nobody advances, so no timer fires and no product leaves the ovens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    private static final int PRODUCTS_PER_LINE = 16;
+    private static final int PRODUCT_SIZE = 20;
+    private static final int OVENS = 4;
+    private static final int STORES = 2;
+    private static final String ONE_PER_CORE = "N";
+
+    @Param({"1", "2", "4", ONE_PER_CORE})
+    public String workers;
+
+    @Param({"8", "64"})
+    public int linesPerWorker;
+
+    private Kitchen kitchen;
+    private long products;
+
+    @Setup(Level.Trial)
+    public void silenceTheLog() {
+        EventLog.getInstance().setLevel(LogLevel.OFF); // Or the log's writer would be measured as well.
+    }
+
+    @Setup(Level.Invocation)
+    public void buildKitchen() {
+
+        int workerCount = ONE_PER_CORE.equals(workers) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(workers);
+        int lines = workerCount * linesPerWorker;
+        products = (long) lines * PRODUCTS_PER_LINE;
+
+        kitchen = new Kitchen(new DiscreteEventScheduler());
+        kitchen.setDispatchWorkers(workerCount);
+
+        // The ovens take every product, so the call ends when the last one is in.
+        double ovenSize = products * PRODUCT_SIZE / OVENS;
+
+        for (int i = 0; i < OVENS; i++) {
+            kitchen.addOven(new OvenImpl(ovenSize));
+        }
+        for (int i = 0; i < STORES; i++) {
+            kitchen.addStore(new StoreImpl(ovenSize / 4));
+        }
+
+        for (int n = 0; n < lines; n++) {
+
+            AssemblyLine assemblyLine = kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler()));
+            int id = assemblyLine.getId();
+
+            List<Food> products = new ArrayList<>();
+
+            for (long order = 0; order < PRODUCTS_PER_LINE; order++) {
+                Food food = new Food(PRODUCT_SIZE, 10L);
+                food.setAssemblyLineId(id);
+                food.setOrderNumber(order);
+                products.add(food);
+            }
+
+            assemblyLine.putBackAll(products); // As if the line had made them; nobody is woken up for these.
+        }
+
+        kitchen.start(); // The workers park until the call wakes them up.
+    }
+
+    @Benchmark
+    public long dispatchToTheOvens() {
+
+        kitchen.getDispatcher().signal(KitchenDispatcher.WakeUpReason.CAPACITY_CHANGED);
+
+        while (kitchen.countProductsInOvens() < products) {
+            Thread.yield(); // The workers might need this core more than we do.
+        }
+
+        return kitchen.countProductsInOvens();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopKitchen() {
+        kitchen.stop();
+        kitchen.kill(); // The workers' threads go away with it.
+    }
+}
@@ -0,0 +1,98 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.ingress.IngressClient;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.view.AssemblyLineServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Real lines over the loopback (see IngressServer), against a live kitchen with room to spare.
+ *
+ * roundTrip is one product submitted, until the server accepts it: the network, the selector and the line.
+ * throughput is products per second, from submitted to delivered back: the client keeps submitting batches to
+ * the lines it has credits for, and takes the finished products as they come. The products cook in no time, so
+ * what limits it is the ingress, and the tick of the live timer (the credits of a line come back as its products
+ * finish).
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class IngressServerBenchmark {
+
+    private static final int LINES = 32;
+    private static final int BATCH = 256;
+
+    private AssemblyLineServer server;
+    private IngressClient client;
+    private int[] lines;
+    private int nextLine = 0;
+    private final int[] sizes = new int[BATCH];
+    private final int[] cookTimes = new int[BATCH];
+
+    @Setup(Level.Trial)
+    public void startFactory() throws Exception {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        Kitchen kitchen = new Kitchen();
+        kitchen.addOven(new OvenImpl(1_000_000)); // Room for the credit window of every line.
+        kitchen.addStore(new StoreImpl(1000));
+
+        server = new AssemblyLineServer(kitchen);
+        int port = server.listen(new InetSocketAddress("127.0.0.1", 0)).getPort();
+
+        client = IngressClient.connect(new InetSocketAddress("127.0.0.1", port));
+        lines = new int[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = client.registerAssemblyLine();
+        }
+
+        Arrays.fill(sizes, 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopFactory() throws IOException {
+        client.close();
+        server.kill();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int roundTrip() throws IOException {
+
+        int line = lines[nextLine++ % LINES];
+
+        client.awaitCredits(line, 1);
+        int accepted = client.submit(line, sizes, cookTimes, 1);
+        client.drainFinished(line);
+
+        return accepted;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int throughput() throws IOException {
+
+        int line = lines[nextLine++ % LINES];
+
+        client.awaitCredits(line, BATCH); // Meanwhile, the other lines' products keep coming back.
+        int accepted = client.submit(line, sizes, cookTimes, BATCH);
+        client.drainFinished(line);
+
+        return accepted;
+    }
+}
@@ -0,0 +1,39 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.model.Product;
+import com.foodfactory.model.Store;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The StoreImpl as it was before it kept count of its room, only as the baseline of StoreImplBenchmark: every put
+ * walks the stored products to add up their sizes, and a product that does not fit is dropped.
+ */
+public class LegacyStore implements Store {
+
+    private final int size;
+    private final ConcurrentLinkedQueue<Product> storedProducts = new ConcurrentLinkedQueue<>();
+
+    public LegacyStore(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public void put(Product product) {
+        double currentOccupiedSize = storedProducts.stream().mapToDouble(Product::size).sum();
+
+        if (currentOccupiedSize + product.size() <= size) {
+            storedProducts.add(product);
+        }
+    }
+
+    @Override
+    public Product take() {
+        return storedProducts.poll();
+    }
+
+    @Override
+    public void take(Product product) {
+        // It never took a given product; take() is the only way out.
+    }
+}
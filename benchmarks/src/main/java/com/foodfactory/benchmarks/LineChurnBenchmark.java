@@ -0,0 +1,99 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lines coming and going while a live kitchen dispatches the rest: every operation plugs a new line in, starts it,
+ * and retires the oldest of the last CHURNED ones (which leaves on its own, once its products are back). The steady
+ * lines (the param) stay all along, with the traffic of the config. The churned ones would produce fast, but they
+ * live a few milliseconds: most of them retire before their first credits, so this is mostly the registry and the
+ * retirement under a dispatching kitchen (FactorySimulationTest drains a line with products cooking). The score is
+ * how many operations the kitchen takes per second; the retirements that completed are printed after every iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class LineChurnBenchmark {
+
+    private static final int CHURNED = 256;
+    private static final LoadProfile CHURNED_LOAD = LoadProfile.parse("poisson:1000", "uniform:10:30", "uniform:0:1", 1);
+
+    @Param({"1000", "2000"})
+    public int lines;
+
+    private Kitchen kitchen;
+    private final Queue<AssemblyLine> churnedLines = new ArrayDeque<>();
+    private final AtomicLong retired = new AtomicLong(0);
+    private final AtomicLong retiredProducts = new AtomicLong(0); // What the retired lines had made, all back on them.
+    private long retiring = 0;
+
+    @Setup(Level.Trial)
+    public void startKitchen() {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        kitchen = new Kitchen();
+        kitchen.addOven(new OvenImpl(1_000_000)); // Credits for every line: the churned ones too.
+        kitchen.addStore(new StoreImpl(10_000));
+        kitchen.start();
+
+        for (int i = 0; i < lines; i++) {
+            kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler())).start();
+        }
+        for (int i = 0; i < CHURNED; i++) {
+            churnedLines.add(startChurnedLine());
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRetired() {
+        System.out.println();
+        System.out.println(lines + " lines: " + retired.get() + " of " + retiring + " retired lines gone (with "
+                + retiredProducts.get() + " products), " + kitchen.getAssemblyLines().size() + " in the registry");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopKitchen() {
+        kitchen.getAssemblyLines().forEach(AssemblyLine::kill);
+        kitchen.stop();
+        kitchen.kill();
+    }
+
+    @Benchmark
+    public AssemblyLine churn() {
+
+        churnedLines.add(startChurnedLine());
+
+        AssemblyLine oldest = churnedLines.poll();
+        retiring++;
+        kitchen.retire(oldest).thenAccept(line -> {
+            retiredProducts.addAndGet(line.consumeFinishedProducts(product -> { }));
+            retired.incrementAndGet();
+        });
+
+        return oldest;
+    }
+
+    private AssemblyLine startChurnedLine() {
+        AssemblyLine assemblyLine = kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler(), CHURNED_LOAD));
+        assemblyLine.start();
+
+        return assemblyLine;
+    }
+}
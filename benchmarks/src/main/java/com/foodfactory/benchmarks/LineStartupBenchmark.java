@@ -0,0 +1,91 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What it takes to start many lines at once, in every ProducerMode: the time to plug them in and start them is the
+ * score; the footprint they leave (heap, resident memory, threads) is printed after every iteration.
+ *
+ * The lines are live, but they have no credits: each one makes nothing, and parks after its first production time.
+ * Be careful with PLATFORM_THREADS and 100000 lines: that many threads might be more than the OS lets a process have
+ * (pick the params with -p).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineStartupBenchmark {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Param({"10000", "100000"})
+    public int lines;
+
+    @Param({"SCHEDULED", "PLATFORM_THREADS"})
+    public AssemblyLine.ProducerMode producerMode;
+
+    private Kitchen kitchen;
+
+    @Setup(Level.Iteration)
+    public void buildKitchen() {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        kitchen = new Kitchen();
+        kitchen.setProducerMode(producerMode);
+    }
+
+    @Benchmark
+    public Collection<AssemblyLine> startLines() {
+
+        for (int n = 0; n < lines; n++) {
+            kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler())).start();
+        }
+
+        return kitchen.getAssemblyLines();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printFootprint() throws IOException {
+
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        System.out.println();
+        System.out.println(lines + " lines, " + producerMode + ": heap " + heap / MEGABYTE + " MB, resident "
+                + residentMegabytes() + " MB, threads " + threads);
+
+        kitchen.getAssemblyLines().forEach(AssemblyLine::kill);
+        kitchen.stop();
+        kitchen.kill();
+    }
+
+    /**
+     * @return the resident memory of the process (Linux only; -1 elsewhere). Thread stacks are not in the heap.
+     */
+    private static long residentMegabytes() throws IOException {
+
+        if (!Files.exists(Paths.get("/proc/self/status"))) {
+            return -1;
+        }
+
+        return Files.readAllLines(Paths.get("/proc/self/status")).stream()
+                .filter(line -> line.startsWith("VmRSS:"))
+                .mapToLong(line -> Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024)
+                .findFirst().orElse(-1);
+    }
+}
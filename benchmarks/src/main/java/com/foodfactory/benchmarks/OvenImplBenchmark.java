@@ -0,0 +1,68 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a product in the oven and takes it out, with the oven already 0%, 50% or 90% full: the cost must not grow
+ * with the products cooking (it is a CAS over the occupied room, and a map entry). The threads share one oven.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class OvenImplBenchmark {
+
+    private static final double OVEN_SIZE = 10_000; // Room for 16 threads on top of the fullest oven.
+    private static final int PRODUCT_SIZE = 10;
+
+    @Param({"0", "50", "90"})
+    public int fillPercent;
+
+    private OvenImpl oven;
+
+    @Setup
+    public void fillOven() {
+
+        oven = new OvenImpl(OVEN_SIZE);
+
+        for (int i = 0; i < OVEN_SIZE * fillPercent / 100 / PRODUCT_SIZE; i++) {
+            oven.tryPut(new Food(PRODUCT_SIZE, 10L));
+        }
+    }
+
+    /**
+     * The product every thread puts in and takes out.
+     */
+    @State(Scope.Thread)
+    public static class ThreadProduct {
+        Food product = new Food(PRODUCT_SIZE, 10L);
+    }
+
+    @Benchmark
+    public OvenSlot putAndTake(ThreadProduct threadProduct) {
+
+        OvenSlot slot = oven.tryPut(threadProduct.product);
+        slot.release();
+
+        return slot;
+    }
+
+    @Threads(1)
+    public static class OneThread extends OvenImplBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends OvenImplBenchmark {
+    }
+
+    @Threads(16) // More threads than cores, on most machines.
+    public static class ManyThreads extends OvenImplBenchmark {
+    }
+}
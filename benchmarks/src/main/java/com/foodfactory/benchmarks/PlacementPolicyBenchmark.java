@@ -0,0 +1,133 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.OvenPlacementEngine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every placement policy over the same mixed traffic: most products are small, some are big, and they cook for a
+ * random while; ovens of four sizes. A call is one tick: the products whose time is up come out, and a new one goes in
+ * the oven the policy picks, or is turned away if none has room. So the time is the placement cost, index included.
+ *
+ * A little more comes in than the ovens can take, so they are always nearly full; how full they get before a product
+ * is turned away is the utilization of the policy. It is printed after every iteration, with the products turned away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class PlacementPolicyBenchmark {
+
+    private static final double[] OVEN_SIZES = {100, 200, 300, 400, 100, 200, 300, 400}; // 2000cm2.
+    private static final int TRAFFIC_LENGTH = 1 << 16; // Far longer than any product cooks, so none is placed twice at once.
+    private static final double BIG_PRODUCTS = 0.3;
+    private static final int MAX_COOK_TICKS = 176; // 88 on average: 25cm2 x 88 ticks is 110% of the ovens.
+    private static final long SEED = 42;
+
+    @Param({"FIRST_FIT", "BEST_FIT", "WORST_FIT"})
+    public OvenPlacementEngine.PlacementPolicy policy;
+
+    private OvenPlacementEngine engine;
+    private double totalSize;
+    private final Food[] products = new Food[TRAFFIC_LENGTH];
+    private final int[] cookTicks = new int[TRAFFIC_LENGTH];
+    private final PriorityQueue<Cooking> cooking = new PriorityQueue<>();
+    private long tick;
+    private double occupied;
+    private long placed;
+    private long turnedAway;
+    private double occupiedAtTurnAway;
+
+    @Setup(Level.Trial)
+    public void buildTraffic() {
+
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < TRAFFIC_LENGTH; i++) {
+            // 5 to 15cm2, or 40 to 80cm2: 25cm2 on average.
+            int size = random.nextDouble() < BIG_PRODUCTS ? 40 + random.nextInt(41) : 5 + random.nextInt(11);
+            products[i] = new Food(size, 10L);
+            cookTicks[i] = 1 + random.nextInt(MAX_COOK_TICKS);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void buildOvens() {
+
+        engine = new OvenPlacementEngine(policy);
+        totalSize = 0;
+
+        for (double size : OVEN_SIZES) {
+            engine.addOven(new OvenImpl(size));
+            totalSize += size;
+        }
+
+        cooking.clear();
+        tick = 0;
+        occupied = 0;
+        placed = 0;
+        turnedAway = 0;
+        occupiedAtTurnAway = 0;
+    }
+
+    @Benchmark
+    public OvenSlot placeOneTick() {
+
+        tick++;
+
+        while (!cooking.isEmpty() && cooking.peek().doneAt <= tick) {
+            OvenSlot done = cooking.poll().slot;
+            done.release();
+            occupied -= done.getProduct().size();
+        }
+
+        int next = (int) (tick % TRAFFIC_LENGTH);
+        OvenSlot slot = engine.place(products[next]);
+
+        if (slot != null) {
+            cooking.add(new Cooking(slot, tick + cookTicks[next]));
+            occupied += products[next].size();
+            placed++;
+        } else {
+            turnedAway++;
+            occupiedAtTurnAway += occupied;
+        }
+
+        return slot;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printUtilization() {
+        System.out.println(String.format("%n%s: %.1f%% of the ovens taken when a product was turned away, %.1f%% of the products turned away",
+                policy, turnedAway == 0 ? 0 : occupiedAtTurnAway / turnedAway / totalSize * 100,
+                100.0 * turnedAway / Math.max(1, placed + turnedAway)));
+    }
+
+    /**
+     * A product in an oven, until its tick comes.
+     */
+    private static final class Cooking implements Comparable<Cooking> {
+
+        private final OvenSlot slot;
+        private final long doneAt;
+
+        Cooking(OvenSlot slot, long doneAt) {
+            this.slot = slot;
+            this.doneAt = doneAt;
+        }
+
+        @Override
+        public int compareTo(Cooking other) {
+            return Long.compare(doneAt, other.doneAt);
+        }
+    }
+}
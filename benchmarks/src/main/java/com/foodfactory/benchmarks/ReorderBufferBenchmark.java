@@ -0,0 +1,97 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import com.foodfactory.model.ReorderBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The reorder buffer of a line (it took the place of the PriorityBlockingQueue): the threads play the timers that
+ * finish products, all of them for the same line.
+ *
+ * Every operation is a run of 16 products that finished in reverse order: the last one releases all of them.
+ * They go in one by one (put), or at once (putAll, as the batches of the Kitchen do); then they are polled out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class ReorderBufferBenchmark {
+
+    private static final int RUN_LENGTH = 16;
+
+    private final ReorderBuffer buffer = new ReorderBuffer();
+    private final AtomicLong nextSequence = new AtomicLong(0);
+
+    /**
+     * Every thread finishes its own products.
+     */
+    @State(Scope.Thread)
+    public static class ThreadProducts {
+
+        List<Food> products = new ArrayList<>();
+
+        @Setup
+        public void buildProducts() {
+            for (int i = 0; i < RUN_LENGTH; i++) {
+                products.add(new Food(10, 10L));
+            }
+        }
+    }
+
+    @Benchmark
+    public void putReversedRun(ThreadProducts threadProducts, Blackhole blackhole) {
+
+        long first = nextSequence.getAndAdd(RUN_LENGTH);
+
+        for (int i = RUN_LENGTH - 1; i >= 0; i--) {
+            buffer.put(first + i, threadProducts.products.get(i));
+        }
+
+        pollReleased(blackhole);
+    }
+
+    @Benchmark
+    public void putAllReversedRun(ThreadProducts threadProducts, Blackhole blackhole) {
+
+        long first = nextSequence.getAndAdd(RUN_LENGTH);
+
+        for (int i = 0; i < RUN_LENGTH; i++) {
+            threadProducts.products.get(i).setOrderNumber(first + RUN_LENGTH - 1 - i);
+        }
+
+        buffer.putAll(threadProducts.products, product -> ((Food) product).getOrderNumber());
+
+        pollReleased(blackhole);
+    }
+
+    private void pollReleased(Blackhole blackhole) {
+
+        Product product = buffer.poll();
+
+        while (product != null) {
+            blackhole.consume(product);
+            product = buffer.poll();
+        }
+    }
+
+    @Threads(1)
+    public static class OneThread extends ReorderBufferBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ReorderBufferBenchmark {
+    }
+
+    @Threads(16)
+    public static class ManyThreads extends ReorderBufferBenchmark {
+    }
+}
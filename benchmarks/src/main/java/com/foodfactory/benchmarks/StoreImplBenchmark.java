@@ -0,0 +1,80 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Store;
+import com.foodfactory.model.StoreImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores a product and takes it back, with the store already 0%, 50% or 90% full. Everything happens under the
+ * store's lock, so this is the one that should suffer the most with the threads; the threads share one store.
+ *
+ * The "legacy" store is the StoreImpl it replaced (see LegacyStore), as the baseline: its put adds up the sizes of
+ * everything stored, and it can only take the oldest product out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class StoreImplBenchmark {
+
+    private static final double STORE_SIZE = 10_000;
+    private static final int PRODUCT_SIZE = 10;
+
+    private static final String LEGACY = "legacy";
+
+    @Param({"current", LEGACY})
+    public String implementation;
+
+    @Param({"0", "50", "90"})
+    public int fillPercent;
+
+    private Store store;
+    private boolean legacy;
+
+    @Setup
+    public void fillStore() {
+
+        legacy = LEGACY.equals(implementation);
+        store = legacy ? new LegacyStore((int) STORE_SIZE) : new StoreImpl(STORE_SIZE);
+
+        for (int i = 0; i < STORE_SIZE * fillPercent / 100 / PRODUCT_SIZE; i++) {
+            store.put(new Food(PRODUCT_SIZE, 10L)); // It has room for all of them; nobody blocks.
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadProduct {
+        Food product = new Food(PRODUCT_SIZE, 10L);
+    }
+
+    @Benchmark
+    public boolean putAndTake(ThreadProduct threadProduct) {
+
+        if (legacy) {
+            store.put(threadProduct.product); // Whatever the oldest product is, it goes; so the store stays as full.
+            return store.take() != null;
+        }
+
+        boolean stored = ((StoreImpl) store).tryPut(threadProduct.product);
+        store.take(threadProduct.product);
+
+        return stored;
+    }
+
+    @Threads(1)
+    public static class OneThread extends StoreImplBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends StoreImplBenchmark {
+    }
+
+    @Threads(16)
+    public static class ManyThreads extends StoreImplBenchmark {
+    }
+}
@@ -0,0 +1,96 @@
+package com.foodfactory.benchmarks;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.AssemblyLineRegistry;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.Product;
+import com.foodfactory.model.ProductPool;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A factory under sustained load, on the virtual clock: 4 lines making 1000 products a second each, ovens big
+ * enough for all of them, and somebody downstream taking the finished products away. Every operation is one second
+ * of the factory (about 4000 products made, cooked and delivered).
+ *
+ * Run it with -prof gc: what matters here is the garbage every second leaves, with and without a pool of products
+ * (gc.alloc.rate.norm is the bytes allocated per operation).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class SustainedLoadBenchmark {
+
+    private static final int LINES = 4;
+    private static final int OVENS = 8;
+    private static final double OVEN_SIZE = 150_000; // 4000 products/s x 20cm2 x 10s cooking, and some spare room.
+
+    private DiscreteEventScheduler scheduler;
+    private Kitchen kitchen;
+    private AssemblyLineRegistry assemblyLines;
+    private Consumer<Product> consumer;
+
+    @Param({"0", "4096"})
+    public int poolSize; // Per line; a second of products comes back at once, and goes out again over the next one.
+
+    @Setup(Level.Trial)
+    public void startFactory(Blackhole blackhole) {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        scheduler = new DiscreteEventScheduler();
+        kitchen = new Kitchen(scheduler);
+
+        for (int i = 0; i < OVENS; i++) {
+            kitchen.addOven(new OvenImpl(OVEN_SIZE));
+        }
+        kitchen.addStore(new StoreImpl(1000));
+        assemblyLines = kitchen.getAssemblyLines();
+
+        LoadProfile loadProfile = LoadProfile.parse("poisson:1000", "uniform:10:30", "uniform:5:15", 1);
+
+        for (int n = 0; n < LINES; n++) {
+            AssemblyLine assemblyLine = kitchen.plugIn(id -> {
+                AssemblyLine newAssemblyLine = new AssemblyLine(id, scheduler, loadProfile);
+                if (poolSize > 0) {
+                    newAssemblyLine.setProductPool(new ProductPool(poolSize));
+                }
+                return newAssemblyLine;
+            });
+            assemblyLine.start();
+        }
+
+        consumer = blackhole::consume; // Once; not a new lambda every operation.
+        scheduler.runFor(Duration.ofSeconds(30), kitchen::dispatchUntilIdle); // Until the ovens are in a steady state.
+    }
+
+    @Benchmark
+    public void oneSecondOfFactory() {
+
+        scheduler.runFor(Duration.ofSeconds(1), kitchen::dispatchUntilIdle);
+
+        for (AssemblyLine assemblyLine : assemblyLines) {
+            assemblyLine.consumeFinishedProducts(consumer); // Back to the pool, if there is one.
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopFactory() {
+        kitchen.stop();
+        scheduler.stop();
+    }
+}
@@ -3,6 +3,8 @@ import com.foodfactory.view.AssemblyLineServer;
 import com.foodfactory.builders.KitchenBuilder;
 import com.foodfactory.controllers.Kitchen;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -34,11 +36,19 @@ public class Main {
         try {
 
             assemblyLineServer = new AssemblyLineServer(kitchen); // This starts the Kitchen...
+            assemblyLineServer.setDrainTimeout(kitchenBuilder.getShutdownDrainTimeout());
+            assemblyLineServer.setLoadProfile(kitchenBuilder.getLoadProfile());
+            assemblyLineServer.setProductPoolSize(kitchenBuilder.getProductPoolSize());
+
+            if (kitchenBuilder.getIngressPort() >= 0) {
+                int port = assemblyLineServer.listen(new InetSocketAddress(kitchenBuilder.getIngressPort())).getPort(); // Real lines, over the network.
+                System.out.println("Hearing for remote assembly lines on port " + port);
+            }
 
             Executor executor = Executors.newSingleThreadExecutor();
             executor.execute(()-> startAseemblyLineServer()); // This starts thw Assembly Lines simulated production.
 
-        } catch (KitchenRequiredException e) {
+        } catch (KitchenRequiredException | IOException e) {
             e.printStackTrace();
         }
 
@@ -1,10 +1,22 @@
 package com.foodfactory.builders;
 
+import com.foodfactory.controllers.Cooker;
 import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.controllers.KitchenAutoscaler;
+import com.foodfactory.controllers.OvenPlacementEngine;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.FullRingPolicy;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.scheduling.TaskScheduler;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Properties;
 
 /**
@@ -14,9 +26,52 @@ import java.util.Properties;
 public class KitchenBuilder {
 
     private static final String PROPERTIES_SEPARATOR = ",";
+    private static final String DEFAULT_SHUTDOWN_DRAIN_SECONDS = "30";
+    private static final String DEFAULT_OVEN_PLACEMENT_POLICY = "FIRST_FIT";
+    private static final String DEFAULT_DISPATCH_WORKERS = "1";
+    private static final String DEFAULT_EVENT_LOG_LEVEL = "DEBUG";
+    private static final String DEFAULT_EVENT_LOG_FULL_POLICY = "DROP";
+    private static final String DEFAULT_OVEN_COOKING_MODE = "CONTINUOUS";
+    private static final String DEFAULT_OVEN_CYCLE_TOLERANCE_SECONDS = "2";
+    private static final String DEFAULT_PRODUCT_POOL_SIZE = "0";
+    private static final String DEFAULT_PRODUCER_MODE = "SCHEDULED";
+    private static final String DEFAULT_JOURNAL_SYNC_MILLIS = "100";
+    private static final String DEFAULT_JOURNAL_SNAPSHOT_SECONDS = "60";
+    private static final String DEFAULT_JOURNAL_SEGMENT_RECORDS = "262144";
+    private static final String DEFAULT_AUTOSCALE_INTERVAL_SECONDS = "0";
+    private static final String DEFAULT_AUTOSCALE_OVEN_SIZE = "100";
+    private static final String DEFAULT_AUTOSCALE_MAX_OVENS = "8";
+    private static final String DEFAULT_AUTOSCALE_HALT_THRESHOLD = "0.2";
+    private static final String DEFAULT_AUTOSCALE_STORE_THRESHOLD = "0.8";
+    private static final String DEFAULT_AUTOSCALE_IDLE_THRESHOLD = "0.3";
     private static KitchenBuilder kitchenBuilder = null;
     private String[] ovensToBuild;
     private String[] storesToBuild;
+    private String[] assemblyLineWeights = new String[0];
+    private OvenPlacementEngine.PlacementPolicy ovenPlacementPolicy = OvenPlacementEngine.PlacementPolicy.valueOf(DEFAULT_OVEN_PLACEMENT_POLICY);
+    private Cooker.CookingMode ovenCookingMode = Cooker.CookingMode.valueOf(DEFAULT_OVEN_COOKING_MODE);
+    private Duration ovenCycleTolerance = Duration.ofSeconds(Long.parseLong(DEFAULT_OVEN_CYCLE_TOLERANCE_SECONDS));
+    private LogLevel eventLogLevel = LogLevel.valueOf(DEFAULT_EVENT_LOG_LEVEL);
+    private FullRingPolicy eventLogFullPolicy = FullRingPolicy.valueOf(DEFAULT_EVENT_LOG_FULL_POLICY);
+    private int dispatchWorkers = Integer.parseInt(DEFAULT_DISPATCH_WORKERS);
+    private Duration shutdownDrainTimeout = Duration.ofSeconds(Long.parseLong(DEFAULT_SHUTDOWN_DRAIN_SECONDS));
+    private String loadArrivals = LoadProfile.DEFAULT_ARRIVALS;
+    private String loadSizes = LoadProfile.DEFAULT_SIZES;
+    private String loadCookTimes = LoadProfile.DEFAULT_COOK_TIMES;
+    private long loadSeed = LoadProfile.DEFAULT_SEED;
+    private int productPoolSize = Integer.parseInt(DEFAULT_PRODUCT_POOL_SIZE);
+    private AssemblyLine.ProducerMode producerMode = AssemblyLine.ProducerMode.valueOf(DEFAULT_PRODUCER_MODE);
+    private String journalDirectory = "";
+    private Duration journalSyncInterval = Duration.ofMillis(Long.parseLong(DEFAULT_JOURNAL_SYNC_MILLIS));
+    private Duration journalSnapshotInterval = Duration.ofSeconds(Long.parseLong(DEFAULT_JOURNAL_SNAPSHOT_SECONDS));
+    private int journalSegmentRecords = Integer.parseInt(DEFAULT_JOURNAL_SEGMENT_RECORDS);
+    private int ingressPort = -1;
+    private Duration autoscaleInterval = Duration.ofSeconds(Long.parseLong(DEFAULT_AUTOSCALE_INTERVAL_SECONDS));
+    private double autoscaleOvenSize = Double.parseDouble(DEFAULT_AUTOSCALE_OVEN_SIZE);
+    private int autoscaleMaxOvens = Integer.parseInt(DEFAULT_AUTOSCALE_MAX_OVENS);
+    private double autoscaleHaltThreshold = Double.parseDouble(DEFAULT_AUTOSCALE_HALT_THRESHOLD);
+    private double autoscaleStoreThreshold = Double.parseDouble(DEFAULT_AUTOSCALE_STORE_THRESHOLD);
+    private double autoscaleIdleThreshold = Double.parseDouble(DEFAULT_AUTOSCALE_IDLE_THRESHOLD);
 
     /**
      * Loads up how to build the kitchen: how many Ovens and Stores, and their sizes.
@@ -41,14 +96,44 @@ public class KitchenBuilder {
                     throw new FileNotFoundException("property file '" + propFileName + "' not found in the classpath");
                 }
 
-                ovensToBuild = properties.getProperty("OvensSize").split(PROPERTIES_SEPARATOR);
-                storesToBuild = properties.getProperty("StoresSize").split(PROPERTIES_SEPARATOR);
+                readKitchenProperties(properties);
             }
 
         } catch (Exception e) {
             System.out.println("Can't read the 'config.properties' file. Exception: " + e.getMessage());
         }
     }
+
+    private void readKitchenProperties(Properties properties) {
+
+        ovensToBuild = properties.getProperty("OvensSize").split(PROPERTIES_SEPARATOR);
+        storesToBuild = properties.getProperty("StoresSize").split(PROPERTIES_SEPARATOR);
+        assemblyLineWeights = properties.getProperty("AssemblyLineWeights", "").trim().isEmpty() ? new String[0] : properties.getProperty("AssemblyLineWeights").split(PROPERTIES_SEPARATOR);
+        ovenPlacementPolicy = OvenPlacementEngine.PlacementPolicy.valueOf(properties.getProperty("OvenPlacementPolicy", DEFAULT_OVEN_PLACEMENT_POLICY).trim());
+        ovenCookingMode = Cooker.CookingMode.valueOf(properties.getProperty("OvenCookingMode", DEFAULT_OVEN_COOKING_MODE).trim());
+        ovenCycleTolerance = Duration.ofSeconds(Long.parseLong(properties.getProperty("OvenCycleToleranceSeconds", DEFAULT_OVEN_CYCLE_TOLERANCE_SECONDS).trim()));
+        eventLogLevel = LogLevel.valueOf(properties.getProperty("EventLogLevel", DEFAULT_EVENT_LOG_LEVEL).trim());
+        eventLogFullPolicy = FullRingPolicy.valueOf(properties.getProperty("EventLogFullPolicy", DEFAULT_EVENT_LOG_FULL_POLICY).trim());
+        dispatchWorkers = Integer.parseInt(properties.getProperty("DispatchWorkers", DEFAULT_DISPATCH_WORKERS).trim());
+        shutdownDrainTimeout = Duration.ofSeconds(Long.parseLong(properties.getProperty("ShutdownDrainSeconds", DEFAULT_SHUTDOWN_DRAIN_SECONDS).trim()));
+        loadArrivals = properties.getProperty("LoadArrivals", LoadProfile.DEFAULT_ARRIVALS).trim();
+        loadSizes = properties.getProperty("LoadSizes", LoadProfile.DEFAULT_SIZES).trim();
+        loadCookTimes = properties.getProperty("LoadCookTimes", LoadProfile.DEFAULT_COOK_TIMES).trim();
+        loadSeed = Long.parseLong(properties.getProperty("LoadSeed", String.valueOf(LoadProfile.DEFAULT_SEED)).trim());
+        productPoolSize = Integer.parseInt(properties.getProperty("ProductPoolSize", DEFAULT_PRODUCT_POOL_SIZE).trim());
+        journalDirectory = properties.getProperty("JournalDirectory", "").trim();
+        journalSyncInterval = Duration.ofMillis(Long.parseLong(properties.getProperty("JournalSyncMillis", DEFAULT_JOURNAL_SYNC_MILLIS).trim()));
+        journalSnapshotInterval = Duration.ofSeconds(Long.parseLong(properties.getProperty("JournalSnapshotSeconds", DEFAULT_JOURNAL_SNAPSHOT_SECONDS).trim()));
+        journalSegmentRecords = Integer.parseInt(properties.getProperty("JournalSegmentRecords", DEFAULT_JOURNAL_SEGMENT_RECORDS).trim());
+        producerMode = AssemblyLine.ProducerMode.valueOf(properties.getProperty("ProducerMode", DEFAULT_PRODUCER_MODE).trim());
+        ingressPort = properties.getProperty("IngressPort", "").trim().isEmpty() ? -1 : Integer.parseInt(properties.getProperty("IngressPort").trim());
+        autoscaleInterval = Duration.ofSeconds(Long.parseLong(properties.getProperty("AutoscaleIntervalSeconds", DEFAULT_AUTOSCALE_INTERVAL_SECONDS).trim()));
+        autoscaleOvenSize = Double.parseDouble(properties.getProperty("AutoscaleOvenSize", DEFAULT_AUTOSCALE_OVEN_SIZE).trim());
+        autoscaleMaxOvens = Integer.parseInt(properties.getProperty("AutoscaleMaxOvens", DEFAULT_AUTOSCALE_MAX_OVENS).trim());
+        autoscaleHaltThreshold = Double.parseDouble(properties.getProperty("AutoscaleHaltThreshold", DEFAULT_AUTOSCALE_HALT_THRESHOLD).trim());
+        autoscaleStoreThreshold = Double.parseDouble(properties.getProperty("AutoscaleStoreThreshold", DEFAULT_AUTOSCALE_STORE_THRESHOLD).trim());
+        autoscaleIdleThreshold = Double.parseDouble(properties.getProperty("AutoscaleIdleThreshold", DEFAULT_AUTOSCALE_IDLE_THRESHOLD).trim());
+    }
     
     /**
      * Builds itself from a .properties file
@@ -58,14 +143,86 @@ public class KitchenBuilder {
     }
 
     /**
-     * Singleton kind of implementation as usually a builder/factory pattern could be implemented.
+     * Builds itself from the given properties, the same ones of the config.properties file; e.g. for each one of the
+     * kitchens of a KitchenHost, with a config of its own. What they do not say takes the defaults.
+     * @param properties OvensSize and StoresSize, at least.
+     */
+    public KitchenBuilder(Properties properties){
+
+        if (properties.getProperty("OvensSize") == null || properties.getProperty("StoresSize") == null) {
+            throw new IllegalArgumentException("A kitchen needs its OvensSize and its StoresSize");
+        }
+
+        readKitchenProperties(properties);
+    }
+
+    /**
+     * Singleton kind of implementation as usually a builder/factory pattern could be implemented; the one of the
+     * config.properties file. It is loaded once, whatever the threads that ask for it at the same time.
      * @return
      */
-    public static KitchenBuilder getInstance() {
+    public static synchronized KitchenBuilder getInstance() {
         if (kitchenBuilder == null) kitchenBuilder = new KitchenBuilder();
         return kitchenBuilder;
     }
 
+    /**
+     * How long a shutdown may spend draining the products still in the kitchen.
+     * @return
+     */
+    public Duration getShutdownDrainTimeout() {
+        return shutdownDrainTimeout;
+    }
+
+    /**
+     * The traffic of the assembly lines, as the config says (the one we always had, if it says nothing).
+     * @return
+     */
+    public LoadProfile getLoadProfile() {
+        return LoadProfile.parse(loadArrivals, loadSizes, loadCookTimes, loadSeed);
+    }
+
+    /**
+     * The traffic of the config, with some of it overridden (e.g. from the command line); the nulls keep the config's.
+     * @return
+     */
+    public LoadProfile getLoadProfile(String arrivals, String sizes, String cookTimes, String seed) {
+        return LoadProfile.parse(arrivals != null ? arrivals : loadArrivals, sizes != null ? sizes : loadSizes,
+                cookTimes != null ? cookTimes : loadCookTimes, seed != null ? Long.parseLong(seed) : loadSeed);
+    }
+
+    /**
+     * How many consumed products every assembly line keeps to make new ones with; zero, none (no pool).
+     * @return
+     */
+    public int getProductPoolSize() {
+        return productPoolSize;
+    }
+
+    /**
+     * The level of the event log, which the kitchens built here set; the log is one for the whole JVM.
+     * @return
+     */
+    public LogLevel getEventLogLevel() {
+        return eventLogLevel;
+    }
+
+    /**
+     * What the event log does with its ring full, which the kitchens built here set too.
+     * @return
+     */
+    public FullRingPolicy getEventLogFullPolicy() {
+        return eventLogFullPolicy;
+    }
+
+    /**
+     * Where the AssemblyLineServer hears for remote lines (see IngressServer).
+     * @return -1 if it does not.
+     */
+    public int getIngressPort() {
+        return ingressPort;
+    }
+
     /**
      * Takes the due properties and builds up a kitchen as it's been requested in
      * the properties files.
@@ -75,22 +232,108 @@ public class KitchenBuilder {
      */
     public Kitchen buildKitchenStructure() {
 
-        Kitchen kitchen = new Kitchen();
+        Kitchen kitchen = buildKitchenStructure(new Kitchen());
+        kitchen.setProducerMode(producerMode); // Only a live kitchen; a simulated one always schedules its lines.
+
+        return kitchen;
+    }
+
+    /**
+     * Same as buildKitchenStructure(), but the kitchen follows the clock of the given scheduler.
+     * @param scheduler e.g. a DiscreteEventScheduler to run a simulation faster than the wall clock.
+     */
+    public Kitchen buildKitchenStructure(TaskScheduler scheduler) {
+        return buildKitchenStructure(new Kitchen(scheduler));
+    }
+
+    /**
+     * A kitchen that works as the config says, but with the given ovens and stores; e.g. to try out another sizing of
+     * it (see CapacityPlanner). It has no journal and no autoscaler, it prints nothing and it leaves the event log as
+     * it is: once the builder is loaded, many of them can be built at once, from any thread.
+     * @param scheduler
+     * @param ovenSizes one oven of each size.
+     * @param storeSizes one store of each size.
+     */
+    public Kitchen buildKitchenStructure(TaskScheduler scheduler, double[] ovenSizes, double[] storeSizes) {
+
+        Kitchen kitchen = new Kitchen(scheduler);
+        setUpPolicies(kitchen);
+
+        for (double ovenSize : ovenSizes) {
+            kitchen.addOven(OvenBuilder.getInstance().build(ovenSize));
+        }
+        for (double storeSize : storeSizes) {
+            kitchen.addStore(StoreBuilder.getInstance().build(storeSize));
+        }
+
+        return kitchen;
+    }
+
+    private Kitchen buildKitchenStructure(Kitchen kitchen) {
+
+        EventLog.getInstance().setLevel(eventLogLevel);
+        EventLog.getInstance().setFullRingPolicy(eventLogFullPolicy);
+
+        setUpPolicies(kitchen);
+
+        // With a journal, the kitchen keeps track of every product; and recovers what a former run left there.
+        if (!journalDirectory.isEmpty()) {
+            try {
+                kitchen.setJournal(ProductJournal.open(Paths.get(journalDirectory), kitchen.getScheduler(), journalSyncInterval, journalSnapshotInterval, journalSegmentRecords));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open the journal in " + journalDirectory, e);
+            }
+        }
 
         OvenBuilder ovenBuilder = OvenBuilder.getInstance();
         StoreBuilder storeBuilder = StoreBuilder.getInstance();
 
         //Old fashioned for; we do not want to overburden the setup with streaming or foreach 'pirotechnics' (yet).
         for(int i = 0; i < ovensToBuild.length; i++){
-            kitchen.addOven(ovenBuilder.build(Integer.parseInt(ovensToBuild[i])));
+            kitchen.addOven(ovenBuilder.build(Double.parseDouble(ovensToBuild[i])));
             System.out.println("Added an OVEN of size: " + ovensToBuild[i] + " to the kitchen.");
         }
 
         for(int i = 0; i < storesToBuild.length; i++){
-            kitchen.addStore(storeBuilder.build(Integer.parseInt(storesToBuild[i])));
-            System.out.println("Added a STORE of size: " + ovensToBuild[i] + " to the kitchen.");
+            kitchen.addStore(storeBuilder.build(Double.parseDouble(storesToBuild[i])));
+            System.out.println("Added a STORE of size: " + storesToBuild[i] + " to the kitchen.");
+        }
+
+        // The ovens above are the floor; the autoscaler only takes out the ones it added.
+        if (!autoscaleInterval.isZero()) {
+            kitchen.setAutoscaler(new KitchenAutoscaler(kitchen, autoscaleInterval, autoscaleOvenSize, autoscaleMaxOvens,
+                    autoscaleHaltThreshold, autoscaleStoreThreshold, autoscaleIdleThreshold));
         }
 
         return kitchen;
     }
+
+    /**
+     * How the kitchen places, cooks and dispatches the products; and how much each line weights.
+     */
+    private void setUpPolicies(Kitchen kitchen) {
+
+        kitchen.setOvenPlacementPolicy(ovenPlacementPolicy);
+        kitchen.setCookingMode(ovenCookingMode, ovenCycleTolerance);
+        kitchen.setDispatchWorkers(dispatchWorkers);
+        kitchen.setFairShareQuantum(getMaxProductCost());
+
+        // The weights go by the id of the line: the first one is for line #0, and so on. The missing ones weight one.
+        for(int i = 0; i < assemblyLineWeights.length; i++){
+            kitchen.setAssemblyLineWeight(i, Double.parseDouble(assemblyLineWeights[i].trim()));
+        }
+    }
+
+    /**
+     * What the most expensive product of the config's traffic takes from the ovens: the biggest size a line makes
+     * times the longest cook time, as far as the distributions tell (cm2.s).
+     */
+    private double getMaxProductCost() {
+
+        LoadProfile loadProfile = getLoadProfile();
+        double maxSize = Math.min(Math.max(loadProfile.getSizes().upperBound(), 1), AssemblyLine.MAX_PRODUCT_SIZE); // A line trims them.
+        double maxCookTime = Math.max(loadProfile.getCookTimes().upperBound(), 1);
+
+        return maxSize * maxCookTime;
+    }
 }
@@ -8,18 +8,17 @@ import com.foodfactory.model.OvenImpl;
  * so I try to encapsulate and dettach the way in which we build them.
  */
 public class OvenBuilder {
-    private static OvenBuilder ovenBuilder;
+    private static final OvenBuilder ovenBuilder = new OvenBuilder(); // It has no state: one for every thread, from the start.
 
     private OvenBuilder(){
 
     }
 
     public static OvenBuilder getInstance() {
-        if (ovenBuilder == null) ovenBuilder = new OvenBuilder();
         return ovenBuilder;
     }
 
-    public OvenImpl build(Integer size) {
+    public OvenImpl build(Double size) {
         return new OvenImpl(size);
     }
 }
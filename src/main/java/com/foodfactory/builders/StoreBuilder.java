@@ -8,18 +8,17 @@ import com.foodfactory.model.StoreImpl;
  */
 public class StoreBuilder {
 
-    private static StoreBuilder storeBuilder;
+    private static final StoreBuilder storeBuilder = new StoreBuilder(); // It has no state: one for every thread, from the start.
 
     private StoreBuilder(){
 
     }
 
     public static StoreBuilder getInstance() {
-        if (storeBuilder == null) storeBuilder = new StoreBuilder();
         return storeBuilder;
     }
 
-    public StoreImpl build(Integer size) {
+    public StoreImpl build(Double size) {
         StoreImpl store = new StoreImpl(size);
         return store;
     }
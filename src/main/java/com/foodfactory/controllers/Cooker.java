@@ -1,9 +1,19 @@
 package com.foodfactory.controllers;
 
-import com.foodfactory.exceptions.CapacityExceededException;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.journal.ProductState;
 import com.foodfactory.model.*;
+import com.foodfactory.scheduling.TaskScheduler;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.EventType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles the thread of execution of the Kitchen.
@@ -12,10 +22,23 @@ import java.util.concurrent.*;
  */
 public class Cooker {
 
+    public enum CookingMode {
+        CONTINUOUS, // Every product on its own timer; it comes out as soon as it is done.
+        BATCH_CYCLES // The ovens run whole cycles; see OvenCycles.
+    }
+
     private final List<Oven> ovens;
     private final List<Store> stores;
-    private List<AssemblyLine> assemblyLines = null;
-    private final List<Executor> timers = new CopyOnWriteArrayList<>();
+    private AssemblyLineRegistry assemblyLines = null;
+    private final TaskScheduler cookingTimers;
+    private final AtomicLong ovenPlacements = new AtomicLong(0);
+    private final AtomicLong cookedProducts = new AtomicLong(0);
+    private final KitchenDispatcher dispatcher;
+    private final OvenPlacementEngine ovenPlacement;
+    private final FairShareScheduler fairShare;
+    private volatile OvenCycles ovenCycles = null; // Only in the BATCH_CYCLES mode.
+    private final EventLog log = EventLog.getInstance();
+    private volatile ProductJournal journal = null;
 
     /**
      * This constructor allows us to maintain a reference
@@ -23,41 +46,72 @@ public class Cooker {
      * manage them.
      * @param ovens
      * @param stores
+     * @param cookingTimers the Kitchen's scheduler, it tells when every product is done.
+     * @param dispatcher the Kitchen's dispatcher, we wake it up when an oven or a store changes.
+     * @param ovenPlacement the Kitchen's index of the ovens' free room; it picks the oven for every product.
+     * @param fairShare we tell it the oven capacity every line receives.
      */
-    public Cooker(List<Oven> ovens, List<Store> stores) {
+    public Cooker(List<Oven> ovens, List<Store> stores, TaskScheduler cookingTimers, KitchenDispatcher dispatcher, OvenPlacementEngine ovenPlacement, FairShareScheduler fairShare) {
         this.ovens = ovens;
         this.stores = stores;
+        this.cookingTimers = cookingTimers;
+        this.dispatcher = dispatcher;
+        this.ovenPlacement = ovenPlacement;
+        this.fairShare = fairShare;
     }
 
+    /**
+     * In the BATCH_CYCLES mode every oven is turned on by its cycles, and only for as long as they last.
+     */
     public synchronized void  turnOnAllOvens() {
-        ovens.forEach(Oven::turnOn);
+        if (ovenCycles == null) {
+            ovens.forEach(Oven::turnOn);
+        }
+    }
+
+    /**
+     * Only meant to be called before the kitchen starts cooking.
+     * @param cookingMode
+     * @param cycleTolerance in the BATCH_CYCLES mode, how much longer than its cook time a product may stay in a cycle.
+     */
+    public void setCookingMode(CookingMode cookingMode, Duration cycleTolerance) {
+        this.ovenCycles = cookingMode == CookingMode.BATCH_CYCLES ? new OvenCycles(ovenPlacement, cookingTimers, cycleTolerance, this::finishBatch) : null;
+    }
+
+    /**
+     * @return the cycles of the ovens, or null if the cooker is not in the BATCH_CYCLES mode.
+     */
+    public OvenCycles getOvenCycles() {
+        return ovenCycles;
     }
 
     public synchronized void turnOffAllOvens() {
-        timers.forEach(t -> ((ExecutorService)t).shutdownNow()); // Kills every cooking timer.
+        cookingTimers.cancelAll(); // Kills every timer of the kitchen (cooking and production), at once.
         ovens.forEach(Oven::turnOff);
     }
 
     /**
-     * Here lies the main logic of how to put to cook a given product
-     * @param product
+     * Here lies the main logic of how to put to cook the products, a whole batch at a time: the ovens are filled in
+     * one go, and what does not fit goes to the stores.
+     * @param products
+     * @return the products that found no room anywhere, in the order they came.
      */
-    public final Boolean cook(Product product) throws InterruptedException {
+    public final List<Product> cookAll(List<Product> products) {
 
-        // tries and puts the product in the due oven
-        Boolean cooking = placeProductInOven(product);
+        List<Product> noRoom = new ArrayList<>();
+        OvenCycles cycles = ovenCycles;
+        OvenSlot[] slots = cycles == null ? ovenPlacement.placeAll(products) : products.stream().map(cycles::load).toArray(OvenSlot[]::new);
 
-        // if there is not space in the ovens, places the product into a store.
-        if(!cooking){
-            if(placeProductInStorage(product)){
-                return true;
-            } else {
-                return false;
+        for (int i = 0; i < slots.length; i++) {
+
+            if (slots[i] != null) {
+                startCooking(slots[i]);
+            } else if (!placeProductInStorage(products.get(i))) {
+                noRoom.add(products.get(i));
             }
-        }else{
-            return true;
         }
 
+        return noRoom;
     }
 
     /**
@@ -67,19 +121,21 @@ public class Cooker {
      */
     private Boolean placeProductInStorage(Product product) {
 
-        Product nullableProduct  = product; // we copy the reference, because the Store interface doesn't handles a return type. It halts.
         Boolean productPlacedInStore = false;
 
-        //Tries to get the product into a storage
-        for (Store store: stores) {
+        if (journal != null) {
+            journal.append(ProductState.STORED, product); // Before a store has it; if none does, it is put back (and journaled as such).
+        }
 
-            store.put(nullableProduct);
+        //Tries to get the product into a storage; the cooker never blocks on a full store, it tries the next one.
+        for (Store store: stores) {
 
-            if (nullableProduct == null){ // WE ARE DOING THIS BECAUSE WE ASSUME YOU WANT US TO DEAL WITH THE CURRENT INTERFACE FOR STORE.
+            if (!((StoreImpl) store).tryPut(product)){
                 continue; // redundant, but is more readable like this.
             }else{
                 productPlacedInStore = true;
-                System.out.println("STORED product #: " + ((Food)product).getOrderNumber() + " from lane #: " + ((Food)product).getAssemblyLineId() + " into Store of SIZE: " + ((StoreImpl)store).getSize());
+                dispatcher.signal(KitchenDispatcher.WakeUpReason.STORE_CHANGED);
+                log.log(EventType.PRODUCT_STORED, product);
                 break;
             }
         }
@@ -87,63 +143,131 @@ public class Cooker {
         return productPlacedInStore;
     }
 
+    private void startCooking(OvenSlot slot) {
+        if (journal != null) {
+            journal.append(ProductState.IN_OVEN, slot.getProduct()); // Before its timer (or its cycle's) can take it out.
+        }
+        ovenPlacements.incrementAndGet();
+        fairShare.recordOvenPlacement(((Food)slot.getProduct()).getAssemblyLineId(), slot.getProduct());
+
+        if (ovenCycles == null) {
+            startCookingTimer(slot);
+        } // Otherwise it comes out with the rest of its cycle.
+    }
+
     /**
-     * Tries and places a product in an Oven, if it is successful it starts a timer that simulates
-     * the cooking time.
-     * @param product
-     * @return
+     * Schedules the end of the cooking in the Kitchen's scheduler; when it fires, we take the product out of the oven.
+     * @param slot where the product is cooking.
      */
-    private Boolean placeProductInOven(Product product) {
+    private void startCookingTimer(OvenSlot slot) {
 
-        Boolean productPlacedInOven = true;
+        Product product = slot.getProduct();
 
-        // Trying to get the product into the Oven //TODO add functionality to test if the Oven is turned on or not.
-        for (Oven oven: ovens) {
-            try {
-                oven.put(product);
-                productPlacedInOven = true;
-                break;
-            } catch (CapacityExceededException e) {
-                productPlacedInOven = false;
-            }
+        log.log(EventType.PRODUCT_COOKING, product);
+
+        cookingTimers.schedule(() -> finishCooking(slot), product.cookTimeNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs in the scheduler (a timing wheel worker, or the simulation thread), once the cooking time is over.
+     * @param slot where the product is cooking.
+     */
+    private void finishCooking(OvenSlot slot) {
+
+        Product product = slot.getProduct();
+
+        //Take the product from the oven; the slot knows which one, so we do not search for it.
+        slot.release();
+        cookedProducts.incrementAndGet();
+        log.log(EventType.PRODUCT_FINISHED, product); // Before it goes: once delivered, the product might be recycled.
+        if (journal != null) {
+            journal.append(ProductState.FINISHED, product); // Until this is journaled, a crash finds it in the oven (with nothing left to cook).
         }
 
-        // If the product was placed in an oven we start "cooking it", and place it in the cooker's "cache".
-        if (productPlacedInOven){
-            startCookingTimer(product);
+        //Put it in an Assembly Line for finished products (thread safe sorted cache).
+        addNextFinishedProductToAssemblyLine(((Food)product).getAssemblyLineId(), product);
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.OVEN_SLOT_FREED); // After it is back: a retiring line might be done now.
+    }
+
+    /**
+     * Runs in the scheduler, once a cycle is over: the whole batch comes out of the oven, and goes back to its lines
+     * at once (one putAfterAll per line).
+     * @param slots of the products cooked in the cycle.
+     */
+    private void finishBatch(List<OvenSlot> slots) {
+
+        Map<Integer, List<Product>> productsByLine = new HashMap<>();
+
+        for (OvenSlot slot : slots) {
+            slot.release();
+            if (journal != null) {
+                journal.append(ProductState.FINISHED, slot.getProduct());
+            }
+            productsByLine.computeIfAbsent(((Food)slot.getProduct()).getAssemblyLineId(), id -> new ArrayList<>()).add(slot.getProduct());
         }
 
-        return productPlacedInOven;
+        cookedProducts.addAndGet(slots.size());
+
+        productsByLine.forEach((idAssemblyLine, products) -> this.assemblyLines.get(idAssemblyLine).putAfterAll(products));
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.OVEN_SLOT_FREED);
     }
 
     /**
-     * Start a thread with a timer to hold on it; when it finishes, we take the product out of the oven.
+     * Puts back in an oven a product that was cooking when the factory went down (see Kitchen.restore()); it cooks
+     * for what it had left, on its own timer, whatever the cooking mode. Its transition is already journaled.
      * @param product
+     * @param remainingNanos
+     * @return false if there is no room for it in any oven.
      */
-    private void startCookingTimer(Product product) {
+    public boolean resumeCooking(Product product, long remainingNanos) {
 
-        Executor timer = Executors.newSingleThreadExecutor();
+        OvenSlot slot = ovenPlacement.place(product);
 
-        timer.execute(()->{
-            try {
+        if (slot == null) {
+            return false;
+        }
+
+        ovenPlacements.incrementAndGet();
+        Integer assemblyLineId = ((Food)product).getAssemblyLineId();
+        fairShare.charge(assemblyLineId, product); // It got the room without a turn of its line; the line pays it on its next ones.
+        fairShare.recordOvenPlacement(assemblyLineId, product);
+        log.log(EventType.PRODUCT_COOKING, product);
+        cookingTimers.schedule(() -> finishCooking(slot), remainingNanos, TimeUnit.NANOSECONDS);
 
-                System.out.println("COOKING product #: " + ((Food)product).getOrderNumber() + " from lane #: " + ((Food)product).getAssemblyLineId() + " - size: " + product.size() + " cooking time: " + product.cookTime().getSeconds());
-                TimeUnit.SECONDS.sleep(product.cookTime().getSeconds());
+        return true;
+    }
 
-                //Take the product from the oven.
-                ovens.forEach(oven -> oven.take(product)); //The product object (with its object id) should be found in just one oven and erased.
-                //Put it in an Assembly Line for finished products (thread safe sorted cache).
-                addNextFinishedProductToAssemblyLine(((Food)product).getAssemblyLineId(), product); // TODO: if we kill the main thread before this happens we might lose one product! fix this.
+    /**
+     * Puts the product in the first store with room for it.
+     * @param product
+     * @return false if there is none.
+     */
+    public boolean store(Product product) {
+        return placeProductInStorage(product);
+    }
 
-                System.out.println("FINISHED cooking product #: " + ((Food)product).getOrderNumber() + " from lane #: " + ((Food)product).getAssemblyLineId() + " - size: " + product.size() + " cooking time: " + product.cookTime().getSeconds());
-                this.timers.remove(timer); // we take care of freeing the memory as well.
+    /**
+     * Every transition of the products in the kitchen is journaled from now on.
+     * @param journal null for none.
+     */
+    public void setJournal(ProductJournal journal) {
+        this.journal = journal;
+    }
 
-            } catch (InterruptedException e) {
-                System.out.println("INTERRUPTED Cooking TIMER for product: "+ ((Food) product).getOrderNumber() + " of Assembly line: " + ((Food) product).getAssemblyLineId());
-            }
-        });
+    /**
+     * How many products went into an oven so far.
+     * @return
+     */
+    public long getOvenPlacements() {
+        return ovenPlacements.get();
+    }
 
-        timers.add(timer); // we do this to avoid garbage collection of the thread!
+    /**
+     * How many products are cooking right now.
+     * @return
+     */
+    public long getProductsInOvens() {
+        return ovenPlacements.get() - cookedProducts.get();
     }
 
     /**
@@ -154,10 +278,10 @@ public class Cooker {
     }
 
     /**
-     * We assign the assemblies lines to have access to the finishedProducts sorted queue.
+     * We assign the assemblies lines to have access to the finishedProducts sorted queue (by the id of the line).
      * @param assemblyLines
      */
-    public void setAssemblyLines(List<AssemblyLine> assemblyLines) {
+    public void setAssemblyLines(AssemblyLineRegistry assemblyLines) {
         this.assemblyLines = assemblyLines;
     }
 }
@@ -0,0 +1,173 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.Product;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Decides how many products the Kitchen takes from each assembly line, so no line starves the others of oven room.
+ * It is a "deficit round robin": the cost of a product is what it takes from the ovens, size x cook time (cm2·s).
+ * On every round a line with waiting products earns a quantum (times its weight) of credit, and it can take products
+ * for as long as the credit covers them; what it does not spend is kept for the next round. An empty line loses it.
+ * So, over time, every busy line gets oven room in proportion to its weight, whatever the size of its products.
+ *
+ * It also keeps the oven capacity each line actually received; that is what we look at to check the fairness.
+ */
+public class FairShareScheduler {
+
+    public static final double DEFAULT_WEIGHT = 1.0;
+
+    // The most expensive product of the default traffic (30cm2 x 15s); the kitchens of the config get theirs (see setQuantum()).
+    public static final double DEFAULT_QUANTUM = 450;
+
+    private volatile double quantum = DEFAULT_QUANTUM;
+
+    private final Map<Integer, LineShare> shares = new ConcurrentHashMap<>();
+
+    /**
+     * @param assemblyLineId
+     * @param weight how much oven room the line gets, relative to the others; the default is one.
+     */
+    public void setWeight(Integer assemblyLineId, double weight) {
+
+        if (weight <= 0) {
+            throw new IllegalArgumentException("The weight of Assembly Line #" + assemblyLineId + " must be positive.");
+        }
+
+        share(assemblyLineId).weight = weight;
+    }
+
+    public double getWeight(Integer assemblyLineId) {
+        return share(assemblyLineId).weight;
+    }
+
+    /**
+     * The credit a line of weight one earns on every round. It should be the cost of the most expensive product the
+     * lines make: then none of them needs more than one round to afford its next product, and a bigger one only makes
+     * the rounds coarser.
+     * @param quantum in cm2.s.
+     */
+    public void setQuantum(double quantum) {
+
+        if (quantum <= 0) {
+            throw new IllegalArgumentException("The quantum must be positive: " + quantum);
+        }
+
+        this.quantum = quantum;
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * A new round for the line: it earns its quantum if it cannot afford the product at its head yet,
+     * or it loses its credit if nothing is waiting. Only the worker that claimed the line calls this.
+     * @param assemblyLineId
+     * @param head the next product waiting on the line, or null.
+     */
+    public void beginTurn(Integer assemblyLineId, Product head) {
+
+        LineShare share = share(assemblyLineId);
+
+        if (head == null) {
+            share.deficit = 0;
+        } else if (share.deficit < cost(head)) {
+            share.deficit += quantum * share.weight; // So the credit never grows beyond one product and one quantum.
+        }
+    }
+
+    /**
+     * @return true if the line has credit enough to take the given product in this round.
+     */
+    public boolean canAfford(Integer assemblyLineId, Product product) {
+        return product != null && share(assemblyLineId).deficit >= cost(product);
+    }
+
+    /**
+     * @return how many of the given products, from the first one, the line can pay for in this round.
+     */
+    public int countAffordable(Integer assemblyLineId, List<Product> products) {
+
+        double credit = share(assemblyLineId).deficit;
+        int affordable = 0;
+
+        for (Product product : products) {
+            credit -= cost(product);
+
+            if (credit < 0) {
+                break;
+            }
+            affordable++;
+        }
+
+        return affordable;
+    }
+
+    /**
+     * The product was taken from its line; it is paid with the line's credit.
+     * @param assemblyLineId
+     * @param product
+     */
+    public void charge(Integer assemblyLineId, Product product) {
+        share(assemblyLineId).deficit -= cost(product);
+    }
+
+    /**
+     * The product went into an oven; it counts as capacity received by its line. It can be called from any thread.
+     * @param assemblyLineId
+     * @param product
+     */
+    public void recordOvenPlacement(Integer assemblyLineId, Product product) {
+        share(assemblyLineId).receivedCapacity.add(cost(product));
+    }
+
+    /**
+     * @return the oven capacity (cm2·s) the line received so far.
+     */
+    public double getReceivedCapacity(Integer assemblyLineId) {
+        return share(assemblyLineId).receivedCapacity.sum();
+    }
+
+    /**
+     * @return the fraction (from 0 to 1) of all the oven capacity handed out so far that went to the line.
+     */
+    public double getReceivedShare(Integer assemblyLineId) {
+
+        double total = shares.values().stream().mapToDouble(share -> share.receivedCapacity.sum()).sum();
+
+        return total == 0 ? 0 : getReceivedCapacity(assemblyLineId) / total;
+    }
+
+    /**
+     * The line is gone: its credit, its weight and what it received go with it.
+     * @param assemblyLineId
+     */
+    public void forget(Integer assemblyLineId) {
+        shares.remove(assemblyLineId);
+    }
+
+    /**
+     * What the product takes from the ovens: its size for as long as it cooks.
+     */
+    public static double cost(Product product) {
+        return product.size() * product.cookTimeNanos() / 1_000_000_000.0;
+    }
+
+    private LineShare share(Integer assemblyLineId) {
+        return shares.computeIfAbsent(assemblyLineId, id -> new LineShare());
+    }
+
+    /**
+     * The deficit is only touched by the worker holding the line's claim; the claim's CAS publishes it to the next one.
+     */
+    private static final class LineShare {
+
+        private volatile double weight = DEFAULT_WEIGHT;
+        private double deficit = 0;
+        private final DoubleAdder receivedCapacity = new DoubleAdder();
+    }
+}
@@ -1,14 +1,34 @@
 package com.foodfactory.controllers;
 
 import com.foodfactory.controllers.Cooker;
+import com.foodfactory.journal.JournalState;
+import com.foodfactory.journal.JournaledProduct;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.journal.ProductState;
 import com.foodfactory.model.*;
-
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import com.foodfactory.scheduling.HashedTimingWheel;
+import com.foodfactory.scheduling.TaskScheduler;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.EventType;
+import com.foodfactory.metrics.MetricsRegistry;
+
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 /**
  * This is the kitchen, it is composed of many ovens and stores.
@@ -18,120 +38,704 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * The kitchen starts the 'cooker' who is a virtual representation of a guy that
  * performs the task of cooking and handling the products to the due assembly lines.
  * There is a requirement: the products should be placed in the line, again in the same order in which they appeared.
- * We solved this with an implementation of a "binary tree" that java has implemented as a "PriorityQueue"; this sort
- * of data structure has the peculiarity of receiving items in any order and then retrieving them ordered. Neat!
+ * We solved this with a "reorder buffer" on every line: a ring indexed by the order number of the product, that
+ * receives the products in any order and only lets out the ones that have no gaps before them. Neat!
+ *
+ * The lines share the ovens fairly: a deficit round robin (see FairShareScheduler) decides how many products are
+ * taken from each line on every pass, and every pass starts one line further, so no line is always the first.
+ *
+ * The lines do not produce at will: they need credits, and the kitchen hands them out for the room it has free
+ * (see ProductionCredits). A product that finds no room goes back to the head of its line, and waits there.
  *
+ * With a ProductJournal, every move of a product is journaled before it happens; after a crash, restore() puts the
+ * products of a line back where they were.
+ *
+ * The lines come and go (see AssemblyLineRegistry): a line that retires is stopped at once, and only leaves when
+ * every product it made is back on it. So do the ovens and stores: one that is removed takes nothing new at once,
+ * and leaves when it is empty (see KitchenAutoscaler, to do it by the load).
  */
 public class Kitchen {
 
+    // One wheel with a 100ms precision handles every timer of a live kitchen; the cook times are in seconds anyway.
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private static final int TIMER_WORKERS = 2;
+    private static final int DISPATCH_BATCH_SIZE = 16; // Products placed at once, per line and turn.
+    private static final long PRODUCERS_STOP_MILLIS = 1000; // A stop waits this much, at most, for the lines' threads.
+
     private final List<Oven> ovens;
     private final List<Store> stores;
-    private List<AssemblyLine> assemblyLines;
-    private final ExecutorService executorCooker = Executors.newSingleThreadExecutor();
-    private final ExecutorService executorDispatcher = Executors.newSingleThreadExecutor();
-    private boolean endKitchen = false;
+    private final AssemblyLineRegistry assemblyLines = new AssemblyLineRegistry();
+    private final Map<AssemblyLine, CompletableFuture<AssemblyLine>> retiringLines = new ConcurrentHashMap<>();
+    private final Map<OvenImpl, CompletableFuture<Oven>> removedOvens = new ConcurrentHashMap<>(); // Until they are empty.
+    private final Map<StoreImpl, CompletableFuture<Store>> removedStores = new ConcurrentHashMap<>(); // The same.
+    private ExecutorService executorCooker = null;
+    private ExecutorService producers = null; // Only for the lines' production on threads (see setProducerMode()).
+    private volatile Executor dispatchPool = null; // Someone else's threads, for the dispatch (see setDispatchPool()).
+    private volatile boolean endKitchen = false;
     private Cooker cooker;
-    private AtomicBoolean lineContinues;
+    private final Map<AssemblyLine, AtomicBoolean> lineClaims = new ConcurrentHashMap<>();
+    private final TaskScheduler scheduler;
+    private final KitchenDispatcher dispatcher = new KitchenDispatcher();
+    private final OvenPlacementEngine ovenPlacement = new OvenPlacementEngine(OvenPlacementEngine.PlacementPolicy.FIRST_FIT);
+    private final FairShareScheduler fairShare = new FairShareScheduler();
+    private final AtomicInteger passes = new AtomicInteger(0);
+    private final ProductionCredits credits;
+    private final EventLog log = EventLog.getInstance();
+    private final MetricsRegistry metrics;
+    private volatile ProductJournal journal = null;
+    private volatile KitchenAutoscaler autoscaler = null;
 
+    /**
+     * A live kitchen: it follows the wall clock.
+     */
     public Kitchen(){
-        ovens = new ArrayList<Oven>(); // I could have used an interface; I prefer to constraint it to JUST OVENS
-        stores = new ArrayList<Store>(); // same thing here.
+        this(new HashedTimingWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE, TIMER_WORKERS));
+    }
+
+    /**
+     * A kitchen that follows the clock of the given scheduler; e.g. a virtual one for simulations.
+     * @param scheduler
+     */
+    public Kitchen(TaskScheduler scheduler){
+        ovens = new CopyOnWriteArrayList<Oven>(); // I could have used an interface; I prefer to constraint it to JUST OVENS
+        stores = new CopyOnWriteArrayList<Store>(); // same thing here. They change seldom, and are walked all the time.
+        this.scheduler = scheduler;
+        this.credits = new ProductionCredits(ovens, stores, AssemblyLine.MAX_PRODUCT_SIZE);
 
-        cooker = new Cooker(ovens, stores); // The cooker will be running in a thread of the Kitchen; they should be seamless.
+        cooker = new Cooker(ovens, stores, scheduler, dispatcher, ovenPlacement, fairShare); // The cooker will be running in a thread of the Kitchen; they should be seamless.
+        cooker.setAssemblyLines(assemblyLines);
+        this.metrics = new MetricsRegistry(scheduler, ovens, stores, cooker::getProductsInOvens);
+        this.metrics.setAssemblyLines(assemblyLines);
 
     }
 
+    /**
+     * Adds an oven; while the kitchen runs too: its room is handed out as credits right away.
+     * @param oven
+     */
     public void addOven(Oven oven) {
         ovens.add(oven);
+        ovenPlacement.addOven((OvenImpl) oven);
+        log.log(EventType.OVEN_ADDED, -1, oven.size(), ovens.size(), 0);
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.CAPACITY_CHANGED);
+    }
+
+    /**
+     * Takes the oven out of the kitchen: nothing goes into it from now on (its room is not handed out anymore), and
+     * it leaves once the products cooking in it are finished. Nothing waits here: the dispatch workers let it go.
+     * @param oven
+     * @return completes with the oven when it is gone.
+     */
+    public CompletableFuture<Oven> removeOven(Oven oven) {
+
+        if (!ovens.contains(oven)) {
+            throw new IllegalArgumentException("The oven is not in the kitchen");
+        }
+
+        CompletableFuture<Oven> removed = removedOvens.computeIfAbsent((OvenImpl) oven, closed -> new CompletableFuture<>());
+
+        ovenPlacement.closeOven((OvenImpl) oven);
+        removeDrainedCapacity(); // It might be empty already.
+
+        return removed;
+    }
+
+    /**
+     * How the cooker picks an oven for each product; first-fit unless the config says otherwise.
+     * @param policy
+     */
+    public void setOvenPlacementPolicy(OvenPlacementEngine.PlacementPolicy policy) {
+        ovenPlacement.setPolicy(policy);
+    }
+
+    /**
+     * Whether every product cooks on its own, or the ovens run batch cycles; continuous unless the config says otherwise.
+     * @param cookingMode
+     * @param cycleTolerance how much longer than its cook time a product may stay in a cycle.
+     */
+    public void setCookingMode(Cooker.CookingMode cookingMode, Duration cycleTolerance) {
+        cooker.setCookingMode(cookingMode, cycleTolerance);
+    }
+
+    /**
+     * @return the cycles the ovens ran (and the room they wasted), or null if the kitchen cooks continuously.
+     */
+    public OvenCycles getOvenCycles() {
+        return cooker.getOvenCycles();
+    }
+
+    /**
+     * How much oven room the given line gets, relative to the others; every line weights one unless told otherwise.
+     * @param assemblyLineId
+     * @param weight
+     */
+    public void setAssemblyLineWeight(Integer assemblyLineId, double weight) {
+        fairShare.setWeight(assemblyLineId, weight);
+    }
+
+    /**
+     * The credit every line earns per round of the fair share (see FairShareScheduler.setQuantum()).
+     * @param quantum the cost (size x cook time, cm2.s) of the most expensive product the lines make.
+     */
+    public void setFairShareQuantum(double quantum) {
+        fairShare.setQuantum(quantum);
+    }
+
+    /**
+     * What runs the production of the lines plugged in from now on; every line schedules its products in the
+     * kitchen's scheduler unless the config says otherwise. The threads die with the kitchen.
+     * @param producerMode the thread modes sleep on the wall clock: a simulated kitchen cannot take them.
+     */
+    public void setProducerMode(AssemblyLine.ProducerMode producerMode) {
+
+        if (producerMode != AssemblyLine.ProducerMode.SCHEDULED && scheduler instanceof DiscreteEventScheduler) {
+            throw new IllegalArgumentException("A simulated kitchen schedules its lines; it cannot take " + producerMode);
+        }
+
+        if (producers != null) {
+            producers.shutdownNow();
+        }
+        producers = producerMode.newExecutor();
     }
 
+    /**
+     * Adds a store; while the kitchen runs too.
+     * @param store
+     */
     public void addStore(Store store) {
         stores.add(store);
+        log.log(EventType.STORE_ADDED, -1, ((StoreImpl) store).getSize(), stores.size(), 0);
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.CAPACITY_CHANGED);
+    }
+
+    /**
+     * Takes the store out of the kitchen: nothing is stored in it from now on, and it leaves once the ovens took
+     * every product it had (they go first, as always).
+     * @param store
+     * @return completes with the store when it is gone.
+     */
+    public CompletableFuture<Store> removeStore(Store store) {
+
+        if (!stores.contains(store)) {
+            throw new IllegalArgumentException("The store is not in the kitchen");
+        }
+
+        CompletableFuture<Store> removed = removedStores.computeIfAbsent((StoreImpl) store, closed -> new CompletableFuture<>());
+
+        ((StoreImpl) store).close();
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.CAPACITY_CHANGED); // Its products go to the ovens first.
+        removeDrainedCapacity();
+
+        return removed;
+    }
+
+    /**
+     * Lets go the removed ovens and stores that are empty now.
+     */
+    private void removeDrainedCapacity() {
+
+        if (removedOvens.isEmpty() && removedStores.isEmpty()) {
+            return;
+        }
+
+        removedOvens.forEach((oven, removed) -> {
+            if (oven.isEmpty() && removedOvens.remove(oven, removed)) {
+                ovenPlacement.removeOven(oven);
+                ovens.remove(oven);
+                oven.turnOff();
+                log.log(EventType.OVEN_REMOVED, -1, oven.size(), ovens.size(), 0);
+                removed.complete(oven);
+            }
+        });
+
+        removedStores.forEach((store, removed) -> {
+            if (store.isEmpty() && removedStores.remove(store, removed)) {
+                stores.remove(store);
+                log.log(EventType.STORE_REMOVED, -1, store.getSize(), stores.size(), 0);
+                removed.complete(store);
+            }
+        });
+    }
+
+    /**
+     * Lets the given autoscaler add and remove ovens by the load, from now on (it is started here).
+     * @param autoscaler null for none.
+     */
+    public void setAutoscaler(KitchenAutoscaler autoscaler) {
+
+        if (this.autoscaler != null) {
+            this.autoscaler.stop();
+        }
+
+        this.autoscaler = autoscaler;
+
+        if (autoscaler != null) {
+            autoscaler.start();
+        }
+    }
+
+    /**
+     * @return null if the kitchen has none.
+     */
+    public KitchenAutoscaler getAutoscaler() {
+        return autoscaler;
+    }
+
+    /**
+     * @return the ovens of the kitchen, the ones being removed too; it cannot be changed from here.
+     */
+    public List<Oven> getOvens() {
+        return Collections.unmodifiableList(ovens);
+    }
+
+    /**
+     * @return the stores of the kitchen, the ones being removed too; it cannot be changed from here.
+     */
+    public List<Store> getStores() {
+        return Collections.unmodifiableList(stores);
+    }
+
+    /**
+     * Adds a new line to the kitchen, with the next id; every line must be plugged in before it starts.
+     * The kitchen hears when the line has products for it: the line belongs to the shard of one dispatch worker
+     * (by its id), and only that worker is woken up for it, when a product arrives and when it runs out of credits.
+     * @param newAssemblyLine builds the line (not started), with the given id.
+     * @return the line.
+     */
+    public AssemblyLine plugIn(IntFunction<AssemblyLine> newAssemblyLine) {
+
+        AssemblyLine plugged = assemblyLines.register(id -> {
+            AssemblyLine assemblyLine = newAssemblyLine.apply(id);
+            assemblyLine.setProductArrivalListener(() -> dispatcher.signal(KitchenDispatcher.WakeUpReason.PRODUCT_ARRIVED, id));
+            assemblyLine.setCreditsWantedListener(() -> dispatcher.signal(KitchenDispatcher.WakeUpReason.CREDITS_WANTED, id));
+            assemblyLine.setJournal(journal);
+            assemblyLine.setProducers(producers);
+            return assemblyLine;
+        });
+
+        metrics.registerMBean(plugged);
+
+        return plugged;
+    }
+
+    /**
+     * Takes the line out of the kitchen: it stops producing right away, and it leaves once every product it made is
+     * back on it (its finished products stay there, for whoever holds it). Nothing waits here: the dispatch workers
+     * let it go, the first time they find it drained.
+     * @param assemblyLine
+     * @return completes with the line when it is gone.
+     */
+    public CompletableFuture<AssemblyLine> retire(AssemblyLine assemblyLine) {
+
+        CompletableFuture<AssemblyLine> retired = retiringLines.computeIfAbsent(assemblyLine, line -> new CompletableFuture<>());
+
+        assemblyLine.stop();
+        dispatcher.signal(KitchenDispatcher.WakeUpReason.LINE_RETIRING, assemblyLine.getId()); // Its waiting products go first.
+        removeDrainedLines(); // It might have nothing in the kitchen already.
+
+        return retired;
+    }
+
+    private void removeDrainedLines() {
+
+        if (retiringLines.isEmpty()) {
+            return;
+        }
+
+        retiringLines.forEach((assemblyLine, retired) -> {
+            if (assemblyLine.isDrained() && retiringLines.remove(assemblyLine, retired)) {
+                assemblyLines.remove(assemblyLine);
+                lineClaims.remove(assemblyLine);
+                fairShare.forget(assemblyLine.getId());
+                metrics.unregisterMBean(assemblyLine);
+                if (journal != null) {
+                    journal.retire(assemblyLine.getId()); // The next run does not bring it back.
+                    assemblyLine.setJournal(null);
+                }
+                log.log(EventType.LINE_RETIRED, assemblyLine.getId(), 0, 0, 0);
+                retired.complete(assemblyLine);
+            }
+        });
+    }
+
+    /**
+     * @return the lines plugged in, and not retired yet.
+     */
+    public AssemblyLineRegistry getAssemblyLines() {
+        return assemblyLines;
+    }
+
+    /**
+     * Journals every product of the kitchen, and of the lines plugged in from now on; only meant to be called before
+     * the lines are plugged in. Whoever set it closes it, once nobody takes products anymore.
+     * @param journal
+     */
+    public void setJournal(ProductJournal journal) {
+        this.journal = journal;
+        this.cooker.setJournal(journal);
+    }
+
+    /**
+     * @return the journal of the kitchen; null if it has none.
+     */
+    public ProductJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Puts back the products the journal recovered for the given line (a new one, plugged in and not started, with
+     * the id of the former): the finished ones on the line, the ones in the ovens back in an oven for what they had
+     * left to cook, the stored ones in a store, and the waiting ones on the line. What finds no room (the kitchen
+     * might be smaller now) waits on the line, to cook from scratch.
+     * @param assemblyLine
+     */
+    public void restore(AssemblyLine assemblyLine) {
+
+        JournalState state = journal.getRecoveredState();
+        int id = assemblyLine.getId();
+        List<Product> finished = new ArrayList<>();
+        List<Product> waiting = new ArrayList<>();
+
+        state.getProducts(id, ProductState.FINISHED).forEach(product -> finished.add(toFood(product)));
+        assemblyLine.restore(state.getNextOrderNumber(id), state.getDeliveredCount(id), finished); // First: the ovens might finish something right away.
+
+        for (JournaledProduct product : state.getProducts(id, ProductState.IN_OVEN)) {
+            Food food = toFood(product);
+            if (!cooker.resumeCooking(food, state.getRemainingCookNanos(product)) && !cooker.store(food)) {
+                waiting.add(food);
+            }
+        }
+
+        for (JournaledProduct product : state.getProducts(id, ProductState.STORED)) {
+            Food food = toFood(product);
+            if (!cooker.store(food)) {
+                waiting.add(food);
+            }
+        }
+
+        waiting.forEach(product -> journal.append(ProductState.WAITING, product)); // These moved.
+        state.getProducts(id, ProductState.WAITING).forEach(product -> waiting.add(toFood(product)));
+        waiting.sort(Comparator.comparingLong(product -> ((Food) product).getOrderNumber()));
+
+        assemblyLine.putBackAll(waiting);
+    }
+
+    private Food toFood(JournaledProduct product) {
+
+        Food food = new Food(product.getSize(), TimeUnit.NANOSECONDS.toSeconds(product.getCookTimeNanos())); // Cook times are whole seconds.
+
+        food.setAssemblyLineId(product.getAssemblyLineId());
+        food.setOrderNumber(product.getOrderNumber());
+        food.setCreatedAt(journal.toClockTime(product.getCreatedAt()));
+
+        return food;
     }
 
-    public void setAssemblyLines(List<AssemblyLine> assemblyLines) {
-        this.assemblyLines = assemblyLines;
-        this.cooker.setAssemblyLines(assemblyLines);
+    /**
+     * How many threads dispatch products from the lines to the ovens; only meant to be called before start().
+     * @param dispatchWorkers
+     */
+    public void setDispatchWorkers(int dispatchWorkers) {
+        dispatcher.setWorkerCount(dispatchWorkers);
+    }
+
+    /**
+     * The dispatch workers run on the given executor instead of threads of the kitchen's own; e.g. a bounded pool that
+     * many kitchens share (see KitchenHost). Only meant to be called before start().
+     * @param dispatchPool null, for threads of its own.
+     */
+    public void setDispatchPool(Executor dispatchPool) {
+        this.dispatchPool = dispatchPool;
     }
 
     /**
      * Starts the kitchen's "Cooker".
-     * A thread that monitors the assembly lines to take products to cook and retrieve them.
+     * A pool of dispatch workers that take products from the assembly lines to cook them. The lines are sharded
+     * among the workers; a worker that runs out of work on its own lines steals from the lines of the others.
+     * They sleep while there is nothing to do, and the dispatcher wakes them up when a product arrives, an oven
+     * slot frees up or a store changes. With a dispatch pool, they do not sleep: every wake up is a turn on the pool.
+     * Simulated kitchens are not started: the simulation calls dispatchUntilIdle() after every event instead.
      */
     public void start() {
 
-        // The thread inside this method handles the cooking of the products.
-        executorCooker.execute(()-> {
+        int workers = dispatcher.getWorkerCount();
+
+        if (dispatchPool != null) {
+            dispatcher.runOn(dispatchPool, worker -> {
+                if (!endKitchen) {
+                    dispatchUntilIdle(worker, workers);
+                    stealWork(worker, workers);
+                }
+            });
+            return;
+        }
+
+        executorCooker = Executors.newFixedThreadPool(workers);
+
+        // The threads inside this method handle the cooking of the products.
+        for (int i = 0; i < workers; i++) {
+
+            final int worker = i;
+
+            executorCooker.execute(()-> {
+
+                while(!endKitchen && dispatcher.awaitWork(worker)){
+                    dispatchUntilIdle(worker, workers);
+                    stealWork(worker, workers);
+                }
+            });
+        }
+    }
 
-            while(!endKitchen){
+    /**
+     * Dispatches products from every line over and over, until a whole pass finds nothing to do.
+     */
+    public void dispatchUntilIdle() {
+        dispatchUntilIdle(0, 1);
+    }
 
-                // Turn on all the ovens
-                cooker.turnOnAllOvens();
+    /**
+     * Dispatches products from the shard of the given worker, until a whole pass over it finds nothing to do.
+     * Then the room that is left is handed out to the lines as credits.
+     */
+    private void dispatchUntilIdle(int worker, int workers) {
+        while (!endKitchen && dispatch(worker, workers)) {
+            // keep on dispatching.
+        }
 
-                try {
+        if (!endKitchen) {
+            removeDrainedLines();
+            removeDrainedCapacity();
+            credits.replenish(this.assemblyLines);
+        }
+    }
 
-                    // checks for the AssemblyLines to provide products
-                    for (AssemblyLineStage assemblyLine : this.assemblyLines) {
+    /**
+     * One round of the worker over the lines of its shard (the ones whose id modulo the workers is the worker).
+     * Every round starts on a different line, so the first one in the registry does not always win the room.
+     * @return true if the pass moved the factory forward: a product left a line, or a product got into an oven.
+     */
+    private boolean dispatch(int worker, int workers) {
 
-                        //FIRST we try it over onto the stores, otherwise the lines will halt!
-                        Product product = tryGettingProductFromStoresFirst();
+        boolean progress = false;
 
-                        String fromWhereTheProductWasTaken = "";
-                        if (product == null){
+        // Turn on all the ovens
+        cooker.turnOnAllOvens();
 
-                            product = assemblyLine.take();
+        // The ids go on growing as lines retire, so a worker might own lines with fewer lines left than workers.
+        int lines = this.assemblyLines.size();
+        if (lines == 0) {
+            return false;
+        }
+        int firstLine = Math.floorMod(passes.getAndIncrement(), lines);
+        metrics.recordDispatchPass();
 
-                            fromWhereTheProductWasTaken = "Product taken from the assembly line...";
-                        } else {
-                            fromWhereTheProductWasTaken = "Product taken from one STORE...";
-                        }
+        // checks for the AssemblyLines to provide products
+        for (int n = 0; n < lines; n++) {
 
-                        // THEN we go and put every product to cook.
-                        if (product != null){
-                            System.out.print(fromWhereTheProductWasTaken);
-                            System.out.println("trying to PUT in the OVEN product #: " + ((Food)product).getOrderNumber() + " from lane #: " + ((Food)product).getAssemblyLineId() + " - size: " + product.size() + " cooking time: " + product.cookTime().getSeconds());
+            AssemblyLine assemblyLine = this.assemblyLines.at((firstLine + n) % lines);
 
-                            placeProductOrHalt((AssemblyLine) assemblyLine, product);
-                        }
-                    }
+            if (assemblyLine == null || assemblyLine.getId() % workers != worker) {
+                continue; // It just left; or it is not in our shard.
+            }
 
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            if (!tryClaim(assemblyLine)) {
+                continue; // Another worker is stealing from it right now.
+            }
 
+            try {
+                progress |= dispatchFairShare(assemblyLine);
+            } finally {
+                releaseClaim(assemblyLine);
             }
-        });
+        }
+
+        return progress;
+    }
+
+    /**
+     * The turn of one line in a round: it takes batches of products for as long as its credit pays for them.
+     * @return true if it moved the factory forward, or if the line is still saving credit for its next product.
+     */
+    private boolean dispatchFairShare(AssemblyLine assemblyLine) {
+
+        fairShare.beginTurn(assemblyLine.getId(), assemblyLine.peekWaitingProduct());
+
+        boolean progress = false;
+
+        while (!endKitchen && dispatchBatch(assemblyLine)) {
+            progress = true;
+        }
+
+        Product head = assemblyLine.peekWaitingProduct();
+
+        // A line that could not afford its next product yet gets there in a later round; so the rounds go on.
+        return progress || (!endKitchen && head != null && !fairShare.canAfford(assemblyLine.getId(), head));
     }
 
     /**
-     * It searchs a place for the taken product, if there isn't any...the line halts.
+     * An idle worker goes over the lines of the other shards, and gives a turn to the busy ones nobody is dispatching now.
      */
-    private void placeProductOrHalt(AssemblyLine assemblyLine, Product product) throws InterruptedException {
-        lineContinues = new AtomicBoolean(cooker.cook(product));
+    private void stealWork(int worker, int workers) {
+
+        if (workers == 1) {
+            return;
+        }
+
+        for (AssemblyLine assemblyLine : this.assemblyLines) {
+
+            if (endKitchen) {
+                return;
+            }
+
+            if (assemblyLine.getId() % workers == worker || !assemblyLine.hasWaitingProducts() || !tryClaim(assemblyLine)) {
+                continue;
+            }
+
+            try {
+                dispatchFairShare(assemblyLine); // The thief plays by the same rules: one fair turn of the line.
+            } finally {
+                releaseClaim(assemblyLine);
+            }
 
-        if (!lineContinues.get()){
-            assemblyLine.haltProduction();
-            System.out.println("Production HALTED in Assembly Line #" + assemblyLine.getId());
-        } else if (assemblyLine.isHalted()){
-            assemblyLine.continueProduction();
-            System.out.println("Production CONTINUES in Assembly Line #" + assemblyLine.getId());
+            // Its owner might have skipped it while we had it; the rest of its products are still for somebody.
+            if (assemblyLine.hasWaitingProducts()) {
+                dispatcher.handBack(assemblyLine.getId() % workers);
+            }
         }
+    }
+
+    /**
+     * Only one worker at a time takes products from a given line, so they leave it in FIFO order.
+     */
+    private boolean tryClaim(AssemblyLine assemblyLine) {
+        return lineClaims.computeIfAbsent(assemblyLine, line -> new AtomicBoolean(false)).compareAndSet(false, true);
+    }
 
+    private void releaseClaim(AssemblyLine assemblyLine) {
+        AtomicBoolean claim = lineClaims.get(assemblyLine);
+        if (claim != null) { // A retired line might have left while we held it.
+            claim.set(false);
+        }
+    }
+
+    /**
+     * Takes a batch of products for the given line (the stored ones first, if any) and places the whole of it at once:
+     * one pass over the ovens, one lock on the line and on the placement index, for up to DISPATCH_BATCH_SIZE products.
+     * @return true if it moved the factory forward: a product left the line, or a product got into an oven.
+     */
+    private boolean dispatchBatch(AssemblyLine assemblyLine) {
+
+        // Most turns find nothing to do; they should not leave garbage behind (the counters take no locks).
+        if (!hasStoredProducts() && !fairShare.canAfford(assemblyLine.getId(), assemblyLine.peekWaitingProduct())) {
+            return false;
+        }
+
+        long ovenPlacementsBefore = cooker.getOvenPlacements();
+        List<Product> batch = new ArrayList<>(DISPATCH_BATCH_SIZE);
+
+        //FIRST we try it over onto the stores, otherwise the lines will halt!
+        int fromStores = takeProductsFromStores(batch, DISPATCH_BATCH_SIZE);
+
+        // THEN we fill up the batch from the line, with as many products as its fair share pays for.
+        List<Product> fromLine = new ArrayList<>(DISPATCH_BATCH_SIZE - fromStores);
+
+        if (fairShare.canAfford(assemblyLine.getId(), assemblyLine.peekWaitingProduct())) {
+            assemblyLine.drainTo(fromLine, DISPATCH_BATCH_SIZE - fromStores);
+
+            int affordable = fairShare.countAffordable(assemblyLine.getId(), fromLine);
+            assemblyLine.putBackAll(fromLine.subList(affordable, fromLine.size()));
+            fromLine = fromLine.subList(0, affordable);
+        }
+
+        batch.addAll(fromLine);
+
+        if (batch.isEmpty()){
+            return false;
+        }
+
+        log.log(EventType.PRODUCTS_TAKEN, assemblyLine.getId(), 0, batch.size(), fromStores);
+
+        List<Product> noRoom = placeBatchOrPutBack(batch);
+
+        boolean placedFromLine = false;
+        for (Product product : fromLine) {
+            if (!containsSameProduct(noRoom, product)) {
+                fairShare.charge(assemblyLine.getId(), product);
+                placedFromLine = true;
+            }
+        }
+
+        // A product that goes from a store back into a store, or back to its line, is not progress; it has to wait for an oven.
+        return placedFromLine || cooker.getOvenPlacements() != ovenPlacementsBefore;
+    }
+
+    /**
+     * It searchs a place for every product of the batch, the ones that do not find any...go back to the head
+     * of their own line (so they are not lost, and they keep their turn). The line is not halted: it is the credits
+     * that keep it from producing more than the kitchen can take.
+     * @return the products that went back to their lines.
+     */
+    private List<Product> placeBatchOrPutBack(List<Product> batch) {
+
+        List<Product> noRoom = cooker.cookAll(batch);
+
+        // Backwards: every one goes in front of the ones that came after it, so each line keeps its order.
+        for (int i = noRoom.size() - 1; i >= 0; i--) {
+            Product product = noRoom.get(i);
+            if (journal != null) {
+                journal.append(ProductState.WAITING, product); // Before its line has it: another worker might take it at once.
+            }
+            assemblyLines.get(((Food) product).getAssemblyLineId()).putBack(product);
+            log.log(EventType.PRODUCT_PUT_BACK, product);
+        }
+
+        return noRoom;
+    }
+
+    private static boolean containsSameProduct(List<Product> products, Product product) {
+        for (Product candidate : products) {
+            if (candidate == product) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasStoredProducts() {
+        for (Store store : stores) {
+            if (((StoreImpl) store).getStoredProductsCount() > 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Before we go for the AssemblyLine, we go into the Stores and
      * checkout for any remaining item to cook!
-     * @return
+     * @return how many products were taken from the stores.
      */
-    private Product tryGettingProductFromStoresFirst() {
-        Product product=null;
+    private int takeProductsFromStores(List<Product> batch, int maxProducts) {
+        int taken = 0;
 
         for(Store store : stores){
-            product = store.take();  // Store must be implemented as a Queue: it will return null if the Queue is empty.
-        };
+            Product product = store.take();  // Store must be implemented as a Queue: it will return null if the Queue is empty.
+
+            while (product != null){
+                batch.add(product);
+                taken++;
 
-        return product;
+                product = taken < maxProducts ? store.take() : null;
+            }
+
+            if (taken == maxProducts){
+                break;
+            }
+        }
+
+        return taken;
     }
 
     /**
@@ -139,16 +743,83 @@ public class Kitchen {
      *
      */
     public void stop() {
+        if (autoscaler != null) {
+            autoscaler.stop(); // The ovens stay as they are.
+        }
         // Turn Off all the ovens
         cooker.turnOffAllOvens();
         endKitchen = true;
+        dispatcher.stop();
+        if (producers != null) {
+            producers.shutdownNow(); // The lines were stopped already; this wakes up the ones still sleeping.
+            try {
+                producers.awaitTermination(PRODUCERS_STOP_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        metrics.unregisterMBeans();
     }
 
     /**
-     * Brutal! but necessary option...
+     * Brutal! but necessary option... The journal is left as a crash would leave it, for the next run to recover.
      */
     public void kill(){
-        executorCooker.shutdownNow();
-        executorDispatcher.shutdownNow();
+        endKitchen = true;
+        dispatcher.stop(); // The turns on a dispatch pool are not ours to kill; they just find nothing to do.
+        if (executorCooker != null) {
+            executorCooker.shutdownNow();
+        }
+        if (producers != null) {
+            producers.shutdownNow();
+        }
+        scheduler.stop();
+        if (journal != null) {
+            journal.abandon();
+        }
+    }
+
+    /**
+     * How many products are cooking right now, in all the ovens.
+     * @return
+     */
+    public long countProductsInOvens() {
+        return cooker.getProductsInOvens();
+    }
+
+    /**
+     * How many products are waiting in the stores.
+     * @return
+     */
+    public long countStoredProducts() {
+        return stores.stream().mapToLong(store -> ((StoreImpl) store).getStoredProductsCount()).sum();
+    }
+
+    /**
+     * It knows the oven capacity (cm2·s) every line received so far, and its share of the total; to check the fairness.
+     * @return
+     */
+    public FairShareScheduler getFairShare() {
+        return fairShare;
+    }
+
+    /**
+     * Every figure of the kitchen and its lines; a snapshot of them takes no lock.
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public KitchenDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Every timing of the kitchen, and of the lines that feed it, goes through this scheduler.
+     * @return
+     */
+    public TaskScheduler getScheduler() {
+        return scheduler;
     }
 }
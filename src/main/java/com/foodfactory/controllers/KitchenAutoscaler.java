@@ -0,0 +1,165 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.metrics.MetricsRegistry;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Oven;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds ovens to the kitchen when it cannot keep up, and takes them out again when it is idle; so a peak of load is
+ * absorbed without a restart (and without losing a product: a removed oven finishes what it is cooking).
+ *
+ * Once every interval (of the kitchen's clock), it looks at:
+ * - the halt rate: the fraction of the interval the lines spent parked, waiting for credits (there was no room).
+ * - the occupancy of the stores: a full store means the ovens are not enough either.
+ * If any of them is over its threshold, it adds an oven (up to the max). If the ovens are under the idle threshold,
+ * the stores are empty and nobody halted, for IDLE_CHECKS intervals in a row, it removes the last oven it added.
+ * The ovens of the config are never removed.
+ */
+public class KitchenAutoscaler {
+
+    private static final int IDLE_CHECKS = 3; // So a lull between two bursts does not take an oven away.
+
+    private final Kitchen kitchen;
+    private final TaskScheduler scheduler;
+    private final MetricsRegistry metrics;
+    private final long intervalNanos;
+    private final double ovenSize;
+    private final int maxOvens;
+    private final double haltThreshold;
+    private final double storeThreshold;
+    private final double idleThreshold;
+    private final Deque<Oven> addedOvens = new ArrayDeque<>(); // Only the scheduler's thread touches it.
+    private final LongAdder ovensAdded = new LongAdder();
+    private final LongAdder ovensRemoved = new LongAdder();
+    private volatile boolean running = false;
+    private volatile double lastHaltRate = 0;
+    private long lastParkedNanos = 0;
+    private long lastCheck = 0;
+    private int idleChecks = 0;
+
+    /**
+     * @param kitchen
+     * @param interval how often it checks the load.
+     * @param ovenSize of the ovens it adds.
+     * @param maxOvens it never goes over this many open ovens in the kitchen.
+     * @param haltThreshold from 0 to 1: the halt rate over which it adds an oven.
+     * @param storeThreshold from 0 to 1: the occupancy of the stores over which it adds an oven.
+     * @param idleThreshold from 0 to 1: the occupancy of the ovens under which they are idle.
+     */
+    public KitchenAutoscaler(Kitchen kitchen, Duration interval, double ovenSize, int maxOvens, double haltThreshold, double storeThreshold, double idleThreshold) {
+        this.kitchen = kitchen;
+        this.scheduler = kitchen.getScheduler();
+        this.metrics = kitchen.getMetrics();
+        this.intervalNanos = interval.toNanos();
+        this.ovenSize = ovenSize;
+        this.maxOvens = maxOvens;
+        this.haltThreshold = haltThreshold;
+        this.storeThreshold = storeThreshold;
+        this.idleThreshold = idleThreshold;
+    }
+
+    /**
+     * The first check is one interval from now.
+     */
+    public void start() {
+        running = true;
+        lastCheck = scheduler.nanoTime();
+        lastParkedNanos = parkedNanos();
+        scheduler.schedule(this::check, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * No more checks; the ovens it added stay.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    private void check() {
+
+        if (!running) {
+            return;
+        }
+
+        long now = scheduler.nanoTime();
+        long parked = parkedNanos();
+        int lines = kitchen.getAssemblyLines().size();
+
+        // The retired lines take their parked time with them; a negative difference is no halt at all.
+        lastHaltRate = lines == 0 || now == lastCheck ? 0 : Math.max(0, (double) (parked - lastParkedNanos) / ((now - lastCheck) * (double) lines));
+        lastParkedNanos = parked;
+        lastCheck = now;
+
+        double storeOccupancy = metrics.getStoreOccupancy();
+
+        if (lastHaltRate > haltThreshold || storeOccupancy > storeThreshold) {
+            idleChecks = 0;
+            if (countOpenOvens() < maxOvens) {
+                Oven oven = new OvenImpl(ovenSize);
+                kitchen.addOven(oven);
+                addedOvens.push(oven);
+                ovensAdded.increment();
+            }
+        } else if (!addedOvens.isEmpty() && lastHaltRate == 0 && storeOccupancy == 0 && metrics.getOvenOccupancy() < idleThreshold) {
+            if (++idleChecks >= IDLE_CHECKS) {
+                idleChecks = 0;
+                kitchen.removeOven(addedOvens.pop());
+                ovensRemoved.increment();
+            }
+        } else {
+            idleChecks = 0;
+        }
+
+        scheduler.schedule(this::check, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private long parkedNanos() {
+
+        long parked = 0;
+
+        for (AssemblyLine assemblyLine : kitchen.getAssemblyLines()) {
+            parked += assemblyLine.getParkedNanos();
+        }
+
+        return parked;
+    }
+
+    private int countOpenOvens() {
+        return (int) kitchen.getOvens().stream().filter(oven -> !((OvenImpl) oven).isClosed()).count();
+    }
+
+    /**
+     * @return how many ovens it added so far.
+     */
+    public long getOvensAdded() {
+        return ovensAdded.sum();
+    }
+
+    /**
+     * @return how many of them it removed so far (they might still be finishing their products).
+     */
+    public long getOvensRemoved() {
+        return ovensRemoved.sum();
+    }
+
+    /**
+     * @return the halt rate of the last check, from 0 to 1.
+     */
+    public double getLastHaltRate() {
+        return lastHaltRate;
+    }
+
+    @Override
+    public String toString() {
+        return "Autoscaler: " + getOvensAdded() + " ovens added, " + getOvensRemoved() + " removed - last halt rate: "
+                + Math.round(lastHaltRate * 100) + "%";
+    }
+}
@@ -0,0 +1,244 @@
+package com.foodfactory.controllers;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Wakes up the Kitchen's cooker threads (the dispatch workers) only when there is something to do.
+ * Instead of spinning over the assembly lines, every worker parks here until one of these happens:
+ * a product arrives on one of its lines, an oven slot frees up, the contents of a store change, or a line runs out
+ * of credits. A product arriving, or a line asking for credits, wakes up the worker that owns the line; a freed oven or a store change wakes them all,
+ * since any of their lines might have been waiting for the room.
+ *
+ * The signal is a "permit": if it is raised while the worker is busy, its next await returns at once;
+ * so no wake up is ever lost. Raising it is a CAS plus, at most, one unpark (microseconds).
+ * The changes the workers make themselves (e.g. storing a product) do not wake them up again.
+ *
+ * The workers might have no threads of their own, too (see runOn()): then a signal hands one turn of the worker to
+ * an executor that many kitchens share, and the turn gives the thread back as soon as it is done.
+ */
+public class KitchenDispatcher {
+
+    public enum WakeUpReason {
+        PRODUCT_ARRIVED,
+        OVEN_SLOT_FREED,
+        STORE_CHANGED,
+        CREDITS_WANTED,
+        LINE_RETIRING,
+        CAPACITY_CHANGED,
+        LINE_HANDED_BACK
+    }
+
+    private final ThreadLocal<Boolean> isWorker = ThreadLocal.withInitial(() -> false);
+    private final LongAdder[] wakeUps = new LongAdder[WakeUpReason.values().length];
+    private volatile Worker[] workers;
+    private volatile boolean stopped = false;
+    private volatile Executor executor = null; // With one, the workers are turns on it; with none, threads that park here.
+    private volatile IntConsumer turn = null;
+
+    public KitchenDispatcher() {
+        this(1);
+    }
+
+    public KitchenDispatcher(int workerCount) {
+        for (int i = 0; i < wakeUps.length; i++) {
+            wakeUps[i] = new LongAdder();
+        }
+
+        setWorkerCount(workerCount);
+    }
+
+    /**
+     * Only meant to be called before the Kitchen starts its workers.
+     * @param workerCount
+     */
+    public void setWorkerCount(int workerCount) {
+
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("There must be at least one dispatch worker.");
+        }
+
+        Worker[] newWorkers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            newWorkers[i] = new Worker();
+        }
+
+        this.workers = newWorkers;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Tells every worker there might be work to do. It can be called from any thread.
+     * @param reason
+     */
+    public void signal(WakeUpReason reason) {
+
+        if (isWorker.get()) {
+            return; // A worker changed it itself, while dispatching; the workers already know.
+        }
+
+        wakeUps[reason.ordinal()].increment();
+
+        Worker[] current = workers;
+        for (int i = 0; i < current.length; i++) {
+            wakeUp(i, current[i]);
+        }
+    }
+
+    /**
+     * Tells the given worker there might be work to do. It can be called from any thread.
+     * @param reason
+     * @param workerIndex
+     */
+    public void signal(WakeUpReason reason, int workerIndex) {
+
+        if (isWorker.get()) {
+            return;
+        }
+
+        wakeUps[reason.ordinal()].increment();
+
+        Worker[] current = workers;
+        wakeUp(workerIndex % current.length, current[workerIndex % current.length]);
+    }
+
+    /**
+     * A worker that stole a turn of a line gives it back to its owner, which might have skipped it while it was taken:
+     * the one signal that goes through from a worker, since it is for another worker.
+     * @param workerIndex the owner of the line.
+     */
+    public void handBack(int workerIndex) {
+
+        wakeUps[WakeUpReason.LINE_HANDED_BACK.ordinal()].increment();
+
+        Worker[] current = workers;
+        wakeUp(workerIndex % current.length, current[workerIndex % current.length]);
+    }
+
+    /**
+     * The workers have no threads of their own from now on: every signal hands a turn of the worker (at most one at a
+     * time, per worker) to the given executor; e.g. a pool that many kitchens share. A turn that finds more signals
+     * when it is done goes to the back of the executor's queue, so a busy kitchen does not keep a thread for itself.
+     * Only meant to be called once, instead of awaitWork().
+     * @param executor
+     * @param turn what a worker does on its turn, by the index of the worker.
+     */
+    public void runOn(Executor executor, IntConsumer turn) {
+
+        this.turn = turn;
+        this.executor = executor;
+
+        Worker[] current = workers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].workPending.get()) {
+                schedule(i, current[i]); // Signalled before we had an executor.
+            }
+        }
+    }
+
+    private void wakeUp(int workerIndex, Worker worker) {
+
+        if (worker.workPending.compareAndSet(false, true)) {
+            if (executor != null) {
+                schedule(workerIndex, worker);
+            } else {
+                Thread waiting = worker.waitingThread;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+        }
+    }
+
+    private void schedule(int workerIndex, Worker worker) {
+
+        if (stopped || !worker.scheduled.compareAndSet(false, true)) {
+            return; // Its turn is coming, or running: it sees the signal.
+        }
+
+        try {
+            executor.execute(() -> runTurn(workerIndex, worker));
+        } catch (RejectedExecutionException e) {
+            worker.scheduled.set(false); // The executor is shutting down; so is the kitchen.
+        }
+    }
+
+    private void runTurn(int workerIndex, Worker worker) {
+
+        isWorker.set(true);
+
+        try {
+            if (!stopped && worker.workPending.compareAndSet(true, false)) {
+                turn.accept(workerIndex);
+            }
+        } finally {
+            isWorker.set(false); // The thread goes on with the turns of other kitchens.
+            worker.scheduled.set(false);
+        }
+
+        // A signal that came while we were done but still scheduled found no way in; we let it in now.
+        if (worker.workPending.get()) {
+            schedule(workerIndex, worker);
+        }
+    }
+
+    /**
+     * Parks the calling thread (a dispatch worker) until a signal arrives or the dispatcher is stopped.
+     * @param workerIndex
+     * @return false if the dispatcher has been stopped.
+     */
+    public boolean awaitWork(int workerIndex) {
+
+        isWorker.set(true);
+
+        Worker worker = workers[workerIndex];
+        worker.waitingThread = Thread.currentThread();
+
+        try {
+            while (!stopped && !worker.workPending.compareAndSet(true, false)) {
+                LockSupport.park(this); // Spurious wake ups just go around the loop.
+            }
+        } finally {
+            worker.waitingThread = null;
+        }
+
+        return !stopped;
+    }
+
+    /**
+     * Releases every worker for good.
+     */
+    public void stop() {
+        stopped = true;
+
+        for (Worker worker : workers) {
+            Thread waiting = worker.waitingThread;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+
+    /**
+     * How many times the given event asked the workers for a dispatch.
+     * @param reason
+     * @return
+     */
+    public long getWakeUps(WakeUpReason reason) {
+        return wakeUps[reason.ordinal()].sum();
+    }
+
+    private static final class Worker {
+
+        private final AtomicBoolean workPending = new AtomicBoolean(false);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false); // Only with an executor: a turn is on its way.
+        private volatile Thread waitingThread = null;
+    }
+}
@@ -0,0 +1,185 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import com.foodfactory.model.Product;
+import com.foodfactory.scheduling.TaskScheduler;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.EventType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The batch cooking mode: an oven runs whole cycles (Oven.turnOn(Duration)) instead of one timer per product.
+ *
+ * The first product that goes into an idle oven starts a cycle as long as its cook time. Until the cycle ends,
+ * other products can join it if what is left of the cycle covers their cook time, with no more than the tolerance
+ * on top (a compatible product is, at most, a little overcooked; never undercooked). When the cycle ends, the whole
+ * batch is taken out at once. A product that cannot join any cycle waits for an idle oven, and starts its own.
+ *
+ * Every cycle costs one timer, whatever the products in it. We keep the cycles run, and the oven area they wasted:
+ * the room that stayed empty, for as long as the cycle lasted.
+ */
+public class OvenCycles {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final OvenPlacementEngine ovenPlacement;
+    private final TaskScheduler cycleTimers;
+    private final long toleranceNanos;
+    private final Consumer<List<OvenSlot>> batchFinishedListener;
+    private final Map<OvenImpl, Cycle> runningCycles = new ConcurrentHashMap<>();
+    private final long startedAt;
+    private final LongAdder finishedCycles = new LongAdder();
+    private final DoubleAdder cycleSeconds = new DoubleAdder();
+    private final DoubleAdder cycleAreaSeconds = new DoubleAdder(); // The room of the ovens, times the length of their cycles.
+    private final DoubleAdder wastedAreaSeconds = new DoubleAdder();
+    private final EventLog log = EventLog.getInstance();
+
+    /**
+     * @param ovenPlacement the Kitchen's index of the ovens' free room.
+     * @param cycleTimers the Kitchen's scheduler; one timer per cycle.
+     * @param tolerance how much longer than its cook time a product may stay in a cycle.
+     * @param batchFinishedListener gets the slots of every batch, when its cycle is over (still not released).
+     */
+    public OvenCycles(OvenPlacementEngine ovenPlacement, TaskScheduler cycleTimers, Duration tolerance, Consumer<List<OvenSlot>> batchFinishedListener) {
+        this.ovenPlacement = ovenPlacement;
+        this.cycleTimers = cycleTimers;
+        this.toleranceNanos = tolerance.toNanos();
+        this.batchFinishedListener = batchFinishedListener;
+        this.startedAt = cycleTimers.nanoTime();
+    }
+
+    /**
+     * Puts the product in a running cycle it is compatible with, or else starts a cycle in an idle oven.
+     * @param product
+     * @return the slot where it is cooking, or null if there is no room for it in any compatible oven.
+     */
+    public synchronized OvenSlot load(Product product) {
+
+        long now = cycleTimers.nanoTime();
+        long cookNanos = product.cookTimeNanos();
+
+        // Batching first: a running cycle it can join.
+        OvenSlot slot = ovenPlacement.place(product, oven -> canJoin(runningCycles.get(oven), now, cookNanos));
+
+        if (slot == null) {
+            slot = ovenPlacement.place(product, oven -> !runningCycles.containsKey(oven));
+        }
+
+        if (slot == null) {
+            return null;
+        }
+
+        Cycle cycle = runningCycles.get(slot.getOven());
+
+        if (cycle == null) {
+            cycle = startCycle(slot.getOven(), now, Duration.ofNanos(cookNanos));
+        }
+
+        cycle.slots.add(slot);
+        cycle.loadedAreaSeconds += product.size() * (cycle.endsAt - now) / NANOS_PER_SECOND;
+
+        return slot;
+    }
+
+    /**
+     * @return how many cycles the ovens completed per hour (of the scheduler's clock) since the mode was set.
+     */
+    public double getCyclesPerHour() {
+
+        double hours = (cycleTimers.nanoTime() - startedAt) / NANOS_PER_SECOND / 3600;
+
+        return hours == 0 ? 0 : finishedCycles.sum() / hours;
+    }
+
+    public long getFinishedCycles() {
+        return finishedCycles.sum();
+    }
+
+    /**
+     * @return the room (cm2) that stayed empty in the ovens during the cycles, on average.
+     */
+    public double getWastedArea() {
+        return cycleSeconds.sum() == 0 ? 0 : wastedAreaSeconds.sum() / cycleSeconds.sum();
+    }
+
+    /**
+     * @return the fraction (from 0 to 1) of the ovens' room that was wasted during the cycles.
+     */
+    public double getWastedAreaFraction() {
+        return cycleAreaSeconds.sum() == 0 ? 0 : wastedAreaSeconds.sum() / cycleAreaSeconds.sum();
+    }
+
+    private boolean canJoin(Cycle cycle, long now, long cookNanos) {
+
+        if (cycle == null) {
+            return false;
+        }
+
+        long remaining = cycle.endsAt - now;
+
+        return remaining >= cookNanos && remaining - cookNanos <= toleranceNanos;
+    }
+
+    private Cycle startCycle(OvenImpl oven, long now, Duration duration) {
+
+        Cycle cycle = new Cycle(oven, now + duration.toNanos(), duration);
+        runningCycles.put(oven, cycle);
+
+        oven.turnOn(duration);
+        cycleTimers.schedule(() -> finishCycle(cycle), duration.toNanos(), TimeUnit.NANOSECONDS);
+
+        return cycle;
+    }
+
+    /**
+     * Runs in the scheduler, once the cycle is over: nothing can join it anymore, and the whole batch comes out.
+     */
+    private void finishCycle(Cycle cycle) {
+
+        List<OvenSlot> batch;
+
+        synchronized (this) {
+            runningCycles.remove(cycle.oven, cycle);
+            cycle.oven.turnOff();
+            batch = new ArrayList<>(cycle.slots);
+
+            double areaSeconds = cycle.oven.size() * cycle.duration.toNanos() / NANOS_PER_SECOND;
+            cycleSeconds.add(cycle.duration.toNanos() / NANOS_PER_SECOND);
+            cycleAreaSeconds.add(areaSeconds);
+            wastedAreaSeconds.add(areaSeconds - cycle.loadedAreaSeconds);
+            finishedCycles.increment();
+        }
+
+        log.log(EventType.CYCLE_FINISHED, -1, cycle.oven.size(), cycle.duration.getSeconds(), batch.size());
+
+        batchFinishedListener.accept(batch);
+    }
+
+    /**
+     * A running cycle; guarded by the OvenCycles' lock.
+     */
+    private static final class Cycle {
+
+        private final OvenImpl oven;
+        private final long endsAt;
+        private final Duration duration;
+        private final List<OvenSlot> slots = new ArrayList<>();
+        private double loadedAreaSeconds = 0; // The room every product took, for as long as it was in the cycle.
+
+        Cycle(OvenImpl oven, long endsAt, Duration duration) {
+            this.oven = oven;
+            this.endsAt = endsAt;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import com.foodfactory.model.Product;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Decides in which oven a product goes, without trying them one by one.
+ *
+ * The ovens are indexed by their free room twice:
+ * - a max segment tree, in the order they were added: the first oven that fits (first-fit) is found in O(log M).
+ * - a sorted set of (free room, oven): the tightest (best-fit) or the roomiest (worst-fit) oven is found in O(log M).
+ *
+ * The index is updated when a product goes in (here) and when one comes out (the oven tells us). It may lag behind
+ * a release for an instant, which only makes it underestimate the free room; so whatever oven it picks does fit.
+ *
+ * Ovens come and go while the kitchen runs: a closed oven shows no room at all (CLOSED), so it is never picked;
+ * once it is empty and removed, the next oven added takes its place in the index.
+ */
+public class OvenPlacementEngine {
+
+    public enum PlacementPolicy {
+        FIRST_FIT,
+        BEST_FIT,
+        WORST_FIT
+    }
+
+    private static final long CLOSED = -1; // Less than any product needs.
+
+    private final List<OvenImpl> ovens = new ArrayList<>(); // Null where an oven was removed.
+    private final List<OvenEntry> entries = new ArrayList<>();
+    private final ArrayDeque<Integer> freeIndexes = new ArrayDeque<>(); // Of the removed ovens.
+    private final TreeSet<OvenEntry> byFreeRoom = new TreeSet<>();
+    private long[] maxFreeTree = new long[2]; // Segment tree over the ovens' free room; the leaves start at leafCount.
+    private int leafCount = 1;
+    private volatile PlacementPolicy policy;
+
+    public OvenPlacementEngine(PlacementPolicy policy) {
+        this.policy = policy;
+    }
+
+    public synchronized void addOven(OvenImpl oven) {
+
+        Integer freeIndex = freeIndexes.poll();
+        OvenEntry entry = new OvenEntry(freeIndex != null ? freeIndex : ovens.size(), oven.getFreeUnits());
+
+        if (freeIndex != null) {
+            ovens.set(entry.index, oven);
+            entries.set(entry.index, entry);
+        } else {
+            ovens.add(oven);
+            entries.add(entry);
+        }
+        byFreeRoom.add(entry);
+
+        if (ovens.size() > leafCount) {
+            growTree();
+        } else {
+            updateTree(entry.index, entry.freeUnits);
+        }
+
+        oven.setRoomFreedListener(() -> refresh(entry.index));
+    }
+
+    /**
+     * Nothing is placed in the oven from now on; the products in it finish cooking. Under the same lock as the
+     * placements, so none of them is halfway in.
+     * @param oven
+     */
+    public synchronized void closeOven(OvenImpl oven) {
+
+        int index = ovens.indexOf(oven);
+
+        if (index < 0) {
+            return;
+        }
+
+        oven.close();
+        refresh(index);
+    }
+
+    /**
+     * Takes a closed oven out of the index; it should be empty (see Kitchen.removeOven()).
+     * @param oven
+     */
+    public synchronized void removeOven(OvenImpl oven) {
+
+        int index = ovens.indexOf(oven);
+
+        if (index < 0 || !oven.isClosed()) {
+            return;
+        }
+
+        oven.setRoomFreedListener(() -> {});
+        byFreeRoom.remove(entries.get(index));
+        ovens.set(index, null);
+        freeIndexes.push(index);
+    }
+
+    /**
+     * Puts the product in the oven the policy chooses.
+     * @param product
+     * @return the slot where it is cooking, or null if no oven has room for it (no exception is thrown).
+     */
+    public synchronized OvenSlot place(Product product) {
+
+        long productUnits = OvenImpl.toUnits(product.size());
+        int index = findOven(productUnits);
+
+        while (index >= 0) {
+
+            OvenSlot slot = ovens.get(index).tryPut(product);
+            refresh(index);
+
+            if (slot != null) {
+                return slot;
+            }
+
+            index = findOven(productUnits); // Somebody else filled it behind our back; the index is up to date now.
+        }
+
+        return null;
+    }
+
+    /**
+     * Puts the product in an oven the policy chooses, among the ones that have room and the caller accepts.
+     * The candidates are walked in the order of the policy, so it costs O(M) in the worst case; no oven is skipped.
+     * @param product
+     * @param accepts e.g. only the ovens running a cycle the product can join.
+     * @return the slot where it is cooking, or null if no accepted oven has room for it.
+     */
+    public synchronized OvenSlot place(Product product, Predicate<OvenImpl> accepts) {
+
+        long productUnits = OvenImpl.toUnits(product.size());
+
+        for (int index : candidates(productUnits)) {
+
+            if (!accepts.test(ovens.get(index))) {
+                continue;
+            }
+
+            OvenSlot slot = ovens.get(index).tryPut(product);
+            refresh(index);
+
+            if (slot != null) {
+                return slot;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Puts a whole batch of products in the ovens, under one lock.
+     * @param products
+     * @return the slot of every product, in the same order; null for the ones that did not fit.
+     */
+    public synchronized OvenSlot[] placeAll(List<? extends Product> products) {
+
+        OvenSlot[] slots = new OvenSlot[products.size()];
+
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = place(products.get(i));
+        }
+
+        return slots;
+    }
+
+    public void setPolicy(PlacementPolicy policy) {
+        this.policy = policy;
+    }
+
+    public PlacementPolicy getPolicy() {
+        return policy;
+    }
+
+    private int findOven(long productUnits) {
+
+        switch (policy) {
+            case BEST_FIT:
+                OvenEntry tightest = byFreeRoom.ceiling(new OvenEntry(-1, productUnits));
+                return tightest == null ? -1 : tightest.index;
+            case WORST_FIT:
+                OvenEntry roomiest = byFreeRoom.isEmpty() ? null : byFreeRoom.last();
+                return roomiest == null || roomiest.freeUnits < productUnits ? -1 : roomiest.index;
+            default:
+                return firstFit(productUnits);
+        }
+    }
+
+    /**
+     * Every oven with room for the product, in the order the policy would pick them.
+     */
+    private List<Integer> candidates(long productUnits) {
+
+        List<Integer> candidates = new ArrayList<>();
+
+        switch (policy) {
+            case BEST_FIT:
+                byFreeRoom.tailSet(new OvenEntry(-1, productUnits)).forEach(entry -> candidates.add(entry.index));
+                break;
+            case WORST_FIT:
+                byFreeRoom.descendingSet().headSet(new OvenEntry(-1, productUnits)).forEach(entry -> candidates.add(entry.index));
+                break;
+            default:
+                entries.stream().filter(entry -> entry.freeUnits >= productUnits).forEach(entry -> candidates.add(entry.index));
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Goes down the segment tree, always to the leftmost child with enough room.
+     */
+    private int firstFit(long productUnits) {
+
+        if (ovens.isEmpty() || maxFreeTree[1] < productUnits) {
+            return -1;
+        }
+
+        int node = 1;
+        while (node < leafCount) {
+            node = maxFreeTree[2 * node] >= productUnits ? 2 * node : 2 * node + 1;
+        }
+
+        return node - leafCount;
+    }
+
+    /**
+     * Reads the free room of the oven again, and moves it in both indexes.
+     */
+    private synchronized void refresh(int index) {
+
+        OvenImpl oven = ovens.get(index);
+
+        if (oven == null) {
+            return; // It was removed; the index of its room stays CLOSED until another oven takes its place.
+        }
+
+        OvenEntry entry = entries.get(index);
+        long freeUnits = oven.isClosed() ? CLOSED : oven.getFreeUnits();
+
+        if (entry.freeUnits == freeUnits) {
+            return;
+        }
+
+        byFreeRoom.remove(entry);
+        entry.freeUnits = freeUnits;
+        byFreeRoom.add(entry);
+
+        updateTree(index, freeUnits);
+    }
+
+    private void updateTree(int index, long freeUnits) {
+
+        int node = index + leafCount;
+        maxFreeTree[node] = freeUnits;
+
+        for (node /= 2; node > 0; node /= 2) {
+            maxFreeTree[node] = Math.max(maxFreeTree[2 * node], maxFreeTree[2 * node + 1]);
+        }
+    }
+
+    private void growTree() {
+
+        while (leafCount < ovens.size()) {
+            leafCount *= 2;
+        }
+
+        maxFreeTree = new long[2 * leafCount];
+
+        for (OvenEntry entry : entries) {
+            maxFreeTree[entry.index + leafCount] = entry.freeUnits;
+        }
+
+        for (int node = leafCount - 1; node > 0; node--) {
+            maxFreeTree[node] = Math.max(maxFreeTree[2 * node], maxFreeTree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * An oven in the sorted set; ties on the free room are broken by the order the ovens were added.
+     */
+    private static final class OvenEntry implements Comparable<OvenEntry> {
+
+        private final int index;
+        private long freeUnits;
+
+        OvenEntry(int index, long freeUnits) {
+            this.index = index;
+            this.freeUnits = freeUnits;
+        }
+
+        @Override
+        public int compareTo(OvenEntry other) {
+            int byRoom = Long.compare(freeUnits, other.freeUnits);
+            return byRoom != 0 ? byRoom : Integer.compare(index, other.index);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.AssemblyLineRegistry;
+import com.foodfactory.model.Oven;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.Store;
+import com.foodfactory.model.StoreImpl;
+
+import java.util.List;
+
+/**
+ * The Kitchen's side of the flow control with the assembly lines: a line only produces when it holds a credit,
+ * and the Kitchen only hands out credits for the room it really has, in its ovens and stores.
+ *
+ * Every credit (and every product already waiting on a line) is backed by the room of the biggest product.
+ * So there is never more work on its way than the kitchen can hold; a line without credits parks, it does not spin.
+ * The credits are handed out one by one, round robin, starting one line further every time; a line that holds as
+ * many as its limit (see AssemblyLine.setCreditLimit()) is skipped, so it cannot keep the room of all the others.
+ */
+public class ProductionCredits {
+
+    private final List<Oven> ovens;
+    private final List<Store> stores;
+    private final double roomPerCredit;
+    private int nextLine = 0; // Guarded by "this".
+
+    /**
+     * @param ovens the Kitchen's ovens.
+     * @param stores the Kitchen's stores.
+     * @param roomPerCredit the room (cm2) a credit stands for; the size of the biggest product a line makes.
+     */
+    public ProductionCredits(List<Oven> ovens, List<Store> stores, double roomPerCredit) {
+        this.ovens = ovens;
+        this.stores = stores;
+        this.roomPerCredit = roomPerCredit;
+    }
+
+    /**
+     * Hands out the credits the free room allows, among the given lines.
+     * @param assemblyLines
+     * @return how many credits were handed out.
+     */
+    public synchronized int replenish(AssemblyLineRegistry assemblyLines) {
+
+        if (assemblyLines == null || assemblyLines.isEmpty()) {
+            return 0;
+        }
+
+        double promisedRoom = 0;
+        for (AssemblyLine assemblyLine : assemblyLines) {
+            promisedRoom += (assemblyLine.getCredits() + assemblyLine.getWaitingProductsCount()) * roomPerCredit;
+        }
+
+        int available = (int) Math.floor((getFreeRoom() - promisedRoom) / roomPerCredit);
+        int granted = 0;
+        int skipped = 0; // Lines in a row that were full; once all of them are, we are done.
+
+        while (granted < available && skipped < assemblyLines.size()) {
+            int lines = assemblyLines.size();
+            AssemblyLine assemblyLine = assemblyLines.at(nextLine % lines);
+            nextLine = (nextLine + 1) % lines;
+
+            if (assemblyLine == null || assemblyLine.getCredits() >= assemblyLine.getCreditLimit()) { // Null: it just left.
+                skipped++;
+                continue;
+            }
+
+            assemblyLine.grantCredits(1);
+            granted++;
+            skipped = 0;
+        }
+
+        return granted;
+    }
+
+    /**
+     * @return the free room (cm2) of all the ovens and stores together; the ones being removed have none.
+     */
+    public double getFreeRoom() {
+
+        double freeRoom = 0;
+
+        for (Oven oven : ovens) {
+            if (!((OvenImpl) oven).isClosed()) {
+                freeRoom += ((OvenImpl) oven).getFreeSize();
+            }
+        }
+
+        for (Store store : stores) {
+            if (!((StoreImpl) store).isClosed()) {
+                freeRoom += ((StoreImpl) store).getSize() - ((StoreImpl) store).getOccupiedSize();
+            }
+        }
+
+        return freeRoom;
+    }
+}
@@ -0,0 +1,192 @@
+package com.foodfactory.ingress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A plain, blocking producer for the IngressServer: it registers lines, submits batches and waits for the answers.
+ * The frames that arrive meanwhile are kept: the credits of every line, and its finished products, in order.
+ *
+ * Not thread safe: one thread per client.
+ */
+public class IngressClient implements Closeable {
+
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Map<Integer, Integer> credits = new HashMap<>();
+    private final Map<Integer, ArrayDeque<Long>> finishedProducts = new HashMap<>();
+    private int registeredLine = -1;
+    private boolean accepted = false;
+    private long firstAcceptedOrderNumber = -1;
+    private int acceptedCount = 0;
+
+    private IngressClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public static IngressClient connect(InetSocketAddress address) throws IOException {
+
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS); // A server that does not answer is an error, not a hang.
+        socket.connect(address);
+
+        return new IngressClient(socket);
+    }
+
+    /**
+     * @return the id of the new line.
+     */
+    public int registerAssemblyLine() throws IOException {
+
+        out.writeInt(1);
+        out.writeByte(IngressProtocol.REGISTER);
+        out.flush();
+
+        registeredLine = -1;
+        while (registeredLine < 0) {
+            readFrame();
+        }
+
+        return registeredLine;
+    }
+
+    /**
+     * Submits a batch of products and waits for the answer. The accepted ones are the first of the batch, numbered
+     * from getFirstAcceptedOrderNumber() on.
+     * @param lineId
+     * @param sizes in cm2.
+     * @param cookTimes in seconds.
+     * @param count how many of them (up to IngressProtocol.MAX_BATCH).
+     * @return how many were accepted; the rest had no credit.
+     */
+    public int submit(int lineId, int[] sizes, int[] cookTimes, int count) throws IOException {
+
+        out.writeInt(1 + 8 + count * IngressProtocol.PRODUCT_SIZE);
+        out.writeByte(IngressProtocol.SUBMIT);
+        out.writeInt(lineId);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(sizes[i]);
+            out.writeInt(cookTimes[i]);
+        }
+        out.flush();
+
+        accepted = false;
+        while (!accepted) {
+            readFrame();
+        }
+
+        credits.merge(lineId, -acceptedCount, Integer::sum);
+
+        return acceptedCount;
+    }
+
+    public long getFirstAcceptedOrderNumber() {
+        return firstAcceptedOrderNumber;
+    }
+
+    /**
+     * @return the credits of the line, as far as the frames read so far tell.
+     */
+    public int getCredits(int lineId) {
+        return credits.getOrDefault(lineId, 0);
+    }
+
+    /**
+     * Reads frames until the line has, at least, the given credits.
+     */
+    public void awaitCredits(int lineId, int atLeast) throws IOException {
+        while (getCredits(lineId) < atLeast) {
+            readFrame();
+        }
+    }
+
+    /**
+     * Reads frames until the line has, at least, the given finished products; then takes them.
+     * @return their order numbers, in order.
+     */
+    public long[] awaitFinished(int lineId, int count) throws IOException {
+
+        ArrayDeque<Long> finished = finishedProducts.computeIfAbsent(lineId, id -> new ArrayDeque<>());
+
+        while (finished.size() < count) {
+            readFrame();
+        }
+
+        long[] orderNumbers = new long[count];
+        for (int i = 0; i < count; i++) {
+            orderNumbers[i] = finished.poll();
+        }
+
+        return orderNumbers;
+    }
+
+    /**
+     * Takes every finished product read so far.
+     * @return how many there were.
+     */
+    public int drainFinished(int lineId) {
+        ArrayDeque<Long> finished = finishedProducts.get(lineId);
+        int count = finished == null ? 0 : finished.size();
+
+        if (finished != null) {
+            finished.clear();
+        }
+
+        return count;
+    }
+
+    private void readFrame() throws IOException {
+
+        int length = in.readInt();
+        byte type = in.readByte();
+
+        switch (type) {
+            case IngressProtocol.REGISTERED:
+                registeredLine = in.readInt();
+                break;
+            case IngressProtocol.ACCEPTED:
+                in.readInt();
+                firstAcceptedOrderNumber = in.readLong();
+                acceptedCount = in.readInt();
+                accepted = true;
+                break;
+            case IngressProtocol.CREDITS:
+                credits.merge(in.readInt(), in.readInt(), Integer::sum);
+                break;
+            case IngressProtocol.FINISHED:
+                ArrayDeque<Long> finished = finishedProducts.computeIfAbsent(in.readInt(), id -> new ArrayDeque<>());
+                for (int count = in.readInt(); count > 0; count--) {
+                    finished.add(in.readLong());
+                }
+                break;
+            case IngressProtocol.ERROR:
+                byte[] message = new byte[in.readShort()];
+                in.readFully(message);
+                throw new IOException("The ingress server says: " + new String(message, StandardCharsets.UTF_8));
+            default:
+                in.skipBytes(length - 1);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
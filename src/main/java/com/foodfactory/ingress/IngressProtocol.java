@@ -0,0 +1,40 @@
+package com.foodfactory.ingress;
+
+/**
+ * The binary protocol of the IngressServer. Every frame is its length (an int: the bytes that follow it), its type
+ * (a byte) and its payload; all of it big-endian. The sizes are whole cm2 and the cook times whole seconds, as the
+ * products of the factory.
+ *
+ * From the producer:
+ *   REGISTER                                  a new assembly line, fed through this connection.
+ *   SUBMIT     line | count | count x (size int | cook time int)
+ *
+ * From the server:
+ *   REGISTERED line
+ *   ACCEPTED   line | first order number long | accepted int    the first ones of the batch; the rest had no credit.
+ *   CREDITS    line | credits int                                how many more products the line may submit.
+ *   FINISHED   line | count | count x order number long          cooked, in the order they were submitted.
+ *   ERROR      length short | message (UTF-8)
+ *
+ * A producer should not submit more than its credits (the ones granted, minus the ones accepted); what goes beyond
+ * them is not accepted, and should be submitted again later.
+ */
+public final class IngressProtocol {
+
+    public static final byte REGISTER = 1;
+    public static final byte SUBMIT = 2;
+
+    public static final byte REGISTERED = 101;
+    public static final byte ACCEPTED = 102;
+    public static final byte CREDITS = 103;
+    public static final byte FINISHED = 104;
+    public static final byte ERROR = 105;
+
+    public static final int HEADER_SIZE = 5; // length int | type byte
+    public static final int MAX_FRAME_SIZE = 16 * 1024; // Header included.
+    public static final int PRODUCT_SIZE = 8; // size int | cook time int
+    public static final int MAX_BATCH = (MAX_FRAME_SIZE - HEADER_SIZE - 8) / PRODUCT_SIZE; // Products in a SUBMIT.
+
+    private IngressProtocol() {
+    }
+}
@@ -0,0 +1,483 @@
+package com.foodfactory.ingress;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import com.foodfactory.view.AssemblyLineServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lets real assembly lines feed the factory over TCP (see IngressProtocol): a producer registers its lines, submits
+ * products in batches, and gets them back, cooked and in order, over the same connection.
+ *
+ * One selector thread serves every connection; nothing blocks on it, so a few thousand of them cost a few buffers
+ * each. The kitchen never writes to a socket: when it grants credits to a remote line, or releases its finished
+ * products, it only queues the connection and wakes the selector up (once, however many lines asked); the selector
+ * writes what fits in the connection's buffer. A producer that does not read its socket holds its own finished
+ * products on their lines, and its own submissions: nobody else waits for it.
+ */
+public class IngressServer {
+
+    private static final int BUFFER_SIZE = 2 * IngressProtocol.MAX_FRAME_SIZE;
+    private static final int MAX_REPLY_SIZE = 256; // Room a request needs in the output, for its answer.
+    private static final int CREDIT_WINDOW = 512; // Credits a remote line may hold; an idle producer keeps no more room.
+
+    private final AssemblyLineServer assemblyLineServer;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final Queue<Connection> flushRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final AtomicInteger openConnections = new AtomicInteger(0);
+    private final LongAdder acceptedProducts = new LongAdder();
+    private final LongAdder deliveredProducts = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * @param assemblyLineServer where the remote lines are added.
+     * @param address where it listens; port 0 takes any free one (see getPort()).
+     * @throws IOException
+     */
+    public IngressServer(AssemblyLineServer assemblyLineServer, InetSocketAddress address) throws IOException {
+        this.assemblyLineServer = assemblyLineServer;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address, 1024);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::select, "ingress-selector");
+        this.selectorThread.setDaemon(true);
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Closes every connection; their lines stop taking products (what they had goes on cooking). While it runs, a
+     * connection that closes retires its lines instead: they leave the kitchen once they are drained.
+     */
+    public void stop() {
+
+        running = false;
+        selector.wakeup();
+
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return how many products the remote lines submitted, and were accepted.
+     */
+    public long getAcceptedProducts() {
+        return acceptedProducts.sum();
+    }
+
+    /**
+     * @return how many finished products were sent back to the remote lines.
+     */
+    public long getDeliveredProducts() {
+        return deliveredProducts.sum();
+    }
+
+    /**
+     * The selector thread: it accepts, reads and writes whatever is ready; then it writes what the kitchen released.
+     */
+    private void select() {
+
+        try {
+            while (running) {
+
+                selector.select();
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            connection.close(); // The producer went away (or sent garbage); its lines stop, the rest go on.
+                        }
+                    }
+                }
+
+                Connection connection;
+                while ((connection = flushRequests.poll()) != null) {
+                    try {
+                        connection.flush();
+                    } catch (IOException | RuntimeException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("The ingress selector failed", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel = serverChannel.accept();
+
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true); // The frames are written whole; there is nothing to wait for.
+
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        openConnections.incrementAndGet();
+    }
+
+    /**
+     * Called by the kitchen's threads: the selector writes whatever the connection has pending, soon.
+     */
+    private void requestFlush(Connection connection) {
+
+        if (connection.flushRequested.compareAndSet(false, true)) {
+            flushRequests.add(connection);
+
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    private void closeAll() {
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // We are closing anyway.
+        }
+    }
+
+    /**
+     * One producer. Only the selector thread touches it, but for the flush request and the credits of its lines.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Map<Integer, RemoteLine> lines = new HashMap<>();
+        private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+        private final Consumer<Product> finishedProductWriter = product -> out.putLong(((Food) product).getOrderNumber());
+        private SelectionKey key;
+        private boolean closed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+
+            processRequests();
+        }
+
+        void write() throws IOException {
+            flush(); // Whatever was held for the lack of room goes now, if there is room.
+            processRequests(); // And the requests held for the lack of room for their answers.
+        }
+
+        /**
+         * Handles every whole frame in the input, while the output has room for the answers.
+         */
+        private void processRequests() throws IOException {
+
+            in.flip();
+
+            while (!closed && in.remaining() >= IngressProtocol.HEADER_SIZE && out.remaining() >= MAX_REPLY_SIZE) {
+
+                int start = in.position();
+                int length = in.getInt(start);
+
+                if (length < 1 || length > IngressProtocol.MAX_FRAME_SIZE - 4) {
+                    error("Wrong frame length: " + length);
+                    closeAfterWriting();
+                    break;
+                }
+
+                if (in.remaining() < 4 + length) {
+                    break; // The rest of it is still on its way.
+                }
+
+                in.position(start + 4);
+                handle(in.get(), length - 1);
+                in.position(start + 4 + length);
+            }
+
+            if (closed) {
+                return;
+            }
+
+            in.compact();
+            writeOut();
+        }
+
+        private void handle(byte type, int payloadLength) {
+
+            switch (type) {
+                case IngressProtocol.REGISTER:
+                    register();
+                    break;
+                case IngressProtocol.SUBMIT:
+                    submit(payloadLength);
+                    break;
+                default:
+                    error("Unknown frame type: " + type);
+            }
+        }
+
+        private void register() {
+
+            RemoteLine remoteLine = new RemoteLine();
+            remoteLine.line = assemblyLineServer.addRemoteAssemblyLine(granted -> {
+                remoteLine.pendingCredits.addAndGet(granted);
+                requestFlush(this);
+            }, () -> requestFlush(this));
+
+            remoteLine.line.setCreditLimit(CREDIT_WINDOW);
+            lines.put(remoteLine.line.getId(), remoteLine);
+
+            out.putInt(5).put(IngressProtocol.REGISTERED).putInt(remoteLine.line.getId());
+            remoteLine.line.askForCredits();
+        }
+
+        private void submit(int payloadLength) {
+
+            if (payloadLength < 8) {
+                error("Wrong SUBMIT frame: " + payloadLength + " bytes of payload."); // No line id and count to read.
+                return;
+            }
+
+            int lineId = in.getInt();
+            int count = in.getInt();
+            RemoteLine remoteLine = lines.get(lineId);
+
+            if (remoteLine == null) {
+                error("Line " + lineId + " was not registered through this connection.");
+                return;
+            }
+
+            if (count < 0 || count > IngressProtocol.MAX_BATCH || payloadLength != 8 + count * IngressProtocol.PRODUCT_SIZE) {
+                error("Wrong batch of " + count + " products.");
+                return;
+            }
+
+            long firstOrderNumber = -1;
+            int accepted = 0;
+
+            for (int i = 0; i < count; i++) {
+
+                int size = in.getInt();
+                int cookTime = in.getInt();
+
+                if (size < 1 || size > AssemblyLine.MAX_PRODUCT_SIZE || cookTime < 0) {
+                    error("Wrong product: " + size + " cm2, " + cookTime + " s; the batch was cut there.");
+                    break;
+                }
+
+                long orderNumber = remoteLine.line.submitProduct(size, cookTime);
+
+                if (orderNumber < 0) {
+                    break; // No credits left: the rest of the batch is not accepted.
+                }
+
+                firstOrderNumber = accepted == 0 ? orderNumber : firstOrderNumber;
+                accepted++;
+            }
+
+            acceptedProducts.add(accepted);
+            out.putInt(17).put(IngressProtocol.ACCEPTED).putInt(lineId).putLong(firstOrderNumber).putInt(accepted);
+        }
+
+        private void error(String message) {
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(text.length, MAX_REPLY_SIZE - IngressProtocol.HEADER_SIZE - 2);
+
+            out.putInt(3 + length).put(IngressProtocol.ERROR).putShort((short) length).put(text, 0, length);
+        }
+
+        /**
+         * Writes the credits granted to its lines, and their finished products (as many as fit in the output).
+         */
+        void flush() throws IOException {
+
+            flushRequested.set(false);
+
+            if (closed) {
+                return;
+            }
+
+            boolean heldBack = false;
+
+            for (RemoteLine remoteLine : lines.values()) {
+
+                int credits = remoteLine.pendingCredits.getAndSet(0);
+
+                if (credits > 0) {
+                    out.putInt(9).put(IngressProtocol.CREDITS).putInt(remoteLine.line.getId()).putInt(credits);
+                }
+
+                heldBack |= writeFinishedProducts(remoteLine.line);
+
+                if (out.remaining() < MAX_REPLY_SIZE) {
+                    heldBack = true;
+                    break;
+                }
+            }
+
+            if (heldBack) {
+                flushRequested.set(true); // The write interest brings us back, once the socket drains.
+            }
+
+            writeOut();
+        }
+
+        /**
+         * @return true if some were held on the line, for the lack of room.
+         */
+        private boolean writeFinishedProducts(AssemblyLine line) {
+
+            while (true) {
+
+                int room = (out.remaining() - MAX_REPLY_SIZE - IngressProtocol.HEADER_SIZE - 8) / 8; // Room for the credits, and an answer.
+                int maxProducts = Math.min(room, IngressProtocol.MAX_BATCH);
+
+                if (maxProducts <= 0) {
+                    return line.getFinishedProductsCount() > 0;
+                }
+
+                int start = out.position();
+                out.position(start + IngressProtocol.HEADER_SIZE + 8);
+
+                int written = line.consumeFinishedProducts(finishedProductWriter, maxProducts);
+
+                if (written == 0) {
+                    out.position(start);
+                    return false;
+                }
+
+                out.putInt(start, 1 + 8 + written * 8).put(start + 4, IngressProtocol.FINISHED)
+                        .putInt(start + 5, line.getId()).putInt(start + 9, written);
+                deliveredProducts.add(written);
+
+                if (written < maxProducts) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Writes what the socket takes now; the rest waits for the write interest.
+         */
+        private void writeOut() throws IOException {
+
+            out.flip();
+            channel.write(out);
+            out.compact();
+
+            if (!closed) {
+                int interest = out.position() > 0 || flushRequested.get() ? SelectionKey.OP_WRITE : 0;
+                key.interestOps(out.remaining() >= MAX_REPLY_SIZE ? interest | SelectionKey.OP_READ : interest);
+            }
+        }
+
+        private void closeAfterWriting() throws IOException {
+            writeOut();
+            close();
+        }
+
+        void close() {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            key.cancel();
+            openConnections.decrementAndGet();
+
+            for (RemoteLine remoteLine : lines.values()) {
+                remoteLine.line.setCreditsGrantedListener(granted -> {});
+                remoteLine.line.setFinishedProductsListener(() -> {});
+                if (running) {
+                    // Nobody is there to take what it has left: it is dropped once it is all back.
+                    assemblyLineServer.retireAssemblyLine(remoteLine.line)
+                            .thenAccept(line -> line.consumeFinishedProducts(product -> { }));
+                } else {
+                    remoteLine.line.stop(); // The shutdown accounts for what it has left.
+                }
+            }
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // It is closed anyway.
+            }
+        }
+    }
+
+    private static final class RemoteLine {
+        private AssemblyLine line;
+        private final AtomicInteger pendingCredits = new AtomicInteger(0); // Granted, and not told yet.
+    }
+}
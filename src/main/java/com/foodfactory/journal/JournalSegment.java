@@ -0,0 +1,156 @@
+package com.foodfactory.journal;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One file of the journal, mapped in memory: a fixed number of fixed-size records. A writer claims the index of its
+ * record with one increment, and writes it into the mapping; no lock, no system call. The type of the record goes
+ * last, so a record nobody finished writing reads as an empty one; and a checksum catches the torn ones.
+ *
+ * Record (48 bytes): type (1) | padding (3) | line (4) | order (8) | cook time (8) | created at (8) | time (8) | size (4) | checksum (4)
+ */
+final class JournalSegment {
+
+    static final int RECORD_SIZE = 48;
+    static final byte TICK = 0x7F; // The time, nothing else; so the journal knows how long the factory ran after the last product.
+    static final byte RETIRED = 0x7E; // The line left the kitchen, with nothing of it in there; the next run forgets it.
+
+    private static final long WRITERS_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final long number;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong nextRecord = new AtomicLong(0);
+    private final LongAdder writtenRecords = new LongAdder();
+
+    private JournalSegment(long number, Path file, MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity() / RECORD_SIZE;
+    }
+
+    /**
+     * A new segment, with room for the given records (the file is allocated at once).
+     */
+    static JournalSegment create(Path directory, long number, int records) throws IOException {
+        return map(number, fileOf(directory, number), (long) records * RECORD_SIZE);
+    }
+
+    /**
+     * A segment some former run left; only to be read.
+     */
+    static JournalSegment open(Path file, long number) throws IOException {
+        return map(number, file, Files.size(file) / RECORD_SIZE * RECORD_SIZE);
+    }
+
+    private static JournalSegment map(long number, Path file, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new JournalSegment(number, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes)); // The mapping outlives the channel.
+        }
+    }
+
+    static Path fileOf(Path directory, long number) {
+        return directory.resolve(String.format("segment-%012d.journal", number));
+    }
+
+    /**
+     * @return the index of a record for the caller to write, or -1 if the segment is full.
+     */
+    long claim() {
+        long index = nextRecord.getAndIncrement();
+        return index < capacity ? index : -1;
+    }
+
+    void write(long index, byte type, int line, long order, int size, long cookTimeNanos, long createdAt, long time) {
+
+        int base = (int) index * RECORD_SIZE;
+
+        buffer.putInt(base + 4, line);
+        buffer.putLong(base + 8, order);
+        buffer.putLong(base + 16, cookTimeNanos);
+        buffer.putLong(base + 24, createdAt);
+        buffer.putLong(base + 32, time);
+        buffer.putInt(base + 40, size);
+        buffer.putInt(base + 44, checksum(type, line, order, size, cookTimeNanos, createdAt, time));
+        VarHandle.releaseFence(); // Everything above is in place before the type says the record is there.
+        buffer.put(base, type);
+
+        writtenRecords.increment();
+    }
+
+    /**
+     * Goes over every complete record, in the order they were claimed.
+     */
+    void forEachRecord(JournalState state) {
+
+        for (int index = 0; index < capacity; index++) {
+
+            int base = index * RECORD_SIZE;
+            byte type = buffer.get(base);
+
+            if (type == 0) {
+                continue; // Never written, or half written when the process died.
+            }
+
+            int line = buffer.getInt(base + 4);
+            long order = buffer.getLong(base + 8);
+            long cookTimeNanos = buffer.getLong(base + 16);
+            long createdAt = buffer.getLong(base + 24);
+            long time = buffer.getLong(base + 32);
+            int size = buffer.getInt(base + 40);
+
+            if (buffer.getInt(base + 44) == checksum(type, line, order, size, cookTimeNanos, createdAt, time)) {
+                state.apply(type, line, order, size, cookTimeNanos, createdAt, time);
+            }
+        }
+    }
+
+    /**
+     * Waits for the writers that claimed a record here to finish it; nobody claims one once the segment is sealed.
+     */
+    void awaitWriters() {
+        while (writtenRecords.sum() < Math.min(nextRecord.get(), capacity)) {
+            LockSupport.parkNanos(WRITERS_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Makes what was written durable (an msync of the dirty pages).
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(file); // The mapping goes away with the buffer.
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    private static int checksum(byte type, int line, long order, int size, long cookTimeNanos, long createdAt, long time) {
+
+        long hash = type;
+        hash = hash * 0x9E3779B97F4A7C15L + line;
+        hash = hash * 0x9E3779B97F4A7C15L + order;
+        hash = hash * 0x9E3779B97F4A7C15L + size;
+        hash = hash * 0x9E3779B97F4A7C15L + cookTimeNanos;
+        hash = hash * 0x9E3779B97F4A7C15L + createdAt;
+        hash = hash * 0x9E3779B97F4A7C15L + time;
+
+        return (int) (hash ^ (hash >>> 32)) | 1; // Never zero: a record of zeros is never a valid one.
+    }
+}
@@ -0,0 +1,220 @@
+package com.foodfactory.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * What the journal adds up to: every product not delivered yet, in its last state, and how far every line got
+ * (its next order number, and how many products it delivered). Delivered products are forgotten, so it is as big as
+ * the factory's work in progress, not as its history; that is what a snapshot keeps.
+ */
+public final class JournalState {
+
+    private static final int SNAPSHOT_MAGIC = 0x464A5331; // "FJS1"
+
+    private final Map<Integer, LineState> lines = new TreeMap<>();
+    private long lastTime = 0; // The latest time the journal knows of.
+    private long lastSegment = -1; // Every segment up to this one is in here.
+
+    /**
+     * @return the lines with something journaled, by id.
+     */
+    public Set<Integer> getAssemblyLineIds() {
+        return lines.keySet();
+    }
+
+    /**
+     * @return the order number the line gives to its next product.
+     */
+    public long getNextOrderNumber(int assemblyLineId) {
+        LineState line = lines.get(assemblyLineId);
+        return line == null ? 0 : line.nextOrderNumber;
+    }
+
+    /**
+     * @return how many products were taken from the line; always the first ones, as they come out in order.
+     */
+    public long getDeliveredCount(int assemblyLineId) {
+        LineState line = lines.get(assemblyLineId);
+        return line == null ? 0 : line.deliveredCount;
+    }
+
+    /**
+     * @return the products of the line in the given state, by order number.
+     */
+    public List<JournaledProduct> getProducts(int assemblyLineId, ProductState state) {
+
+        List<JournaledProduct> products = new ArrayList<>();
+        LineState line = lines.get(assemblyLineId);
+
+        if (line != null) {
+            line.products.values().stream().filter(product -> product.getState() == state).forEach(products::add);
+        }
+
+        return products;
+    }
+
+    /**
+     * @return how many products were not delivered, in any state.
+     */
+    public int getProductCount() {
+        return lines.values().stream().mapToInt(line -> line.products.size()).sum();
+    }
+
+    /**
+     * How much the product still has to cook: the ovens do not cook while the factory is down, so it is what was
+     * left at the last time the journal knows of.
+     * @param product one IN_OVEN.
+     * @return nanoseconds; zero if it was done.
+     */
+    public long getRemainingCookNanos(JournaledProduct product) {
+        return Math.max(0, product.getCookTimeNanos() - (lastTime - product.getSince()));
+    }
+
+    /**
+     * @return the latest time the journal knows of; the factory went on from there.
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    long getLastSegment() {
+        return lastSegment;
+    }
+
+    void setLastSegment(long lastSegment) {
+        this.lastSegment = lastSegment;
+    }
+
+    /**
+     * Adds one record up.
+     */
+    void apply(byte type, int assemblyLineId, long orderNumber, int size, long cookTimeNanos, long createdAt, long time) {
+
+        lastTime = Math.max(lastTime, time);
+
+        if (type == JournalSegment.RETIRED) {
+            lines.remove(assemblyLineId);
+            return;
+        }
+
+        ProductState state = ProductState.of(type);
+
+        if (state == null) {
+            return; // A tick.
+        }
+
+        if (state == ProductState.DELIVERED && !lines.containsKey(assemblyLineId)) {
+            return; // Its line retired; whoever held its last products took them afterwards.
+        }
+
+        LineState line = lines.computeIfAbsent(assemblyLineId, id -> new LineState());
+        line.nextOrderNumber = Math.max(line.nextOrderNumber, orderNumber + 1);
+
+        if (state == ProductState.DELIVERED) {
+            line.products.remove(orderNumber);
+            line.deliveredCount = Math.max(line.deliveredCount, orderNumber + 1);
+        } else if (orderNumber >= line.deliveredCount) {
+            line.products.put(orderNumber, new JournaledProduct(assemblyLineId, orderNumber, size, cookTimeNanos, createdAt, state, time));
+        }
+    }
+
+    /**
+     * Writes the state into a new file, and puts it in place of the given one at once (a snapshot is whole, or missing).
+     */
+    void write(Path snapshot) throws IOException {
+
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(lastSegment);
+            out.writeLong(lastTime);
+            out.writeInt(lines.size());
+
+            for (Map.Entry<Integer, LineState> entry : lines.entrySet()) {
+                LineState line = entry.getValue();
+
+                out.writeInt(entry.getKey());
+                out.writeLong(line.nextOrderNumber);
+                out.writeLong(line.deliveredCount);
+                out.writeInt(line.products.size());
+
+                for (JournaledProduct product : line.products.values()) {
+                    out.writeByte(product.getState().getCode());
+                    out.writeLong(product.getOrderNumber());
+                    out.writeInt(product.getSize());
+                    out.writeLong(product.getCookTimeNanos());
+                    out.writeLong(product.getCreatedAt());
+                    out.writeLong(product.getSince());
+                }
+            }
+
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the state in the snapshot; an empty one if there is no snapshot.
+     */
+    static JournalState read(Path snapshot) throws IOException {
+
+        JournalState state = new JournalState();
+
+        if (!Files.exists(snapshot)) {
+            return state;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a journal snapshot: " + snapshot);
+            }
+
+            state.lastSegment = in.readLong();
+            state.lastTime = in.readLong();
+
+            for (int lines = in.readInt(); lines > 0; lines--) {
+                int assemblyLineId = in.readInt();
+                LineState line = new LineState();
+
+                line.nextOrderNumber = in.readLong();
+                line.deliveredCount = in.readLong();
+
+                for (int products = in.readInt(); products > 0; products--) {
+                    ProductState productState = ProductState.of(in.readByte());
+                    long orderNumber = in.readLong();
+
+                    line.products.put(orderNumber, new JournaledProduct(assemblyLineId, orderNumber, in.readInt(), in.readLong(), in.readLong(), productState, in.readLong()));
+                }
+
+                state.lines.put(assemblyLineId, line);
+            }
+        }
+
+        return state;
+    }
+
+    private static final class LineState {
+        private long nextOrderNumber = 0;
+        private long deliveredCount = 0;
+        private final TreeMap<Long, JournaledProduct> products = new TreeMap<>();
+    }
+}
@@ -0,0 +1,54 @@
+package com.foodfactory.journal;
+
+/**
+ * The last thing the journal knows about a product that was not delivered yet. Its times are in the journal's time
+ * (see ProductJournal.toClockTime()).
+ */
+public final class JournaledProduct {
+
+    private final int assemblyLineId;
+    private final long orderNumber;
+    private final int size;
+    private final long cookTimeNanos;
+    private final long createdAt;
+    private final ProductState state;
+    private final long since; // When it got into its state.
+
+    JournaledProduct(int assemblyLineId, long orderNumber, int size, long cookTimeNanos, long createdAt, ProductState state, long since) {
+        this.assemblyLineId = assemblyLineId;
+        this.orderNumber = orderNumber;
+        this.size = size;
+        this.cookTimeNanos = cookTimeNanos;
+        this.createdAt = createdAt;
+        this.state = state;
+        this.since = since;
+    }
+
+    public int getAssemblyLineId() {
+        return assemblyLineId;
+    }
+
+    public long getOrderNumber() {
+        return orderNumber;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getCookTimeNanos() {
+        return cookTimeNanos;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public ProductState getState() {
+        return state;
+    }
+
+    public long getSince() {
+        return since;
+    }
+}
@@ -0,0 +1,328 @@
+package com.foodfactory.journal;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import com.foodfactory.scheduling.Clock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A write-ahead journal of the products: every transition (made, stored, in an oven, finished, delivered) is appended
+ * to a memory-mapped segment, before the product is handed over; so after a crash the Kitchen can rebuild what it had.
+ *
+ * An append is an increment to claim a record and a few stores into the mapping: the threads on the hot path never
+ * wait for the disk. A background thread makes the segments durable (msync) once every sync interval; that is the
+ * durability window, what a power cut might lose (a dead process loses nothing: its mapping is in the page cache).
+ * The same thread compacts the journal once every snapshot interval: it seals the segment, adds it up into the
+ * JournalState (delivered products are forgotten) and writes it as a snapshot; then the segment is deleted. So a
+ * recovery replays one snapshot and a segment or two, however long the factory ran.
+ *
+ * The journal keeps its own time: the clock's, shifted so it goes on from the last time of the former run. Times do
+ * not pass while the factory is down.
+ */
+public class ProductJournal {
+
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(100);
+    public static final Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofSeconds(60);
+    public static final int DEFAULT_SEGMENT_RECORDS = 256 * 1024; // 12 MB.
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int MAX_SEGMENT_RECORDS = Integer.MAX_VALUE / JournalSegment.RECORD_SIZE;
+
+    private final Path directory;
+    private final Clock clock;
+    private final long timeOffset; // Journal time, minus the clock's.
+    private final int segmentRecords;
+    private final long syncIntervalNanos;
+    private final long snapshotIntervalNanos;
+    private final JournalState recoveredState;
+    private final JournalState compactedState; // Only the journal's thread touches it (and close(), once it is over).
+    private final Queue<JournalSegment> sealedSegments = new ConcurrentLinkedQueue<>();
+    private final Object rollLock = new Object();
+    private final LongAdder appendedRecords = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final Thread syncer;
+    private volatile JournalSegment currentSegment;
+    private volatile boolean closed = false;
+
+    private ProductJournal(Path directory, Clock clock, Duration syncInterval, Duration snapshotInterval, int segmentRecords) throws IOException {
+
+        if (segmentRecords <= 0 || segmentRecords > MAX_SEGMENT_RECORDS) {
+            throw new IllegalArgumentException("A segment takes from 1 to " + MAX_SEGMENT_RECORDS + " records: " + segmentRecords);
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.clock = clock;
+        this.segmentRecords = segmentRecords;
+        this.syncIntervalNanos = syncInterval.toNanos();
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+
+        // The former run: its snapshot, plus every segment it did not compact.
+        this.recoveredState = JournalState.read(snapshotFile());
+        List<Path> leftSegments = listSegments();
+
+        for (Path file : leftSegments) {
+            long number = segmentNumber(file);
+
+            if (number > recoveredState.getLastSegment()) {
+                JournalSegment.open(file, number).forEachRecord(recoveredState);
+                recoveredState.setLastSegment(number);
+            }
+        }
+
+        // It becomes the new base at once; then the old segments can go.
+        recoveredState.write(snapshotFile());
+        for (Path file : leftSegments) {
+            Files.deleteIfExists(file);
+        }
+
+        this.compactedState = JournalState.read(snapshotFile());
+        this.timeOffset = recoveredState.getLastTime() - clock.nanoTime();
+        this.currentSegment = JournalSegment.create(directory, recoveredState.getLastSegment() + 1, segmentRecords);
+
+        this.syncer = new Thread(this::syncAndCompact, "product-journal");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    /**
+     * Opens the journal in the given directory (it is created if missing), recovering whatever a former run left there.
+     * @param directory
+     * @param clock the Kitchen's clock.
+     * @param syncInterval the durability window: how often the journal is forced to disk.
+     * @param snapshotInterval how often it is compacted into a snapshot.
+     * @param segmentRecords how many records a segment file takes (48 bytes each).
+     * @return
+     * @throws IOException
+     */
+    public static ProductJournal open(Path directory, Clock clock, Duration syncInterval, Duration snapshotInterval, int segmentRecords) throws IOException {
+        return new ProductJournal(directory, clock, syncInterval, snapshotInterval, segmentRecords);
+    }
+
+    /**
+     * Records the new state of a product; it must be called before the product is handed over (to a store, an oven,
+     * its line...), so the records of a product are always in the order of its transitions.
+     * @param state
+     * @param product
+     */
+    public void append(ProductState state, Product product) {
+
+        if (closed) {
+            return;
+        }
+
+        Food food = (Food) product;
+        append(state.getCode(), food.getAssemblyLineId(), food.getOrderNumber(), (int) food.size(), food.cookTimeNanos(), food.getCreatedAt() + timeOffset);
+    }
+
+    /**
+     * Records that the line left the kitchen (see Kitchen.retire()): nothing of it is in there, so the next run does
+     * not bring it back.
+     * @param assemblyLineId
+     */
+    public void retire(int assemblyLineId) {
+
+        if (closed) {
+            return;
+        }
+
+        append(JournalSegment.RETIRED, assemblyLineId, 0, 0, 0, 0);
+    }
+
+    private void append(byte type, int line, long order, int size, long cookTimeNanos, long createdAt) {
+
+        while (true) {
+            JournalSegment segment = currentSegment;
+            long index = segment.claim();
+
+            if (index >= 0) {
+                segment.write(index, type, line, order, size, cookTimeNanos, createdAt, now());
+                appendedRecords.increment();
+                return;
+            }
+
+            roll(segment);
+        }
+    }
+
+    /**
+     * Seals the given segment (if nobody did it already) and starts a new one.
+     */
+    private void roll(JournalSegment full) {
+
+        synchronized (rollLock) {
+
+            if (currentSegment != full) {
+                return;
+            }
+
+            try {
+                currentSegment = JournalSegment.create(directory, full.getNumber() + 1, segmentRecords);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start a new journal segment in " + directory, e);
+            }
+
+            sealedSegments.add(full);
+        }
+
+        LockSupport.unpark(syncer); // So the full one is compacted soon.
+    }
+
+    /**
+     * The journal's thread: it forces the journal to disk once every sync interval, and compacts it once every
+     * snapshot interval (or as soon as a segment fills up).
+     */
+    private void syncAndCompact() {
+
+        long lastSnapshot = System.nanoTime();
+
+        while (!closed) {
+
+            LockSupport.parkNanos(syncIntervalNanos);
+
+            if (closed) {
+                return;
+            }
+
+            append(JournalSegment.TICK, 0, 0, 0, 0, 0);
+            currentSegment.force();
+
+            if (System.nanoTime() - lastSnapshot >= snapshotIntervalNanos) {
+                roll(currentSegment);
+                lastSnapshot = System.nanoTime();
+            }
+
+            if (!sealedSegments.isEmpty()) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Adds the sealed segments up into the state, writes it as a snapshot, and deletes them.
+     */
+    private void compact() {
+
+        List<JournalSegment> compacted = new ArrayList<>();
+        JournalSegment segment;
+
+        while ((segment = sealedSegments.poll()) != null) {
+            segment.awaitWriters();
+            segment.forEachRecord(compactedState);
+            compactedState.setLastSegment(segment.getNumber());
+            compacted.add(segment);
+        }
+
+        try {
+            compactedState.write(snapshotFile());
+
+            for (JournalSegment done : compacted) {
+                done.delete();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the journal snapshot in " + directory, e); // The segments are kept.
+        }
+
+        snapshots.increment();
+    }
+
+    /**
+     * Stops the journal in order: everything is compacted into the last snapshot, which the next run recovers.
+     */
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        LockSupport.unpark(syncer);
+
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (rollLock) {
+            sealedSegments.add(currentSegment);
+        }
+        compact();
+    }
+
+    /**
+     * Stops the journal as a crash would: nothing is synced nor compacted; the files stay as they are. (Its thread
+     * is gone once this returns; so another journal can be opened on them, in the same process.)
+     */
+    public void abandon() {
+
+        closed = true;
+        LockSupport.unpark(syncer);
+
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * What the former run left: the products to restore, and how far every line got.
+     * @return
+     */
+    public JournalState getRecoveredState() {
+        return recoveredState;
+    }
+
+    /**
+     * @param journalTime a time of the journal (e.g. when a recovered product was made).
+     * @return the same time, in the clock of the Kitchen.
+     */
+    public long toClockTime(long journalTime) {
+        return journalTime - timeOffset;
+    }
+
+    public long getAppendedRecords() {
+        return appendedRecords.sum();
+    }
+
+    public long getSnapshotCount() {
+        return snapshots.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private long now() {
+        return clock.nanoTime() + timeOffset;
+    }
+
+    private Path snapshotFile() {
+        return directory.resolve(SNAPSHOT_FILE);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-"))
+                    .sorted() // The numbers are zero-padded: the names sort as the numbers.
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.indexOf('.')));
+    }
+}
@@ -0,0 +1,32 @@
+package com.foodfactory.journal;
+
+/**
+ * Where a product is, as far as the journal knows: every transition of a product is one record with its new state.
+ */
+public enum ProductState {
+
+    WAITING(1), // On its line, waiting for the Kitchen (just made, or put back).
+    STORED(2),
+    IN_OVEN(3),
+    FINISHED(4), // Cooked, and back on its line; not taken yet.
+    DELIVERED(5); // Taken from the line: the journal forgets it.
+
+    private final byte code;
+
+    ProductState(int code) {
+        this.code = (byte) code;
+    }
+
+    byte getCode() {
+        return code;
+    }
+
+    static ProductState of(byte code) {
+        for (ProductState state : values()) {
+            if (state.code == code) {
+                return state;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+package com.foodfactory.load;
+
+import java.util.SplittableRandom;
+
+/**
+ * When an assembly line has its next product ready. Implementations keep no state of their own (the randomness
+ * comes from the line), so one process can drive any number of lines.
+ */
+public interface ArrivalProcess {
+
+    double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * @param now the line's clock, in nanoseconds.
+     * @param random the line's own random source.
+     * @return nanoseconds from now until the next product is ready.
+     */
+    long nextDelayNanos(long now, SplittableRandom random);
+
+    /**
+     * Exactly perSecond products a second, evenly spaced.
+     */
+    static ArrivalProcess fixedRate(double perSecond) {
+        checkRate(perSecond);
+        long interval = Math.round(NANOS_PER_SECOND / perSecond);
+        return (now, random) -> interval;
+    }
+
+    /**
+     * perSecond products a second on average, every one of them independent of the others (exponential gaps).
+     */
+    static ArrivalProcess poisson(double perSecond) {
+        checkRate(perSecond);
+        return (now, random) -> exponentialNanos(perSecond, random);
+    }
+
+    /**
+     * A gap anywhere between the two given ones (in seconds); the original lines had one of three to five seconds.
+     */
+    static ArrivalProcess uniform(double minSeconds, double maxSeconds) {
+
+        if (minSeconds < 0 || maxSeconds < minSeconds) {
+            throw new IllegalArgumentException("Wrong arrival gaps: " + minSeconds + " to " + maxSeconds + " seconds.");
+        }
+
+        return (now, random) -> Math.round((minSeconds + random.nextDouble() * (maxSeconds - minSeconds)) * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Bursts: Poisson arrivals at perSecond during onSeconds, then nothing at all during offSeconds; over and over.
+     * The periods are the same for every line (they start at zero on the clock), so the lines burst together.
+     */
+    static ArrivalProcess onOff(double perSecond, double onSeconds, double offSeconds) {
+
+        checkRate(perSecond);
+
+        if (onSeconds <= 0 || offSeconds < 0) {
+            throw new IllegalArgumentException("Wrong on/off periods: " + onSeconds + " on, " + offSeconds + " off.");
+        }
+
+        long onNanos = Math.round(onSeconds * NANOS_PER_SECOND);
+        long periodNanos = onNanos + Math.round(offSeconds * NANOS_PER_SECOND);
+
+        return (now, random) -> {
+
+            long remaining = exponentialNanos(perSecond, random); // Counted in "on" time only.
+            long cursor = now;
+
+            while (true) {
+
+                long phase = cursor % periodNanos;
+
+                if (phase >= onNanos) {
+                    cursor += periodNanos - phase; // Off: skip to the next burst.
+                    continue;
+                }
+
+                if (remaining <= onNanos - phase) {
+                    return cursor + remaining - now;
+                }
+
+                remaining -= onNanos - phase;
+                cursor += onNanos - phase;
+            }
+        };
+    }
+
+    /**
+     * Reads a process from the config, or the command line: "fixed:RATE", "poisson:RATE", "uniform:MIN:MAX"
+     * or "onoff:RATE:ON:OFF"; the rates are in products per second, the rest in seconds.
+     * @param spec
+     * @return
+     */
+    static ArrivalProcess parse(String spec) {
+
+        String[] parts = spec.trim().split(":");
+
+        try {
+            switch (parts[0].trim().toLowerCase()) {
+                case "fixed":
+                    return fixedRate(Double.parseDouble(parts[1]));
+                case "poisson":
+                    return poisson(Double.parseDouble(parts[1]));
+                case "uniform":
+                    return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "onoff":
+                    return onOff(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                default:
+                    throw new IllegalArgumentException("Unknown arrival process: " + spec);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong arrival process: " + spec, e);
+        }
+    }
+
+    private static long exponentialNanos(double perSecond, SplittableRandom random) {
+        return Math.round(-Math.log(1 - random.nextDouble()) / perSecond * NANOS_PER_SECOND);
+    }
+
+    private static void checkRate(double perSecond) {
+        if (perSecond <= 0) {
+            throw new IllegalArgumentException("The arrival rate must be positive: " + perSecond);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.foodfactory.load;
+
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Where the sizes (cm2) and the cook times (seconds) of the products come from.
+ */
+public interface Distribution {
+
+    double sample(SplittableRandom random);
+
+    /**
+     * @return a value the samples seldom go beyond: the top of a uniform, three deviations over the mean of a normal,
+     * the 99th percentile of an exponential. What the kitchen sizes things for (e.g. the fair share's quantum).
+     */
+    double upperBound();
+
+    /**
+     * @param sampler
+     * @param upperBound see upperBound().
+     */
+    static Distribution of(ToDoubleFunction<SplittableRandom> sampler, double upperBound) {
+        return new Distribution() {
+            @Override
+            public double sample(SplittableRandom random) {
+                return sampler.applyAsDouble(random);
+            }
+
+            @Override
+            public double upperBound() {
+                return upperBound;
+            }
+        };
+    }
+
+    static Distribution constant(double value) {
+        return of(random -> value, value);
+    }
+
+    static Distribution uniform(double min, double max) {
+
+        if (max < min) {
+            throw new IllegalArgumentException("Wrong uniform distribution: " + min + " to " + max);
+        }
+
+        return of(random -> min + random.nextDouble() * (max - min), max);
+    }
+
+    /**
+     * A bell around the mean; whoever uses it clamps the odd value that falls out of range.
+     */
+    static Distribution normal(double mean, double standardDeviation) {
+
+        if (standardDeviation < 0) {
+            throw new IllegalArgumentException("The standard deviation must not be negative: " + standardDeviation);
+        }
+
+        return of(random -> {
+            // Box-Muller: two uniform numbers make a normal one.
+            double u1 = 1 - random.nextDouble();
+            double u2 = random.nextDouble();
+            return mean + standardDeviation * Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+        }, mean + 3 * standardDeviation);
+    }
+
+    static Distribution exponential(double mean) {
+
+        if (mean <= 0) {
+            throw new IllegalArgumentException("The mean must be positive: " + mean);
+        }
+
+        return of(random -> -Math.log(1 - random.nextDouble()) * mean, Math.log(100) * mean);
+    }
+
+    /**
+     * Reads a distribution from the config, or the command line: "constant:VALUE", "uniform:MIN:MAX",
+     * "normal:MEAN:STDDEV" or "exponential:MEAN".
+     * @param spec
+     * @return
+     */
+    static Distribution parse(String spec) {
+
+        String[] parts = spec.trim().split(":");
+
+        try {
+            switch (parts[0].trim().toLowerCase()) {
+                case "constant":
+                    return constant(Double.parseDouble(parts[1]));
+                case "uniform":
+                    return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "normal":
+                    return normal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "exponential":
+                    return exponential(Double.parseDouble(parts[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown distribution: " + spec);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong distribution: " + spec, e);
+        }
+    }
+}
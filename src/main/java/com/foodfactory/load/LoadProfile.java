@@ -0,0 +1,82 @@
+package com.foodfactory.load;
+
+import java.util.SplittableRandom;
+
+/**
+ * The traffic of an assembly line: when its products are ready, and how big and how slow to cook they are.
+ *
+ * Every line draws from its own random source, seeded from the profile's seed and the line's id; the same seed makes
+ * the same products, at the same times, on every run (on the virtual clock, at least; a live run also depends on how
+ * the threads are scheduled).
+ */
+public final class LoadProfile {
+
+    // The lines we always had: a product every three to five seconds, of 10 to 30 cm2, cooked in 5 to 15 seconds.
+    public static final String DEFAULT_ARRIVALS = "uniform:3:5";
+    public static final String DEFAULT_SIZES = "uniform:10:30";
+    public static final String DEFAULT_COOK_TIMES = "uniform:5:15";
+    public static final long DEFAULT_SEED = 3; // Three seconds, remember? A prime number!
+
+    private static final long SEED_SPREAD = 0x9E3779B97F4A7C15L; // The golden ratio; it sets apart the seeds of neighbour lines.
+
+    private final ArrivalProcess arrivals;
+    private final Distribution sizes;
+    private final Distribution cookTimes;
+    private final long seed;
+    private final String description;
+
+    /**
+     * @param arrivals
+     * @param sizes in cm2.
+     * @param cookTimes in seconds.
+     * @param seed
+     * @param description what shows up in the reports.
+     */
+    public LoadProfile(ArrivalProcess arrivals, Distribution sizes, Distribution cookTimes, long seed, String description) {
+        this.arrivals = arrivals;
+        this.sizes = sizes;
+        this.cookTimes = cookTimes;
+        this.seed = seed;
+        this.description = description;
+    }
+
+    /**
+     * Builds a profile out of its specs (see ArrivalProcess.parse() and Distribution.parse()).
+     */
+    public static LoadProfile parse(String arrivals, String sizes, String cookTimes, long seed) {
+        return new LoadProfile(ArrivalProcess.parse(arrivals), Distribution.parse(sizes), Distribution.parse(cookTimes), seed,
+                "arrivals " + arrivals + ", sizes " + sizes + " cm2, cook times " + cookTimes + " s, seed " + seed);
+    }
+
+    public static LoadProfile defaultProfile() {
+        return parse(DEFAULT_ARRIVALS, DEFAULT_SIZES, DEFAULT_COOK_TIMES, DEFAULT_SEED);
+    }
+
+    /**
+     * @return the random source of the given line; only that line should use it.
+     */
+    public SplittableRandom newRandom(int assemblyLineId) {
+        return new SplittableRandom(seed + assemblyLineId * SEED_SPREAD);
+    }
+
+    public ArrivalProcess getArrivals() {
+        return arrivals;
+    }
+
+    public Distribution getSizes() {
+        return sizes;
+    }
+
+    public Distribution getCookTimes() {
+        return cookTimes;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,267 @@
+package com.foodfactory.logging;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The factory's asynchronous logger: the threads on the hot path never touch the standard output (nor its lock).
+ *
+ * An event is a handful of numbers written into a preallocated ring of slots; a single background writer turns them
+ * into text and prints them in batches. Logging an event is a level check, a CAS to claim a slot and a few stores;
+ * an event of a disabled level costs only the check. When the ring is full the FullRingPolicy decides: the event is
+ * dropped (and counted), or the thread waits for the writer.
+ *
+ * There is one log for the whole process (getInstance()); its level and policy come from the config.
+ */
+public class EventLog {
+
+    public static final int DEFAULT_RING_SIZE = 8192;
+
+    private static final long WRITER_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long PRODUCER_FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_BUFFERED_CHARS = 16 * 1024;
+
+    private static EventLog eventLog = null;
+
+    private final LogEvent[] ring;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong(0); // The next slot a producer claims.
+    private volatile long writtenSequence = 0; // Every slot before this one has been formatted (and is free again).
+    private volatile long printedSequence = 0; // Every event before this one is out.
+    private final PrintStream out;
+    private final Thread writer;
+    private final LongAdder droppedEvents = new LongAdder();
+    private volatile LogLevel level;
+    private volatile FullRingPolicy fullRingPolicy;
+    private volatile boolean writerParked = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param ringSize how many events can wait for the writer; it is rounded up to a power of two.
+     * @param out where the events are written.
+     * @param level
+     * @param fullRingPolicy
+     */
+    public EventLog(int ringSize, PrintStream out, LogLevel level, FullRingPolicy fullRingPolicy) {
+
+        int capacity = Integer.highestOneBit(Math.max(ringSize, 2) - 1) << 1;
+
+        this.ring = new LogEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new LogEvent();
+        }
+
+        this.mask = capacity - 1;
+        this.out = out;
+        this.level = level;
+        this.fullRingPolicy = fullRingPolicy;
+
+        this.writer = new Thread(this::writeEvents, "event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Singleton kind of implementation, as the builders: every part of the factory logs into the same one.
+     * @return
+     */
+    public static synchronized EventLog getInstance() {
+        if (eventLog == null) eventLog = new EventLog(DEFAULT_RING_SIZE, System.out, LogLevel.DEBUG, FullRingPolicy.DROP);
+        return eventLog;
+    }
+
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    public void setFullRingPolicy(FullRingPolicy fullRingPolicy) {
+        this.fullRingPolicy = fullRingPolicy;
+    }
+
+    /**
+     * @return true if events of the given type are written; callers may skip gathering their fields otherwise.
+     */
+    public boolean isEnabled(EventType type) {
+        return type.getLevel().compareTo(level) >= 0; // Nothing is at the OFF level.
+    }
+
+    /**
+     * Logs an event about a product: its line, order number, size and cook time (in seconds).
+     * @param type
+     * @param product
+     */
+    public void log(EventType type, Product product) {
+
+        if (!isEnabled(type)) {
+            return;
+        }
+
+        Food food = (Food) product;
+        publish(type, food.getAssemblyLineId(), food.getOrderNumber(), product.size(), TimeUnit.NANOSECONDS.toSeconds(product.cookTimeNanos()), 0);
+    }
+
+    /**
+     * Logs an event that is not about one product (a line, a batch, a cycle).
+     * @param type
+     * @param lineId the line it is about, if any.
+     * @param size a size in cm2, if any.
+     * @param value what the type says (e.g. the products in the batch).
+     * @param extra what the type says (e.g. how many of them came from the stores).
+     */
+    public void log(EventType type, int lineId, double size, long value, long extra) {
+
+        if (!isEnabled(type)) {
+            return;
+        }
+
+        publish(type, lineId, -1, size, value, extra);
+    }
+
+    /**
+     * Waits until every event logged so far has been written out.
+     * @return false if the time ran out first.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+
+        long target = nextSequence.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (printedSequence < target) {
+
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(PRODUCER_FULL_PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes whatever is left, and stops the writer.
+     */
+    public void close() {
+        flush(1, TimeUnit.SECONDS);
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * How many events were lost because the ring was full (only with the DROP policy).
+     * @return
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    private void publish(EventType type, int lineId, long orderNumber, double size, long value, long extra) {
+
+        long sequence = claim();
+
+        if (sequence < 0) {
+            droppedEvents.increment();
+            return;
+        }
+
+        LogEvent event = ring[(int) (sequence & mask)];
+        event.type = type;
+        event.timestampMillis = System.currentTimeMillis();
+        event.lineId = lineId;
+        event.orderNumber = orderNumber;
+        event.size = size;
+        event.value = value;
+        event.extra = extra;
+        event.publishedSequence = sequence; // The volatile write hands the slot to the writer.
+
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the sequence of the claimed slot, or -1 if the ring is full and the policy is to drop.
+     */
+    private long claim() {
+
+        while (true) {
+
+            long sequence = nextSequence.get();
+
+            if (sequence - writtenSequence >= ring.length) {
+
+                if (fullRingPolicy == FullRingPolicy.DROP || closed) {
+                    return -1;
+                }
+
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(PRODUCER_FULL_PARK_NANOS); // BLOCK: wait for the writer to free some slots.
+                continue;
+            }
+
+            if (nextSequence.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * The writer thread: it takes the events in order, and prints them in batches.
+     */
+    private void writeEvents() {
+
+        StringBuilder text = new StringBuilder(MAX_BUFFERED_CHARS);
+
+        while (!closed || writtenSequence < nextSequence.get()) {
+
+            long sequence = writtenSequence;
+            LogEvent event = ring[(int) (sequence & mask)];
+
+            if (event.publishedSequence == sequence) {
+
+                text.append(Instant.ofEpochMilli(event.timestampMillis)).append(' ');
+                event.type.format(text, event);
+                text.append(System.lineSeparator());
+
+                writtenSequence = sequence + 1; // The slot is free for the producers again.
+
+                if (text.length() < MAX_BUFFERED_CHARS) {
+                    continue;
+                }
+            }
+
+            if (text.length() > 0) {
+                print(text);
+                continue;
+            }
+
+            if (nextSequence.get() == sequence) {
+                // Nothing to write: sleep until a producer wakes us up (or a while, in case we missed it).
+                writerParked = true;
+                if (nextSequence.get() == sequence && !closed) {
+                    LockSupport.parkNanos(this, WRITER_IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            } else {
+                Thread.onSpinWait(); // A producer claimed the slot, and is still filling it.
+            }
+        }
+
+        print(text);
+    }
+
+    private void print(StringBuilder text) {
+        out.print(text);
+        out.flush();
+        text.setLength(0);
+        printedSequence = writtenSequence;
+    }
+}
@@ -0,0 +1,112 @@
+package com.foodfactory.logging;
+
+/**
+ * Everything the factory logs, with its level and how it is written down.
+ * The fields of an event are plain numbers; the text is only built by the EventLog's writer thread.
+ */
+public enum EventType {
+
+    PRODUCT_ADDED(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Added product #: ").append(event.orderNumber).append(" - size: ").append(event.size)
+                    .append(" cooking time: ").append(event.value).append(" to Assembly line: ").append(event.lineId);
+        }
+    },
+    PRODUCTS_TAKEN(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Batch of ").append(event.value).append(" products taken (").append(event.extra)
+                    .append(" from the STORES, ").append(event.value - event.extra).append(" from the assembly line #")
+                    .append(event.lineId).append(")...trying to PUT them in the OVENS");
+        }
+    },
+    PRODUCT_PUT_BACK(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("No room for product #: ").append(event.orderNumber).append(", back to Assembly Line #").append(event.lineId);
+        }
+    },
+    PRODUCT_STORED(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("STORED product #: ").append(event.orderNumber).append(" from lane #: ").append(event.lineId)
+                    .append(" - size: ").append(event.size);
+        }
+    },
+    PRODUCT_COOKING(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("COOKING product #: ").append(event.orderNumber).append(" from lane #: ").append(event.lineId)
+                    .append(" - size: ").append(event.size).append(" cooking time: ").append(event.value);
+        }
+    },
+    PRODUCT_FINISHED(LogLevel.DEBUG) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("FINISHED cooking product #: ").append(event.orderNumber).append(" from lane #: ").append(event.lineId)
+                    .append(" - size: ").append(event.size).append(" cooking time: ").append(event.value);
+        }
+    },
+    CYCLE_FINISHED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("FINISHED a cycle of ").append(event.value).append("s, with ").append(event.extra)
+                    .append(" products, in the oven of SIZE: ").append(event.size);
+        }
+    },
+    LINE_PARKED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Production STOPPED in Assembly line: ").append(event.lineId).append(" (no credits)");
+        }
+    },
+    LINE_RESUMED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Production CONTINUES in Assembly line: ").append(event.lineId);
+        }
+    },
+    LINE_RETIRED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Assembly line: ").append(event.lineId).append(" RETIRED, with all its products back");
+        }
+    },
+    OVEN_ADDED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Added an OVEN of SIZE: ").append(event.size).append(" - ovens: ").append(event.value);
+        }
+    },
+    OVEN_REMOVED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("REMOVED an OVEN of SIZE: ").append(event.size).append(", empty - ovens: ").append(event.value);
+        }
+    },
+    STORE_ADDED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("Added a STORE of SIZE: ").append(event.size).append(" - stores: ").append(event.value);
+        }
+    },
+    STORE_REMOVED(LogLevel.INFO) {
+        @Override
+        void format(StringBuilder text, LogEvent event) {
+            text.append("REMOVED a STORE of SIZE: ").append(event.size).append(", empty - stores: ").append(event.value);
+        }
+    };
+
+    private final LogLevel level;
+
+    EventType(LogLevel level) {
+        this.level = level;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    abstract void format(StringBuilder text, LogEvent event);
+}
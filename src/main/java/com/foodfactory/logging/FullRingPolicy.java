@@ -0,0 +1,9 @@
+package com.foodfactory.logging;
+
+/**
+ * What a thread does when it logs an event and the EventLog's ring is full (the writer could not keep up).
+ */
+public enum FullRingPolicy {
+    DROP, // The event is lost (and counted); the hot path never waits for the log.
+    BLOCK // The thread waits for a free slot; no event is ever lost.
+}
@@ -0,0 +1,18 @@
+package com.foodfactory.logging;
+
+/**
+ * One slot of the EventLog's ring. The slots are allocated once, and reused over and over: logging allocates nothing.
+ * A producer owns the slot from the moment it claims its sequence until it publishes it; then, the writer does.
+ */
+final class LogEvent {
+
+    EventType type;
+    long timestampMillis;
+    int lineId;
+    long orderNumber;
+    double size;
+    long value;
+    long extra;
+
+    volatile long publishedSequence = -1; // The slot is readable once this is the sequence the writer expects.
+}
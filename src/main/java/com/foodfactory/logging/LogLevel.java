@@ -0,0 +1,11 @@
+package com.foodfactory.logging;
+
+/**
+ * How much the EventLog writes: every event of the given level, and of the ones above it. OFF writes nothing.
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    OFF
+}
@@ -0,0 +1,25 @@
+package com.foodfactory.metrics;
+
+/**
+ * What every assembly line shows through JMX, under com.foodfactory:type=AssemblyLine.
+ */
+public interface AssemblyLineMetricsMXBean {
+
+    long getArrivals();
+
+    long getCompletions();
+
+    int getWaitingProducts();
+
+    double getArrivalRate();
+
+    double getCompletionRate();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    double getParkedSeconds();
+}
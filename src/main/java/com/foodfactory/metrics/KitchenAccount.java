@@ -0,0 +1,81 @@
+package com.foodfactory.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one kitchen took of the threads it shares with others (see KitchenHost): how many timers it scheduled and
+ * ran, how many dispatch turns it had, and how long all of them kept a thread busy. Every update is a striped increment.
+ */
+public class KitchenAccount {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String kitchenName;
+    private final LongAdder timersScheduled = new LongAdder();
+    private final LongAdder timersRun = new LongAdder();
+    private final LongAdder timerNanos = new LongAdder();
+    private final LongAdder dispatchTurns = new LongAdder();
+    private final LongAdder dispatchNanos = new LongAdder();
+
+    public KitchenAccount(String kitchenName) {
+        this.kitchenName = kitchenName;
+    }
+
+    public void recordTimerScheduled() {
+        timersScheduled.increment();
+    }
+
+    /**
+     * @param nanos the time it took, on a thread of the timers.
+     */
+    public void recordTimerRun(long nanos) {
+        timersRun.increment();
+        timerNanos.add(nanos);
+    }
+
+    /**
+     * @param nanos the time it took, on a thread of the dispatch pool.
+     */
+    public void recordDispatchTurn(long nanos) {
+        dispatchTurns.increment();
+        dispatchNanos.add(nanos);
+    }
+
+    public String getKitchenName() {
+        return kitchenName;
+    }
+
+    public long getTimersScheduled() {
+        return timersScheduled.sum();
+    }
+
+    public long getTimersRun() {
+        return timersRun.sum();
+    }
+
+    public long getTimerNanos() {
+        return timerNanos.sum();
+    }
+
+    public long getDispatchTurns() {
+        return dispatchTurns.sum();
+    }
+
+    public long getDispatchNanos() {
+        return dispatchNanos.sum();
+    }
+
+    /**
+     * @return how long the kitchen kept the shared threads busy, timers and dispatch.
+     */
+    public long getBusyNanos() {
+        return getTimerNanos() + getDispatchNanos();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Kitchen '%s': %d timers run of %d scheduled (%.1fms), %d dispatch turns (%.1fms)",
+                kitchenName, getTimersRun(), getTimersScheduled(), getTimerNanos() / NANOS_PER_MILLI,
+                getDispatchTurns(), getDispatchNanos() / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,17 @@
+package com.foodfactory.metrics;
+
+/**
+ * What a kitchen shows through JMX (e.g. in JConsole), under com.foodfactory:type=Kitchen.
+ */
+public interface KitchenMetricsMXBean {
+
+    double getOvenOccupancy();
+
+    double getStoreOccupancy();
+
+    long getProductsInOvens();
+
+    long getStoredProducts();
+
+    double getDispatchPassesPerSecond();
+}
@@ -0,0 +1,154 @@
+package com.foodfactory.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies (in nanoseconds) in log-linear buckets: every power of two is split in 8 buckets, so any value
+ * is known within 12.5%, from one nanosecond to centuries, with under 500 buckets.
+ *
+ * Recording is a couple of bit operations and a striped increment (LongAdder); threads do not fight over a counter.
+ * A bucket gets its counter the first time something falls in it: the latencies of a line fall in a few dozen of
+ * them, and every line has a histogram (with 100k lines, the empty counters were most of the heap).
+ * Reading sums the buckets without any lock: a read that races with the recording might miss the latest values,
+ * nothing else.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS); // Null until used.
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos the latency; a negative one counts as zero.
+     */
+    public void record(long nanos) {
+
+        long value = Math.max(nanos, 0);
+
+        bucket(bucketOf(value)).increment();
+        max.accumulate(value);
+    }
+
+    /**
+     * Adds the given histograms up (e.g. the ones of every line, for the whole kitchen) into a new one.
+     * @param histograms
+     * @return
+     */
+    public static LatencyHistogram merge(Collection<LatencyHistogram> histograms) {
+
+        LatencyHistogram merged = new LatencyHistogram();
+
+        for (LatencyHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = histogram.countOf(i);
+                if (count > 0) {
+                    merged.bucket(i).add(count);
+                }
+            }
+            merged.max.accumulate(histogram.getMax());
+        }
+
+        return merged;
+    }
+
+    /**
+     * @return how many latencies were recorded.
+     */
+    public long getCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            count += countOf(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100.
+     * @return the latency (nanoseconds) under which that percentage of the recorded ones fall; zero if there are none.
+     * It is the upper bound of the bucket, never more than the maximum recorded.
+     */
+    public long getPercentile(double percentile) {
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = countOf(i); // One copy, so the walk below adds up to the same total.
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * @return the highest latency recorded, exactly.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    private LongAdder bucket(int index) {
+
+        LongAdder bucket = buckets.get(index);
+
+        if (bucket == null) {
+            buckets.compareAndSet(index, null, new LongAdder()); // Whoever loses the race uses the winner's.
+            bucket = buckets.get(index);
+        }
+
+        return bucket;
+    }
+
+    private long countOf(int index) {
+        LongAdder bucket = buckets.get(index);
+        return bucket == null ? 0 : bucket.sum();
+    }
+
+    private static int bucketOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // SUB_BUCKET_BITS or more, here.
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,57 @@
+package com.foodfactory.metrics;
+
+import com.foodfactory.scheduling.Clock;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one assembly line records about its products: how many arrived, how many came back cooked, and how long
+ * each one took from its creation to its return (putAfter). Every update is a striped increment.
+ */
+public class LineMetrics {
+
+    private final Clock clock;
+    private final long startedAt;
+    private final LongAdder arrivals = new LongAdder();
+    private final LongAdder completions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param clock the line's clock (wall or virtual); the rates and the latencies follow it.
+     */
+    public LineMetrics(Clock clock) {
+        this.clock = clock;
+        this.startedAt = clock.nanoTime();
+    }
+
+    public void recordArrival() {
+        arrivals.increment();
+    }
+
+    /**
+     * @param createdAt when the product was made, by the line's clock.
+     */
+    public void recordCompletion(long createdAt) {
+        completions.increment();
+        latency.record(clock.nanoTime() - createdAt);
+    }
+
+    public long getArrivals() {
+        return arrivals.sum();
+    }
+
+    public long getCompletions() {
+        return completions.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return nanoseconds since the line started recording.
+     */
+    public long getElapsedNanos() {
+        return clock.nanoTime() - startedAt;
+    }
+}
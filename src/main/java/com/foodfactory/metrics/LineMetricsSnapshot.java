@@ -0,0 +1,120 @@
+package com.foodfactory.metrics;
+
+import com.foodfactory.model.AssemblyLine;
+
+/**
+ * The figures of one assembly line at a given moment; immutable. The rates are averages since the line started.
+ */
+public final class LineMetricsSnapshot {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final int assemblyLineId;
+    private final long arrivals;
+    private final long completions;
+    private final int waitingProducts;
+    private final int finishedProducts;
+    private final double arrivalRate;
+    private final double completionRate;
+    private final double latencyP50Millis;
+    private final double latencyP99Millis;
+    private final double latencyMaxMillis;
+    private final double parkedSeconds;
+
+    /**
+     * Reads the line's counters; nothing here takes a lock.
+     * @param assemblyLine
+     * @return
+     */
+    public static LineMetricsSnapshot of(AssemblyLine assemblyLine) {
+        return new LineMetricsSnapshot(assemblyLine);
+    }
+
+    private LineMetricsSnapshot(AssemblyLine assemblyLine) {
+
+        LineMetrics metrics = assemblyLine.getMetrics();
+        double seconds = metrics.getElapsedNanos() / NANOS_PER_SECOND;
+
+        this.assemblyLineId = assemblyLine.getId();
+        this.arrivals = metrics.getArrivals();
+        this.completions = metrics.getCompletions();
+        this.waitingProducts = assemblyLine.getWaitingProductsCount();
+        this.finishedProducts = assemblyLine.getFinishedProductsCount();
+        this.arrivalRate = seconds == 0 ? 0 : arrivals / seconds;
+        this.completionRate = seconds == 0 ? 0 : completions / seconds;
+        this.latencyP50Millis = metrics.getLatency().getPercentile(50) / NANOS_PER_MILLI;
+        this.latencyP99Millis = metrics.getLatency().getPercentile(99) / NANOS_PER_MILLI;
+        this.latencyMaxMillis = metrics.getLatency().getMax() / NANOS_PER_MILLI;
+        this.parkedSeconds = assemblyLine.getParkedNanos() / NANOS_PER_SECOND;
+    }
+
+    public int getAssemblyLineId() {
+        return assemblyLineId;
+    }
+
+    /**
+     * @return the products the line made.
+     */
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * @return the products that came back cooked (in or out of order).
+     */
+    public long getCompletions() {
+        return completions;
+    }
+
+    public int getWaitingProducts() {
+        return waitingProducts;
+    }
+
+    /**
+     * @return the cooked products, released in order, that nobody picked up yet.
+     */
+    public int getFinishedProducts() {
+        return finishedProducts;
+    }
+
+    /**
+     * @return products made per second.
+     */
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    /**
+     * @return products cooked per second.
+     */
+    public double getCompletionRate() {
+        return completionRate;
+    }
+
+    public double getLatencyP50Millis() {
+        return latencyP50Millis;
+    }
+
+    public double getLatencyP99Millis() {
+        return latencyP99Millis;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latencyMaxMillis;
+    }
+
+    /**
+     * @return how long the line was parked for the lack of credits.
+     */
+    public double getParkedSeconds() {
+        return parkedSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Assembly Line #%d: made %d (%.2f/s), cooked %d (%.2f/s), waiting %d, finished %d - latency p50 %.0fms p99 %.0fms max %.0fms - parked %.1fs",
+                assemblyLineId, arrivals, arrivalRate, completions, completionRate, waitingProducts, finishedProducts,
+                latencyP50Millis, latencyP99Millis, latencyMaxMillis, parkedSeconds);
+    }
+}
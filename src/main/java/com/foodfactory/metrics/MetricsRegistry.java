@@ -0,0 +1,272 @@
+package com.foodfactory.metrics;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Oven;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.Store;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.scheduling.Clock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Every figure of one kitchen, in one place: the lines record their own (see LineMetrics), the ovens and the stores
+ * keep their occupied room in counters, and the dispatch workers count their passes here.
+ *
+ * A snapshot() only reads those counters: no lock is taken, nobody on the hot path waits for it, and it costs the
+ * same however many products are waiting. The same figures are published as platform MXBeans, once registerMBeans()
+ * is called; one bean for the kitchen and one per line.
+ */
+public class MetricsRegistry implements KitchenMetricsMXBean {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final String DOMAIN = "com.foodfactory";
+    private static final AtomicInteger kitchenIds = new AtomicInteger(0);
+
+    private final String kitchenName = "kitchen-" + kitchenIds.getAndIncrement(); // Every kitchen in the JVM has its own beans.
+    private final Clock clock;
+    private final long startedAt;
+    private final List<Oven> ovens;
+    private final List<Store> stores;
+    private final LongSupplier productsInOvens;
+    private final LongAdder dispatchPasses = new LongAdder();
+    private final List<ObjectName> registeredBeans = new CopyOnWriteArrayList<>();
+    private volatile Collection<AssemblyLine> assemblyLines = Collections.emptyList();
+    private volatile boolean beansRegistered = false;
+
+    /**
+     * @param clock the kitchen's clock; the rates follow it.
+     * @param ovens
+     * @param stores
+     * @param productsInOvens how many products are cooking right now.
+     */
+    public MetricsRegistry(Clock clock, List<Oven> ovens, List<Store> stores, LongSupplier productsInOvens) {
+        this.clock = clock;
+        this.startedAt = clock.nanoTime();
+        this.ovens = ovens;
+        this.stores = stores;
+        this.productsInOvens = productsInOvens;
+    }
+
+    /**
+     * @return the name of the kitchen in its beans' names (com.foodfactory:type=Kitchen,name=...).
+     */
+    public String getKitchenName() {
+        return kitchenName;
+    }
+
+    public void setAssemblyLines(Collection<AssemblyLine> assemblyLines) {
+        this.assemblyLines = assemblyLines;
+    }
+
+    /**
+     * A dispatch worker went over its lines once.
+     */
+    public void recordDispatchPass() {
+        dispatchPasses.increment();
+    }
+
+    /**
+     * @return the figures of the kitchen and of every line, right now.
+     */
+    public MetricsSnapshot snapshot() {
+
+        List<LineMetricsSnapshot> lines = new ArrayList<>();
+        assemblyLines.forEach(line -> lines.add(LineMetricsSnapshot.of(line)));
+
+        return new MetricsSnapshot(getOvenOccupancy(), getStoreOccupancy(), getProductsInOvens(), getStoredProducts(),
+                getDispatchPassesPerSecond(), lines);
+    }
+
+    @Override
+    public double getOvenOccupancy() {
+
+        double occupied = 0;
+        double size = 0;
+
+        for (Oven oven : ovens) {
+            occupied += ((OvenImpl) oven).getOccupiedSize();
+            size += oven.size();
+        }
+
+        return size == 0 ? 0 : occupied / size;
+    }
+
+    @Override
+    public double getStoreOccupancy() {
+
+        double occupied = 0;
+        double size = 0;
+
+        for (Store store : stores) {
+            occupied += ((StoreImpl) store).getOccupiedSize();
+            size += ((StoreImpl) store).getSize();
+        }
+
+        return size == 0 ? 0 : occupied / size;
+    }
+
+    @Override
+    public long getProductsInOvens() {
+        return productsInOvens.getAsLong();
+    }
+
+    @Override
+    public long getStoredProducts() {
+        return stores.stream().mapToLong(store -> ((StoreImpl) store).getStoredProductsCount()).sum();
+    }
+
+    @Override
+    public double getDispatchPassesPerSecond() {
+
+        double seconds = (clock.nanoTime() - startedAt) / NANOS_PER_SECOND;
+
+        return seconds == 0 ? 0 : dispatchPasses.sum() / seconds;
+    }
+
+    /**
+     * Publishes the kitchen, and every line it has (or gets later on), in the platform MBean server.
+     */
+    public synchronized void registerMBeans() {
+
+        if (beansRegistered) {
+            return;
+        }
+
+        register(this, DOMAIN + ":type=Kitchen,name=" + kitchenName);
+        beansRegistered = true;
+
+        assemblyLines.forEach(this::registerMBean);
+    }
+
+    /**
+     * Publishes the line, if the kitchen is published; the Kitchen calls this when the line is plugged in.
+     * @param assemblyLine
+     */
+    public synchronized void registerMBean(AssemblyLine assemblyLine) {
+
+        if (beansRegistered) {
+            register(new AssemblyLineMetrics(assemblyLine), beanNameOf(assemblyLine));
+        }
+    }
+
+    /**
+     * Takes the line out of the MBean server, if it was there; the Kitchen calls this when the line retires.
+     * @param assemblyLine
+     */
+    public synchronized void unregisterMBean(AssemblyLine assemblyLine) {
+        try {
+            ObjectName name = new ObjectName(beanNameOf(assemblyLine));
+
+            if (registeredBeans.remove(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            // Somebody else took it out already; that is what we wanted anyway.
+        }
+    }
+
+    private String beanNameOf(AssemblyLine assemblyLine) {
+        return DOMAIN + ":type=AssemblyLine,kitchen=" + kitchenName + ",id=" + assemblyLine.getId();
+    }
+
+    /**
+     * Takes the kitchen and its lines out of the MBean server.
+     */
+    public synchronized void unregisterMBeans() {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName name : registeredBeans) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Somebody else took it out already; that is what we wanted anyway.
+            }
+        }
+
+        registeredBeans.clear();
+        beansRegistered = false;
+    }
+
+    private void register(Object bean, String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+                registeredBeans.add(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics bean " + name, e);
+        }
+    }
+
+    /**
+     * The bean of one line: every attribute is read from the line's counters when asked for.
+     */
+    private static final class AssemblyLineMetrics implements AssemblyLineMetricsMXBean {
+
+        private final AssemblyLine assemblyLine;
+
+        AssemblyLineMetrics(AssemblyLine assemblyLine) {
+            this.assemblyLine = assemblyLine;
+        }
+
+        @Override
+        public long getArrivals() {
+            return assemblyLine.getMetrics().getArrivals();
+        }
+
+        @Override
+        public long getCompletions() {
+            return assemblyLine.getMetrics().getCompletions();
+        }
+
+        @Override
+        public int getWaitingProducts() {
+            return assemblyLine.getWaitingProductsCount();
+        }
+
+        @Override
+        public double getArrivalRate() {
+            return LineMetricsSnapshot.of(assemblyLine).getArrivalRate();
+        }
+
+        @Override
+        public double getCompletionRate() {
+            return LineMetricsSnapshot.of(assemblyLine).getCompletionRate();
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return LineMetricsSnapshot.of(assemblyLine).getLatencyP50Millis();
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return LineMetricsSnapshot.of(assemblyLine).getLatencyP99Millis();
+        }
+
+        @Override
+        public double getLatencyMaxMillis() {
+            return LineMetricsSnapshot.of(assemblyLine).getLatencyMaxMillis();
+        }
+
+        @Override
+        public double getParkedSeconds() {
+            return assemblyLine.getParkedNanos() / NANOS_PER_SECOND;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.foodfactory.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The figures of a whole kitchen at a given moment; immutable, so it can be handed to anyone (a report, a test, JMX).
+ */
+public final class MetricsSnapshot {
+
+    private final double ovenOccupancy;
+    private final double storeOccupancy;
+    private final long productsInOvens;
+    private final long storedProducts;
+    private final double dispatchPassesPerSecond;
+    private final List<LineMetricsSnapshot> assemblyLines;
+
+    MetricsSnapshot(double ovenOccupancy, double storeOccupancy, long productsInOvens, long storedProducts,
+                    double dispatchPassesPerSecond, List<LineMetricsSnapshot> assemblyLines) {
+        this.ovenOccupancy = ovenOccupancy;
+        this.storeOccupancy = storeOccupancy;
+        this.productsInOvens = productsInOvens;
+        this.storedProducts = storedProducts;
+        this.dispatchPassesPerSecond = dispatchPassesPerSecond;
+        this.assemblyLines = Collections.unmodifiableList(assemblyLines);
+    }
+
+    /**
+     * @return the fraction (from 0 to 1) of the ovens' room taken by products.
+     */
+    public double getOvenOccupancy() {
+        return ovenOccupancy;
+    }
+
+    /**
+     * @return the fraction (from 0 to 1) of the stores' room taken by products.
+     */
+    public double getStoreOccupancy() {
+        return storeOccupancy;
+    }
+
+    public long getProductsInOvens() {
+        return productsInOvens;
+    }
+
+    public long getStoredProducts() {
+        return storedProducts;
+    }
+
+    /**
+     * @return how many passes over the lines the dispatch workers made per second, on average.
+     */
+    public double getDispatchPassesPerSecond() {
+        return dispatchPassesPerSecond;
+    }
+
+    public List<LineMetricsSnapshot> getAssemblyLines() {
+        return assemblyLines;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder text = new StringBuilder();
+
+        assemblyLines.forEach(line -> text.append(line).append(System.lineSeparator()));
+
+        text.append(String.format("Kitchen: ovens %.0f%% full (%d products), stores %.0f%% full (%d products) - %.1f dispatch passes/s",
+                ovenOccupancy * 100, productsInOvens, storeOccupancy * 100, storedProducts, dispatchPassesPerSecond));
+
+        return text.toString();
+    }
+}
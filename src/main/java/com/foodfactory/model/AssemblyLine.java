@@ -1,96 +1,332 @@
 package com.foodfactory.model;
 
-import java.util.Comparator;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.journal.ProductState;
+import com.foodfactory.scheduling.TaskScheduler;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.EventType;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.metrics.LineMetrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents the implementation of an hypothetical "Food Products Assembly Line"
- * that is about to be simulated.
+ * that is about to be simulated. Its traffic (how often, how big, how long to cook) comes from a LoadProfile.
+ *
+ * A line only makes a product when it holds a credit from the Kitchen (one credit, one product). When it runs out,
+ * it asks for more and parks: nothing is scheduled for it until the Kitchen grants credits again.
+ *
+ * A line might as well be fed from outside (e.g. a remote one, through the IngressServer): it is not started, and
+ * its products come through submitProduct(), under the same credits.
  */
 public class AssemblyLine implements AssemblyLineStage {
 
-    private static final int FINISHED_PRODUCTS_INITIAL_CAPACITY = 11; // A prime number for good luck. :)
-    private static final long PRODUCTION_TIME = 3; // I like it every three seconds, a prime number takes the oddities to see some sunshine!
+    /**
+     * What runs the production of the lines (see Kitchen.setProducerMode()).
+     */
+    public enum ProducerMode {
+        SCHEDULED, // No thread per line: every product is a task in the Kitchen's scheduler. Any clock.
+        PLATFORM_THREADS; // A thread per line, that sleeps between products. Only on the wall clock.
+
+        /**
+         * @return where the lines run their production; null for SCHEDULED.
+         */
+        public ExecutorService newExecutor() {
+            switch (this) {
+                case PLATFORM_THREADS:
+                    return Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "assembly-line-producer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                default:
+                    return null;
+            }
+        }
+    }
 
     // DISCLAIMER: These values do not represent REAL cooking times neither food product sizes (just intented for this simulation use).
-    private static final int MIN_PRODUCT_SIZE = 10;
-    private static final int MAX_PRODUCT_SIZE = 30;
-    private static final int MIN_PRODUCT_COOK = 5;
-    private static final int MAX_PRODUCT_COOK = 15;
-    private static final int MIN_PRODUCTIVITY_DELAY = 0;
-    private static final int MAX_PRODUCTIVITY_DELAY = 3;
+    private static final int MIN_PRODUCT_SIZE = 1;
+    public static final int MAX_PRODUCT_SIZE = 30; // The Kitchen backs every credit with this much room; bigger products are trimmed.
+    private static final long MIN_PRODUCT_COOK = 1;
 
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final TaskScheduler scheduler;
+    private final LoadProfile loadProfile;
+    private final SplittableRandom random; // Only touched by the production of this line, one product after the other.
 
-    private final ConcurrentLinkedQueue<Product> waitingProducts = new ConcurrentLinkedQueue<>(); // IN queue
-    final Comparator<Product> orderNumberSorter = Comparator.comparing(product -> ((Food)product).getOrderNumber());
-    private final PriorityBlockingQueue<Product> finishedProducts = new PriorityBlockingQueue<>(FINISHED_PRODUCTS_INITIAL_CAPACITY,orderNumberSorter); // OUT queue
+    private final ConcurrentLinkedDeque<Product> waitingProducts = new ConcurrentLinkedDeque<>(); // IN queue
+    private final AtomicInteger waitingProductsCount = new AtomicInteger(0); // The deque's size() walks it; this does not.
+    private final ReorderBuffer finishedProducts = new ReorderBuffer(); // OUT queue, released strictly in order.
 
     private final Integer id;
 
-    private AtomicInteger production = new AtomicInteger(0);
-    private AtomicBoolean stopProduction = new AtomicBoolean(false);
-    private Boolean continueLine = true;
+    private AtomicLong production = new AtomicLong(0);
+    private final AtomicInteger credits = new AtomicInteger(0);
+    private volatile int creditLimit = Integer.MAX_VALUE; // No limit, unless one is set.
+    private final AtomicBoolean productionParked = new AtomicBoolean(false);
+    private final AtomicLong parkedSince = new AtomicLong(0);
+    private final AtomicLong parkedNanos = new AtomicLong(0);
+    private volatile boolean continueLine = true;
+    private volatile Executor producers = null; // The Kitchen's scheduler, unless it is set.
+    private volatile Thread producerThread = null; // The one running the production, if the line has one.
+    private volatile Runnable productArrivalListener = () -> {};
+    private volatile Runnable creditsWantedListener = () -> {};
+    private volatile IntConsumer creditsGrantedListener = granted -> {};
+    private volatile Runnable finishedProductsListener = () -> {};
+    private final EventLog log = EventLog.getInstance();
+    private final LineMetrics metrics;
+    private volatile ProductPool productPool = null; // No recycling, unless one is set.
+    private volatile ProductJournal journal = null;
 
-    public AssemblyLine (Integer id){
+    /**
+     * A line with the traffic we always had (LoadProfile.defaultProfile()).
+     * @param id
+     * @param scheduler the Kitchen's scheduler; the line produces following its clock (wall or virtual).
+     */
+    public AssemblyLine (Integer id, TaskScheduler scheduler){
+        this(id, scheduler, LoadProfile.defaultProfile());
+    }
+
+    /**
+     * @param id
+     * @param scheduler the Kitchen's scheduler; the line produces following its clock (wall or virtual).
+     * @param loadProfile when the products are ready, and what they are like.
+     */
+    public AssemblyLine (Integer id, TaskScheduler scheduler, LoadProfile loadProfile){
         this.id = id;
+        this.scheduler = scheduler;
+        this.loadProfile = loadProfile;
+        this.random = loadProfile.newRandom(id);
+        this.metrics = new LineMetrics(scheduler);
     }
 
     /**
-     * Initiates the generation of products and its due threads.
+     * Initiates the generation of products.
+     * There is no thread per line: every line schedules its next product in the Kitchen's scheduler; unless the line
+     * was given producers (see ProducerMode), then its production runs there.
      */
     public void start() {
-        executor.execute(()-> {
 
-            while(continueLine){ // TODO replace this for a proper flag and method to stop the thread processing.
+        Executor producers = this.producers;
+
+        if (producers == null) {
+            scheduleNextProduct();
+        } else {
+            producers.execute(this::runProduction);
+        }
+    }
+
+    /**
+     * Where the line runs its production, from its start on; the Kitchen sets it when the line is plugged in.
+     * @param producers null, to schedule every product in the Kitchen's scheduler.
+     */
+    public void setProducers(Executor producers) {
+        this.producers = producers;
+    }
+
+    /**
+     * The production on a thread of its own: it sleeps until the next product is ready, and parks there while it
+     * has no credits (grantCredits() unparks it). It ends when the line stops, or its thread is interrupted.
+     */
+    private void runProduction() {
 
-                try {
+        producerThread = Thread.currentThread();
 
-                    if (!stopProduction.get()) {
-                        // We added a simulated productivity "delay"...just for fun.
-                        Integer productivityDelay = ThreadLocalRandom.current().nextInt(MIN_PRODUCTIVITY_DELAY, MAX_PRODUCTIVITY_DELAY);
-                        TimeUnit.SECONDS.sleep(PRODUCTION_TIME + productivityDelay);
-                        Product product = generateRandomProduct();
+        try {
+            long nextProductAt = scheduler.nanoTime() + loadProfile.getArrivals().nextDelayNanos(scheduler.nanoTime(), random);
 
-                        addProduct(product);
+            while (continueLine && !Thread.currentThread().isInterrupted()) {
 
-                        //TODO Replace all the 'sysout' for proper loggers.
-                        System.out.println("Added product - size: " + product.size() + " cooking time: " + product.cookTime().getSeconds() + " to Assembly line: " + this.getId());
-                    } else {
-                        System.out.println("Production STOPPED in Assembly line: " + this.getId());
-                    }
+                long delay = nextProductAt - scheduler.nanoTime();
+
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay); // It might wake up early; then it goes back to sleep.
+                    continue;
+                }
 
-                } catch (InterruptedException e) {
-                    //TODO: actionate in a proper way or use a flag to terminate the whole thread appropiately
-                    e.printStackTrace();
+                if (!tryConsumeCredit()) {
+                    parkForCredits();
+                    continue; // The product that was ready comes out right away.
                 }
+
+                addRandomProduct();
+
+                nextProductAt = scheduler.nanoTime() + loadProfile.getArrivals().nextDelayNanos(scheduler.nanoTime(), random);
+            }
+        } finally {
+            producerThread = null;
+        }
+    }
+
+    private void parkForCredits() {
+
+        parkedSince.set(scheduler.nanoTime());
+        productionParked.set(true);
+        log.log(EventType.LINE_PARKED, this.getId(), 0, 0, 0);
+
+        // Some credits might have been granted while we were parking it.
+        if (credits.get() > 0) {
+            resumeProduction();
+        } else {
+            creditsWantedListener.run();
+        }
+
+        while (productionParked.get() && continueLine && !Thread.currentThread().isInterrupted()) {
+            LockSupport.park(this);
+        }
+    }
+
+    private void scheduleNextProduct() {
+
+        if (!continueLine) {
+            return;
+        }
+
+        scheduler.schedule(this::produceProduct, loadProfile.getArrivals().nextDelayNanos(scheduler.nanoTime(), random), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs every time the line has a product ready. Without a credit the line parks here, until grantCredits() wakes it up.
+     */
+    private void produceProduct() {
+
+        if (!continueLine) {
+            return;
+        }
+
+        if (!tryConsumeCredit()) {
+            parkedSince.set(scheduler.nanoTime());
+            productionParked.set(true);
+            log.log(EventType.LINE_PARKED, this.getId(), 0, 0, 0);
+
+            // Some credits might have been granted while we were parking it.
+            if (credits.get() > 0) {
+                resumeProduction();
+            } else {
+                creditsWantedListener.run();
+            }
+            return;
+        }
+
+        addRandomProduct();
+
+        scheduleNextProduct();
+    }
+
+    private boolean tryConsumeCredit() {
+        int available = credits.get();
+
+        while (available > 0) {
+            if (credits.compareAndSet(available, available - 1)) {
+                return true;
+            }
+            available = credits.get();
+        }
+
+        return false;
+    }
+
+    /**
+     * The product that was ready when the line parked comes out right away; it does not wait for another production time.
+     */
+    private void resumeProduction() {
+        if (productionParked.compareAndSet(true, false)) {
+            parkedNanos.addAndGet(scheduler.nanoTime() - parkedSince.get());
+            log.log(EventType.LINE_RESUMED, this.getId(), 0, 0, 0);
+
+            Thread producer = producerThread;
+
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            } else {
+                scheduler.schedule(this::produceProduct, 0, TimeUnit.SECONDS);
             }
-        });
+        }
     }
 
     /**
-     * Adds the product to the "line" of products that need to be
-     * cooked by the Cooker on the multiple ovens.
+     * Makes a new product and adds it to the "line" of products that need to be
+     * cooked by the Cooker on the multiple ovens. Under the same lock as stop(): once the line is stopped, nothing
+     * more gets in (so a retired line is really empty).
+     * @return the product; null if the line was stopped.
      */
-    private synchronized void addProduct(Product product) {
+    private synchronized Product addProduct(int size, long cookTime) {
+
+        if (!continueLine) {
+            return null;
+        }
+
+        Product product = newProduct(size, cookTime);
+
+        if (journal != null) {
+            journal.append(ProductState.WAITING, product); // Before anybody can take it.
+        }
         this.waitingProducts.add(product);
+        waitingProductsCount.incrementAndGet();
+        metrics.recordArrival();
+        productArrivalListener.run();
+        log.log(EventType.PRODUCT_ADDED, product);
+
+        return product;
     }
 
     /**
      * I randomize the values that a new product might have, just before it enters the "input" line.
-     * I tries with minimal and maximum values but, ideally, those must be out of some sort of "setup scheme".
+     * They come out of the line's LoadProfile, rounded (whole cm2, whole seconds) and kept within what the Kitchen takes.
+     */
+    private void addRandomProduct() {
+        int size = (int) Math.min(Math.max(Math.round(loadProfile.getSizes().sample(random)), MIN_PRODUCT_SIZE), MAX_PRODUCT_SIZE);
+        long cookTime = Math.max(Math.round(loadProfile.getCookTimes().sample(random)), MIN_PRODUCT_COOK);
+
+        addProduct(size, cookTime);
+    }
+
+    /**
+     * Adds a product made outside the line (its size and cook time are given), if the line holds a credit for it.
+     * Only one thread at a time should submit to a line; and the line should not be started.
+     * @param size in cm2, from 1 to MAX_PRODUCT_SIZE.
+     * @param cookTime in seconds.
+     * @return the order number of the product; -1 if the line had no credit (it asks the Kitchen for more).
      */
-    private Product generateRandomProduct() {
-        Integer size = ThreadLocalRandom.current().nextInt(MIN_PRODUCT_SIZE, MAX_PRODUCT_SIZE);
-        Integer cookTime = ThreadLocalRandom.current().nextInt(MIN_PRODUCT_COOK, MAX_PRODUCT_COOK);
+    public long submitProduct(int size, long cookTime) {
+
+        if (size < MIN_PRODUCT_SIZE || size > MAX_PRODUCT_SIZE || cookTime < 0) {
+            throw new IllegalArgumentException("Wrong product: " + size + " cm2, " + cookTime + " s.");
+        }
+
+        if (!continueLine) {
+            return -1;
+        }
+
+        if (!tryConsumeCredit()) {
+            creditsWantedListener.run();
+            return -1;
+        }
 
-        Food food = new Food(size, cookTime.longValue());
+        Product product = addProduct(size, cookTime);
+
+        return product == null ? -1 : ((Food)product).getOrderNumber();
+    }
+
+    private Product newProduct(int size, long cookTime) {
+
+        ProductPool pool = productPool;
+        Food food = pool != null ? pool.acquire(size, cookTime) : new Food(size, cookTime);
 
         // Adding tracking data
         food.setAssemblyLineId(this.getId());
         food.setOrderNumber(production.getAndIncrement());
+        food.setCreatedAt(scheduler.nanoTime());
 
         return food;
     }
@@ -99,14 +335,262 @@ public class AssemblyLine implements AssemblyLineStage {
         return id;
     }
 
+    /**
+     * Whoever takes products from this line (the Kitchen) gets called every time a new product is waiting.
+     * @param productArrivalListener
+     */
+    public void setProductArrivalListener(Runnable productArrivalListener) {
+        this.productArrivalListener = productArrivalListener;
+    }
+
+    /**
+     * The line asks the Kitchen for credits, through this, every time it parks for the lack of them.
+     * @param creditsWantedListener
+     */
+    public void setCreditsWantedListener(Runnable creditsWantedListener) {
+        this.creditsWantedListener = creditsWantedListener;
+    }
+
+    /**
+     * The Kitchen lets the line make that many more products; a parked line starts producing again.
+     * @param newCredits
+     */
+    public void grantCredits(int newCredits) {
+        credits.addAndGet(newCredits);
+        creditsGrantedListener.accept(newCredits);
+        resumeProduction();
+    }
+
+    /**
+     * Asks the Kitchen for credits, right away; e.g. for a line fed from outside, as soon as it is plugged in.
+     */
+    public void askForCredits() {
+        creditsWantedListener.run();
+    }
+
+    /**
+     * Whoever feeds this line from outside gets told of every credit granted to it.
+     * @param creditsGrantedListener gets how many were granted.
+     */
+    public void setCreditsGrantedListener(IntConsumer creditsGrantedListener) {
+        this.creditsGrantedListener = creditsGrantedListener;
+    }
+
+    /**
+     * Whoever takes the finished products of this line gets called every time some of them might have been released
+     * (they come out in order; a product cooked early might still be held).
+     * @param finishedProductsListener
+     */
+    public void setFinishedProductsListener(Runnable finishedProductsListener) {
+        this.finishedProductsListener = finishedProductsListener;
+    }
+
+    /**
+     * How many products the line may still make before it parks.
+     * @return
+     */
+    public int getCredits() {
+        return credits.get();
+    }
+
+    /**
+     * The Kitchen grants no more credits to the line while it holds this many; e.g. for a remote line, that might
+     * not use them for a while.
+     * @param creditLimit
+     */
+    public void setCreditLimit(int creditLimit) {
+        this.creditLimit = creditLimit;
+    }
+
+    public int getCreditLimit() {
+        return creditLimit;
+    }
+
     @Override
     public void putAfter(Product product) {
-        finishedProducts.add(product);
+        metrics.recordCompletion(((Food)product).getCreatedAt()); // Once it is put, it can be delivered (and recycled).
+        finishedProducts.put(((Food)product).getOrderNumber(), product);
+        finishedProductsListener.run();
     }
 
     @Override
-    public synchronized Product take() {
-        return this.waitingProducts.poll();
+    public void putAfterAll(Collection<? extends Product> products) {
+        products.forEach(product -> metrics.recordCompletion(((Food)product).getCreatedAt()));
+        finishedProducts.putAll(products, product -> ((Food)product).getOrderNumber());
+        finishedProductsListener.run();
+    }
+
+    /**
+     * Takes the next finished product, in the order they were produced.
+     * @return null if the next one in order has not been cooked yet (even if later ones have).
+     */
+    public Product pollFinishedProduct() {
+        Product product = finishedProducts.poll();
+
+        if (product != null && journal != null) {
+            journal.append(ProductState.DELIVERED, product);
+        }
+
+        return product;
+    }
+
+    /**
+     * Hands every finished product released so far, in order, to the consumer; then they are recycled, if the line
+     * has a pool. So the consumer must not keep them (it can keep what it reads from them).
+     * @param consumer
+     * @return how many products were consumed.
+     */
+    public int consumeFinishedProducts(Consumer<? super Product> consumer) {
+        return consumeFinishedProducts(consumer, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The same as consumeFinishedProducts(consumer), for no more than the given products; the rest wait on the line.
+     * @param consumer
+     * @param maxProducts
+     * @return how many products were consumed.
+     */
+    public int consumeFinishedProducts(Consumer<? super Product> consumer, int maxProducts) {
+
+        ProductPool pool = productPool;
+        int consumed = 0;
+        Product product = maxProducts > 0 ? pollFinishedProduct() : null;
+
+        while (product != null) {
+            consumer.accept(product);
+            consumed++;
+
+            if (pool != null) {
+                pool.release(product);
+            }
+
+            product = consumed < maxProducts ? pollFinishedProduct() : null;
+        }
+
+        return consumed;
+    }
+
+    /**
+     * The line makes its products out of the ones consumed from it (see consumeFinishedProducts()), as far as it can.
+     * @param productPool null to stop recycling.
+     */
+    public void setProductPool(ProductPool productPool) {
+        this.productPool = productPool;
+    }
+
+    public ProductPool getProductPool() {
+        return productPool;
+    }
+
+    /**
+     * Every product of the line is journaled from now on: when it is made, and when it is delivered (the Kitchen
+     * journals the rest). The Kitchen sets it when the line is plugged in.
+     * @param journal null for none.
+     */
+    public void setJournal(ProductJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Makes a new line go on from where a former run of it was left (see Kitchen.restore()): it numbers its products
+     * from there on, and it has the finished products nobody took. Only meant to be called before it starts.
+     * @param nextOrderNumber the number of its next product.
+     * @param deliveredCount how many of its products were taken already; the first ones.
+     * @param finished the cooked products that were not taken.
+     */
+    public void restore(long nextOrderNumber, long deliveredCount, Collection<? extends Product> finished) {
+        production.set(nextOrderNumber);
+        finishedProducts.resumeAt(deliveredCount);
+        finishedProducts.putAll(finished, product -> ((Food)product).getOrderNumber());
+    }
+
+    /**
+     * How many finished products have been taken from this line so far (i.e. delivered).
+     * @return
+     */
+    public long getDeliveredCount() {
+        return finishedProducts.getTakenCount();
+    }
+
+    /**
+     * How many products the head of the finished line is waiting for; everything cooked after them is held.
+     * @return
+     */
+    public long getFinishedProductsGap() {
+        return finishedProducts.getGap();
+    }
+
+    /**
+     * How many cooked products are held behind the gap.
+     * @return
+     */
+    public int getHeldFinishedProductsCount() {
+        return finishedProducts.getHeldCount();
+    }
+
+    /**
+     * There is no lock here: the queue is a lock-free one, and only one dispatch worker at a time takes from a line.
+     */
+    @Override
+    public Product take() {
+        Product product = this.waitingProducts.poll();
+
+        if (product != null) {
+            waitingProductsCount.decrementAndGet();
+        }
+
+        return product;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Product> products, int maxProducts) {
+
+        int drained = 0;
+        Product product;
+
+        while (drained < maxProducts && (product = this.waitingProducts.poll()) != null) {
+            products.add(product);
+            drained++;
+        }
+
+        waitingProductsCount.addAndGet(-drained);
+
+        return drained;
+    }
+
+    /**
+     * @return true if there is, at least, one product waiting for the Kitchen. O(1).
+     */
+    public boolean hasWaitingProducts() {
+        return !this.waitingProducts.isEmpty();
+    }
+
+    /**
+     * @return the next product the Kitchen would take, without taking it; null if there is none.
+     */
+    public Product peekWaitingProduct() {
+        return this.waitingProducts.peekFirst();
+    }
+
+    /**
+     * Returns a product the Kitchen took but could not place anywhere; it goes back to the head of the line.
+     * @param product
+     */
+    public void putBack(Product product) {
+        this.waitingProducts.offerFirst(product);
+        waitingProductsCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the products the Kitchen took but could not place anywhere; they go back to the head of the line,
+     * in the same order they had.
+     * @param products
+     */
+    public void putBackAll(List<? extends Product> products) {
+        for (int i = products.size() - 1; i >= 0; i--) {
+            this.waitingProducts.offerFirst(products.get(i));
+        }
+        waitingProductsCount.addAndGet(products.size());
     }
 
     /**
@@ -117,60 +601,120 @@ public class AssemblyLine implements AssemblyLineStage {
     public void printStatus() {
 
         //Print waiting Queue
-        System.out.println("Assembly Line #" + this.getId() + ": still not cooked products - " + this.waitingProducts.size());
+        System.out.println("Assembly Line #" + this.getId() + ": still not cooked products - " + this.getWaitingProductsCount());
 
         //Print finished products Queue
-        System.out.println("Assembly Line #" + this.getId() + ": finished products - " + this.finishedProducts.size());
+        System.out.println("Assembly Line #" + this.getId() + ": finished products - " + this.finishedProducts.getReleasedCount() + " (held out of order: " + this.finishedProducts.getHeldCount() + ")");
 
     }
 
     /**
-     * Stops the production, but the thread continues.
+     * How many products this line has produced so far.
+     * @return
      */
-    public void haltProduction(){
-        stopProduction.set(true);
+    public long getProducedCount() {
+        return production.get();
     }
 
     /**
-     * Wakes up the production.
+     * How many products are still waiting for the Kitchen to take them. O(1), and it takes no lock.
+     * @return
      */
-    public void continueProduction(){
-        stopProduction.set(false);
+    public int getWaitingProductsCount() {
+        return waitingProductsCount.get();
     }
 
+    /**
+     * How many cooked products are waiting to be picked up from the line.
+     * @return
+     */
+    public int getFinishedProductsCount() {
+        return finishedProducts.getReleasedCount();
+    }
+
+    /**
+     * @return true if the line is parked, waiting for credits.
+     */
     public boolean isHalted() {
-        return stopProduction.get();
+        return productionParked.get();
+    }
+
+    /**
+     * How long the line has been parked for the lack of credits, in the scheduler's time; the current park included.
+     * @return
+     */
+    public long getParkedNanos() {
+        long parked = parkedNanos.get();
+        return productionParked.get() ? parked + scheduler.nanoTime() - parkedSince.get() : parked;
+    }
+
+    /**
+     * The arrivals, completions and end-to-end latencies of this line's products.
+     * @return
+     */
+    public LineMetrics getMetrics() {
+        return metrics;
     }
 
     public void kill() {
-        this.executor.shutdownNow(); // This is extreme way to finish the program! no state is recorded.
+        synchronized (this) {
+            this.continueLine = false; // This is extreme way to finish the program! no state is recorded.
+        }
+        wakeUpProducer();
     }
 
+    /**
+     * No more products are made on the line (nor submitted to it); once it returns, none is half way in.
+     */
     public void stop() {
-        this.continueLine = false;
+        synchronized (this) {
+            this.continueLine = false;
+        }
+        wakeUpProducer();
     }
 
     /**
-     * Used to checkout if the products are in order
-     *
+     * @return true if the line is stopped, and every product it made is back on it (or was delivered already).
      */
-    public void printAllFinishedProductsInOrder() {
+    public boolean isDrained() {
+        return !continueLine && getWaitingProductsCount() == 0 && getInFlightCount() == 0;
+    }
 
-        Product product = finishedProducts.poll();
-        Integer position  = 0;
+    /**
+     * How many products of the line are in the kitchen right now: in a store, or in an oven.
+     * @return
+     */
+    public long getInFlightCount() {
+        // Downstream first: a product that moves on while we count is missed, never counted twice.
+        long delivered = getDeliveredCount();
+        long finished = getFinishedProductsCount();
+        long held = getHeldFinishedProductsCount();
+        long waiting = getWaitingProductsCount();
+
+        return getProducedCount() - delivered - finished - held - waiting;
+    }
 
-        System.out.println("***************************************************");
-        System.out.println(" FINISHED PRODUCTS LIST -  Assembly Line: " + this.getId());
-        System.out.println("***************************************************");
+    private void wakeUpProducer() {
+        Thread producer = producerThread;
 
-        while (product != null){
+        if (producer != null) {
+            LockSupport.unpark(producer); // So it sees the line stopped, instead of sleeping until the next product.
+        }
+    }
 
-            System.out.println("Position: " + position + " product order: " + ((Food)product).getOrderNumber()) ;
+    /**
+     * Used to checkout if the products are in order; it empties the finished products queue.
+     * @return how many products were printed.
+     */
+    public int printAllFinishedProductsInOrder() {
 
-            position++;
-            product = finishedProducts.poll();
+        int[] position = {0};
 
-        }
+        System.out.println("***************************************************");
+        System.out.println(" FINISHED PRODUCTS LIST -  Assembly Line: " + this.getId());
+        System.out.println("***************************************************");
 
+        return consumeFinishedProducts(product ->
+            System.out.println("Position: " + position[0]++ + " product order: " + ((Food)product).getOrderNumber()));
     }
 }
@@ -0,0 +1,246 @@
+package com.foodfactory.model;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Every assembly line of a kitchen, by id. The ids are handed out here, one after the other, and never reused; so
+ * lines can come and go all the time, from any thread, and no two of them ever get the same one.
+ *
+ * Finding a line by its id is two array reads: the ids are split in chunks of 1024, and a chunk goes away once all
+ * of its lines are gone. Going over the lines is a walk on a dense array, with no copy: a line that leaves takes the
+ * place of the last one. Adding and removing take a lock (and never copy more than the arrays, when they grow);
+ * reading takes none. A walk that races with a removal might miss the line that moved, or see it twice: the
+ * Kitchen's next pass sees it right.
+ */
+public class AssemblyLineRegistry extends AbstractCollection<AssemblyLine> {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Object lock = new Object();
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Entry>> chunks = new AtomicReferenceArray<>(1);
+    private volatile AtomicReferenceArray<Entry> lines = new AtomicReferenceArray<>(INITIAL_CAPACITY); // Dense.
+    private volatile int size = 0;
+    private int[] chunkSizes = new int[1]; // Lines in every chunk; guarded by the lock, as the rest of the writes.
+    private int nextId = 0;
+
+    /**
+     * Hands out the next id, and adds the line built with it. The line is built under the lock: it should only be
+     * wired (listeners, pool...), not started.
+     * @param newAssemblyLine builds the line, with the given id.
+     * @return the line.
+     */
+    public AssemblyLine register(IntFunction<AssemblyLine> newAssemblyLine) {
+
+        synchronized (lock) {
+            AssemblyLine assemblyLine = newAssemblyLine.apply(nextId);
+
+            if (assemblyLine.getId() != nextId) {
+                throw new IllegalArgumentException("Assembly line #" + assemblyLine.getId() + " was given the id " + nextId);
+            }
+
+            nextId++;
+            add(assemblyLine.getId(), assemblyLine);
+
+            return assemblyLine;
+        }
+    }
+
+    /**
+     * The next line gets the given id, or a later one; e.g. to bring back the lines of a former run with their ids.
+     * @param id
+     */
+    public void skipTo(int id) {
+        synchronized (lock) {
+            nextId = Math.max(nextId, id);
+        }
+    }
+
+    /**
+     * @param id
+     * @return the line with the given id; null if there is none (anymore).
+     */
+    public AssemblyLine get(int id) {
+
+        AtomicReferenceArray<AtomicReferenceArray<Entry>> directory = chunks;
+        int chunkIndex = id >>> CHUNK_BITS;
+
+        if (id < 0 || chunkIndex >= directory.length()) {
+            return null;
+        }
+
+        AtomicReferenceArray<Entry> chunk = directory.get(chunkIndex);
+        Entry entry = chunk == null ? null : chunk.get(id & CHUNK_MASK);
+
+        return entry == null ? null : entry.assemblyLine;
+    }
+
+    /**
+     * The line at the given position of the walk (from 0 to size() - 1); the positions change as lines leave.
+     * @param index
+     * @return null if a line just left from there.
+     */
+    public AssemblyLine at(int index) {
+
+        AtomicReferenceArray<Entry> dense = lines;
+        Entry entry = index < dense.length() ? dense.get(index) : null;
+
+        return entry == null ? null : entry.assemblyLine;
+    }
+
+    /**
+     * Takes the line out, at once. Whoever removes it makes sure nothing of it is left in the kitchen (see Kitchen.retire()).
+     * @param assemblyLine
+     * @return false if it was not here.
+     */
+    @Override
+    public boolean remove(Object assemblyLine) {
+
+        if (!(assemblyLine instanceof AssemblyLine)) {
+            return false;
+        }
+
+        int id = ((AssemblyLine) assemblyLine).getId();
+
+        synchronized (lock) {
+
+            AtomicReferenceArray<AtomicReferenceArray<Entry>> directory = chunks;
+            int chunkIndex = id >>> CHUNK_BITS;
+            AtomicReferenceArray<Entry> chunk = id < 0 || chunkIndex >= directory.length() ? null : directory.get(chunkIndex);
+            Entry entry = chunk == null ? null : chunk.get(id & CHUNK_MASK);
+
+            if (entry == null || entry.assemblyLine != assemblyLine) {
+                return false;
+            }
+
+            chunk.set(id & CHUNK_MASK, null);
+
+            // A chunk whose ids were all handed out, and whose lines are all gone, is never used again.
+            if (--chunkSizes[chunkIndex] == 0 && (chunkIndex + 1) << CHUNK_BITS <= nextId) {
+                directory.set(chunkIndex, null);
+            }
+
+            // The last line takes its place in the walk.
+            AtomicReferenceArray<Entry> dense = lines;
+            int last = size - 1;
+            Entry moved = dense.get(last);
+
+            moved.index = entry.index;
+            dense.set(entry.index, moved);
+            dense.set(last, null);
+            size = last;
+
+            return true;
+        }
+    }
+
+    @Override
+    public boolean contains(Object assemblyLine) {
+        return assemblyLine instanceof AssemblyLine && get(((AssemblyLine) assemblyLine).getId()) == assemblyLine;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Goes over the lines there were when it started, and it never fails: see the races in the class comment.
+     */
+    @Override
+    public Iterator<AssemblyLine> iterator() {
+
+        int count = size; // Before the array: the array is at least this long.
+        AtomicReferenceArray<Entry> dense = lines;
+
+        return new Iterator<AssemblyLine>() {
+
+            private int index = 0;
+            private AssemblyLine next = advance();
+
+            private AssemblyLine advance() {
+                while (index < count) {
+                    Entry entry = dense.get(index++);
+                    if (entry != null) {
+                        return entry.assemblyLine;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public AssemblyLine next() {
+
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                AssemblyLine current = next;
+                next = advance();
+
+                return current;
+            }
+        };
+    }
+
+    private void add(int id, AssemblyLine assemblyLine) {
+
+        AtomicReferenceArray<AtomicReferenceArray<Entry>> directory = chunks;
+        int chunkIndex = id >>> CHUNK_BITS;
+
+        if (chunkIndex >= directory.length()) {
+            directory = grow(directory, Math.max(chunkIndex + 1, directory.length() * 2));
+            chunkSizes = Arrays.copyOf(chunkSizes, directory.length());
+            chunks = directory;
+        }
+
+        if (directory.get(chunkIndex) == null) {
+            directory.set(chunkIndex, new AtomicReferenceArray<>(CHUNK_SIZE));
+        }
+
+        Entry entry = new Entry(assemblyLine, size);
+        directory.get(chunkIndex).set(id & CHUNK_MASK, entry);
+        chunkSizes[chunkIndex]++;
+
+        if (size == lines.length()) {
+            lines = grow(lines, lines.length() * 2);
+        }
+
+        lines.set(size, entry);
+        size = size + 1; // Last: a walk that sees the new size sees the line (and the array it is in).
+    }
+
+    private static <T> AtomicReferenceArray<T> grow(AtomicReferenceArray<T> array, int length) {
+
+        AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(length);
+
+        for (int i = 0; i < array.length(); i++) {
+            grown.set(i, array.get(i));
+        }
+
+        return grown;
+    }
+
+    private static final class Entry {
+
+        private final AssemblyLine assemblyLine;
+        private int index; // Where it is in the walk; guarded by the lock.
+
+        Entry(AssemblyLine assemblyLine, int index) {
+            this.assemblyLine = assemblyLine;
+            this.index = index;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.foodfactory.model;
 
+import java.util.Collection;
+
 /**
  *  This represents an assembly line stage of the factory. Implementations of this class should be thread-safe
  */
@@ -16,4 +18,18 @@ public interface AssemblyLineStage {
      * @return
      */
     Product take();
+
+    /**
+     * Puts all the given products to the assembly line at once, to continue in the next stage.
+     * @param products
+     */
+    void putAfterAll(Collection<? extends Product> products);
+
+    /**
+     * Takes up to maxProducts of the next products available, in order, and adds them to the given collection.
+     * @param products
+     * @param maxProducts
+     * @return how many products were taken.
+     */
+    int drainTo(Collection<? super Product> products, int maxProducts);
 }
\ No newline at end of file
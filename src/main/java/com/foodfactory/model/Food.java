@@ -5,17 +5,37 @@ import java.time.Duration;
 /**
  * A generic food.
  * We can extend this class into hamburgers, fries or whatever.
+ *
+ * Every field is a primitive (the cook time in nanoseconds), so a product is one small object and reading it boxes
+ * nothing. A line with a ProductPool recycles them: a Food is only reused once it was delivered.
  */
 public class Food implements Product {
 
-    private final Integer size;
-    private final Duration cookTime;
-    private Integer orderNumber;
-    private Integer assemblyLineId;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
 
-    public Food(Integer size, Long cookTime){
+    private int size;
+    private long cookTimeNanos;
+    private long orderNumber; // 64 bits: a long production run must not wrap around.
+    private int assemblyLineId;
+    private long createdAt; // By the clock of its line; the end-to-end latency counts from here.
+
+    /**
+     * @param size in cm2.
+     * @param cookTime in seconds.
+     */
+    public Food(int size, long cookTime){
+        reset(size, cookTime);
+    }
+
+    /**
+     * Makes a brand new product out of this one; only the ProductPool does it, with a product nobody holds anymore.
+     */
+    void reset(int size, long cookTime) {
         this.size = size;
-        this.cookTime = Duration.ofSeconds(cookTime);
+        this.cookTimeNanos = cookTime * NANOS_PER_SECOND;
+        this.orderNumber = 0;
+        this.assemblyLineId = 0;
+        this.createdAt = 0;
     }
 
     @Override
@@ -23,24 +43,40 @@ public class Food implements Product {
         return size;
     }
 
+    /**
+     * A new Duration on every call; the hot path asks for cookTimeNanos() instead.
+     */
     @Override
     public Duration cookTime() {
-        return cookTime;
+        return Duration.ofNanos(cookTimeNanos);
+    }
+
+    @Override
+    public long cookTimeNanos() {
+        return cookTimeNanos;
     }
 
-    public Integer getOrderNumber() {
+    public long getOrderNumber() {
         return orderNumber;
     }
 
-    public void setOrderNumber(Integer orderNumber) {
+    public void setOrderNumber(long orderNumber) {
         this.orderNumber = orderNumber;
     }
 
-    public Integer getAssemblyLineId() {
+    public int getAssemblyLineId() {
         return assemblyLineId;
     }
 
-    public void setAssemblyLineId(Integer assemblyLineId) {
+    public void setAssemblyLineId(int assemblyLineId) {
         this.assemblyLineId = assemblyLineId;
     }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
 }
@@ -3,20 +3,33 @@ package com.foodfactory.model;
 import com.foodfactory.exceptions.CapacityExceededException;
 
 import java.time.Duration;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * It cooks the food and handles its own storage of products
+ *
+ * The occupied room is kept in a fixed-point counter (thousandths of cm2), so the oven keeps the
+ * Double size of the specification and still reserves room with a single CAS; two threads can
+ * never both "fit" in the last free spot. Put and take cost the same with an empty or a full oven.
  */
 public class OvenImpl implements Oven{
-    private final Integer size; // TODO size was Double in the specification, refactor this.
-    private final CopyOnWriteArrayList<Product> cookingProducts = new CopyOnWriteArrayList<>();
+
+    private static final long UNITS_PER_CM2 = 1000; // Fixed point: a thousandth of cm2 is precise enough for any product.
+
+    private final double size;
+    private final long capacityUnits;
+    private final AtomicLong occupiedUnits = new AtomicLong(0);
+    private final ConcurrentHashMap<Product, OvenSlot> cookingProducts = new ConcurrentHashMap<>();
     private AtomicBoolean on = new AtomicBoolean(false);
+    private volatile Duration cycleDuration = null; // Only while it runs a batch cycle.
+    private volatile Runnable roomFreedListener = () -> {};
+    private volatile boolean closed = false;
 
-    public OvenImpl(Integer size) {
+    public OvenImpl(double size) {
         this.size = size;
+        this.capacityUnits = toUnits(size);
     }
 
     @Override
@@ -26,34 +39,146 @@ public class OvenImpl implements Oven{
 
     @Override
     public void put(Product product) throws CapacityExceededException {
-        Double currentOccupiedSize = cookingProducts.stream().mapToDouble(Product::size).sum(); // do not use a property to store the free space: multithreading could mess up with the current real value.
-
-        if ((currentOccupiedSize + product.size()) > size){
+        if (tryPut(product) == null) {
             throw new CapacityExceededException();
         }
+    }
+
+    /**
+     * Reserves room for the product, if there is enough, without throwing.
+     * @param product
+     * @return the handle to take the product out later, or null if it does not fit.
+     */
+    public OvenSlot tryPut(Product product) {
+
+        if (closed) {
+            return null;
+        }
+
+        long productUnits = toUnits(product.size());
+        long occupied;
+
+        do {
+            occupied = occupiedUnits.get();
+
+            if (occupied + productUnits > capacityUnits) {
+                return null;
+            }
+        } while (!occupiedUnits.compareAndSet(occupied, occupied + productUnits));
 
-        cookingProducts.add(product);
+        OvenSlot slot = new OvenSlot(this, product, productUnits);
+        cookingProducts.put(product, slot);
 
+        return slot;
     }
 
     @Override
     public void take(Product product) {
-        cookingProducts.remove(product);
+        OvenSlot slot = cookingProducts.get(product);
+
+        if (slot != null) {
+            slot.release();
+        }
+    }
+
+    /**
+     * Called once per slot, by OvenSlot.release().
+     */
+    void release(OvenSlot slot) {
+        cookingProducts.remove(slot.getProduct(), slot);
+        occupiedUnits.addAndGet(-slot.getOccupiedUnits());
+        roomFreedListener.run();
+    }
+
+    /**
+     * The oven takes no more products; the ones cooking in it finish as usual (see Kitchen.removeOven()).
+     * Call it under the lock of whoever places the products (the placement engine), so nobody is halfway in.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return true if nothing is cooking in it.
+     */
+    public boolean isEmpty() {
+        return cookingProducts.isEmpty() && occupiedUnits.get() == 0;
+    }
+
+    /**
+     * Whoever keeps track of the free room of the ovens (the placement engine) gets called every time a product leaves.
+     * @param roomFreedListener
+     */
+    public void setRoomFreedListener(Runnable roomFreedListener) {
+        this.roomFreedListener = roomFreedListener;
+    }
+
+    /**
+     * @return the room still available, in cm2.
+     */
+    public double getFreeSize() {
+        return (double) (capacityUnits - occupiedUnits.get()) / UNITS_PER_CM2;
+    }
+
+    /**
+     * @return the room still available, in the oven's fixed point units.
+     */
+    public long getFreeUnits() {
+        return capacityUnits - occupiedUnits.get();
+    }
+
+    /**
+     * @return the room taken by the products cooking, in cm2.
+     */
+    public double getOccupiedSize() {
+        return (double) occupiedUnits.get() / UNITS_PER_CM2;
+    }
+
+    public int getCookingProductsCount() {
+        return cookingProducts.size();
     }
 
     @Override
     public void turnOn() {
         this.on.set(true);
+        this.cycleDuration = null;
     }
 
+    /**
+     * Runs one batch cycle. The oven does not keep a clock; whoever turned it on turns it off when the time is over.
+     */
     @Override
     public void turnOn(Duration duration) {
-        // Not used.
+        this.on.set(true);
+        this.cycleDuration = duration;
     }
 
     @Override
     public void turnOff() {
         this.on.set(false);
+        this.cycleDuration = null;
+    }
+
+    public boolean isOn() {
+        return on.get();
+    }
+
+    /**
+     * @return how long the current batch cycle lasts, or null if the oven is off or cooking continuously.
+     */
+    public Duration getCycleDuration() {
+        return cycleDuration;
+    }
+
+    /**
+     * Converts a size in cm2 to the fixed point units the ovens work with.
+     */
+    public static long toUnits(double cm2) {
+        return Math.round(cm2 * UNITS_PER_CM2);
     }
 
 }
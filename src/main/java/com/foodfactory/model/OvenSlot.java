@@ -0,0 +1,51 @@
+package com.foodfactory.model;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The room a product takes inside an OvenImpl, while it cooks.
+ * Whoever put the product in keeps this handle, so taking it out is O(1): no need to search the ovens for it.
+ */
+public final class OvenSlot {
+
+    private final OvenImpl oven;
+    private final Product product;
+    private final long occupiedUnits;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    OvenSlot(OvenImpl oven, Product product, long occupiedUnits) {
+        this.oven = oven;
+        this.product = product;
+        this.occupiedUnits = occupiedUnits;
+    }
+
+    /**
+     * Takes the product out of the oven, freeing its room. Only the first call does anything.
+     * @return true if this call freed the room.
+     */
+    public boolean release() {
+
+        if (!released.compareAndSet(false, true)) {
+            return false;
+        }
+
+        oven.release(this);
+        return true;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    public OvenImpl getOven() {
+        return oven;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    long getOccupiedUnits() {
+        return occupiedUnits;
+    }
+}
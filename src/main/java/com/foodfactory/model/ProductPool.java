@@ -0,0 +1,60 @@
+package com.foodfactory.model;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the products somebody took from a finished line, and makes new products out of them; so a line under a
+ * sustained load does not leave one Food per product for the garbage collector.
+ *
+ * It is bounded: what does not fit is left to the GC, as without a pool. A product must only come back here when
+ * nobody holds it anymore (AssemblyLine.consumeFinishedProducts() takes care of that).
+ */
+public class ProductPool {
+
+    private final ArrayBlockingQueue<Food> recycledProducts; // An array: offering or polling allocates nothing.
+    private final LongAdder createdProducts = new LongAdder();
+    private final LongAdder reusedProducts = new LongAdder();
+
+    /**
+     * @param capacity how many products it keeps, at most.
+     */
+    public ProductPool(int capacity) {
+        this.recycledProducts = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @param size in cm2.
+     * @param cookTime in seconds.
+     * @return a recycled product, or a new one if there is none.
+     */
+    public Food acquire(int size, long cookTime) {
+
+        Food food = recycledProducts.poll();
+
+        if (food == null) {
+            createdProducts.increment();
+            return new Food(size, cookTime);
+        }
+
+        reusedProducts.increment();
+        food.reset(size, cookTime);
+
+        return food;
+    }
+
+    /**
+     * @param product one nobody holds anymore.
+     */
+    public void release(Product product) {
+        recycledProducts.offer((Food) product);
+    }
+
+    public long getCreatedCount() {
+        return createdProducts.sum();
+    }
+
+    public long getReusedCount() {
+        return reusedProducts.sum();
+    }
+}
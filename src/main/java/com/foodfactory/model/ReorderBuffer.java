@@ -0,0 +1,175 @@
+package com.foodfactory.model;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Puts the products of one assembly line back in order, after they come out of the ovens in any order.
+ *
+ * Every product lands in a ring buffer at the slot of its sequence number (its order number); only the
+ * contiguous run starting at the next expected number is released, so nobody downstream can see product 7
+ * before product 5. Each product is written once and moved out once: O(1) amortized (the ring doubles
+ * when a product arrives too far ahead of the head).
+ *
+ * The "gap" is how many products the head is waiting for; while it is not zero, everything behind it is held.
+ */
+public class ReorderBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Product[] ring = new Product[INITIAL_CAPACITY];
+    private long nextSequence = 0; // The sequence number the head of the line is waiting for.
+    private long highestSequence = -1;
+    private int heldProducts = 0;
+    private final ConcurrentLinkedQueue<Product> releasedProducts = new ConcurrentLinkedQueue<>();
+    private final LongAdder takenProducts = new LongAdder();
+    private volatile long releasedCount = 0; // Written under the lock, read without it.
+
+    /**
+     * Receives a product; it (and whatever was held behind it) is released if it is the next one expected.
+     * @param sequence the order number of the product within its line.
+     * @param product
+     */
+    public synchronized void put(long sequence, Product product) {
+
+        if (sequence < nextSequence || (sequence - nextSequence < ring.length && ring[slot(sequence)] != null)) {
+            throw new IllegalStateException("Product #" + sequence + " was already received.");
+        }
+
+        while (sequence - nextSequence >= ring.length) {
+            grow();
+        }
+
+        hold(sequence, product);
+        releaseContiguousPrefix();
+    }
+
+    /**
+     * Receives many products under one lock; whatever they complete is released once, at the end.
+     * @param products
+     * @param sequenceOf the order number of each product within its line.
+     */
+    public synchronized void putAll(Collection<? extends Product> products, ToLongFunction<Product> sequenceOf) {
+
+        for (Product product : products) {
+
+            long sequence = sequenceOf.applyAsLong(product);
+
+            if (sequence < nextSequence || (sequence - nextSequence < ring.length && ring[slot(sequence)] != null)) {
+                throw new IllegalStateException("Product #" + sequence + " was already received.");
+            }
+
+            while (sequence - nextSequence >= ring.length) {
+                grow();
+            }
+
+            hold(sequence, product);
+        }
+
+        releaseContiguousPrefix();
+    }
+
+    /**
+     * Takes the next product in order, if it has been released.
+     * @return null if the next product has not finished yet.
+     */
+    public Product poll() {
+        Product product = releasedProducts.poll();
+
+        if (product != null) {
+            takenProducts.increment();
+        }
+
+        return product;
+    }
+
+    /**
+     * @return how many products have been taken out of the buffer, by anyone, so far.
+     */
+    public long getTakenCount() {
+        return takenProducts.sum();
+    }
+
+    /**
+     * @return how many products are released and ready to be taken. O(1), and it takes no lock.
+     */
+    public int getReleasedCount() {
+        return (int) Math.max(0, releasedCount - takenProducts.sum()); // A poll counts itself right after taking.
+    }
+
+    /**
+     * @return how many products have arrived but are held behind the gap.
+     */
+    public synchronized int getHeldCount() {
+        return heldProducts;
+    }
+
+    /**
+     * @return how many missing products the head of the line is blocked on (zero if nothing is held).
+     */
+    public synchronized long getGap() {
+        return highestSequence + 1 - nextSequence - heldProducts;
+    }
+
+    /**
+     * Makes a new buffer go on from where a former one was left (see Kitchen.restore()): as if the products before
+     * the given sequence had been released, and taken.
+     * @param sequence the next one it expects.
+     */
+    public synchronized void resumeAt(long sequence) {
+
+        if (nextSequence != 0 || highestSequence != -1) {
+            throw new IllegalStateException("Only a new buffer can be resumed.");
+        }
+
+        nextSequence = sequence;
+        highestSequence = sequence - 1;
+        releasedCount = sequence;
+        takenProducts.add(sequence);
+    }
+
+    /**
+     * @return the sequence number the buffer releases next.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    private void hold(long sequence, Product product) {
+        ring[slot(sequence)] = product;
+        heldProducts++;
+        highestSequence = Math.max(highestSequence, sequence);
+    }
+
+    private void releaseContiguousPrefix() {
+
+        Product next = ring[slot(nextSequence)];
+
+        while (next != null) {
+            ring[slot(nextSequence)] = null;
+            heldProducts--;
+            nextSequence++;
+            releasedProducts.add(next);
+            releasedCount++;
+
+            next = ring[slot(nextSequence)];
+        }
+    }
+
+    private void grow() {
+
+        Product[] grown = new Product[ring.length * 2];
+
+        for (long sequence = nextSequence; sequence <= highestSequence; sequence++) {
+            grown[(int) (sequence & (grown.length - 1))] = ring[slot(sequence)];
+        }
+
+        ring = grown;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence & (ring.length - 1));
+    }
+}
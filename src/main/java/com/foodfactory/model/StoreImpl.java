@@ -1,45 +1,227 @@
 package com.foodfactory.model;
 
-import com.foodfactory.exceptions.CapacityExceededException;
-
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This holds the food, but doesn't cooks it.
+ *
+ * The occupied room is a counter updated on every put/take, so no operation walks the stored products.
+ * Products are kept in arrival order (FIFO) in a linked set: the next one and any given one are removed in O(1).
+ * Producers that do not fit wait in line too: when room frees up, they are let in strictly in the order they arrived;
+ * a small product never overtakes a bigger one that was waiting before it.
  */
 public class StoreImpl implements Store{
 
-    private final Integer size; // we will not provide a getter & setter for this
-    private final ConcurrentLinkedQueue<Product> storedProducts = new ConcurrentLinkedQueue<>();
+    private static final long UNITS_PER_CM2 = 1000; // Fixed point, the same as the ovens.
+
+    private final double size; // we will not provide a getter & setter for this
+    private final long capacityUnits;
+    private final LinkedHashSet<Product> storedProducts = new LinkedHashSet<>();
+    private final ArrayDeque<Condition> waitingProducers = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long occupiedUnits = 0; // Written under the lock; the getters read it without it.
+    private volatile int storedProductsCount = 0; // The same.
+    private volatile boolean closed = false; // Written under the lock.
 
-    public StoreImpl(Integer size){
+    public StoreImpl(double size){
         this.size = size;
+        this.capacityUnits = toUnits(size);
     }
 
-    public Integer getSize() {
+    public double getSize() {
         return size;
     }
 
+    /**
+     * Takes no lock: reporting never makes a producer wait.
+     * @return
+     */
+    public int getStoredProductsCount() {
+        return storedProductsCount;
+    }
+
+    /**
+     * @return the room taken by the stored products, in cm2. It takes no lock either.
+     */
+    public double getOccupiedSize() {
+        return (double) occupiedUnits / UNITS_PER_CM2;
+    }
+
+    /**
+     * Blocks until there is room for the product, as the Store contract says.
+     * If the thread is interrupted while waiting, the product is not stored and the interruption is kept.
+     * @throws IllegalStateException if the store is closed, before or while waiting: the product was not stored, so
+     * it is still the caller's.
+     */
     @Override
     public void put(Product product) {
-        Double currentOccupiedSize = storedProducts.stream().mapToDouble(Product::size).sum(); // do not use a property to store the free space: multithreading could mess up with the current real value.
+        try {
+            if (!offer(product, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("The store is closed; the product was not stored.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stores the product only if there is room right now, and nobody was waiting before it.
+     * @param product
+     * @return true if the product was stored.
+     */
+    public boolean tryPut(Product product) {
+
+        long productUnits = toUnits(product.size());
+
+        lock.lock();
+        try {
+            if (closed || !waitingProducers.isEmpty() || !fits(productUnits)) {
+                return false;
+            }
+
+            store(product, productUnits);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits, up to the given timeout, for room for the product; producers get in in FIFO order.
+     * @return true if the product was stored, false if the time ran out (or the store was closed).
+     */
+    public boolean offer(Product product, long timeout, TimeUnit unit) throws InterruptedException {
+
+        long productUnits = toUnits(product.size());
+        long remainingNanos = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            if (closed) {
+                return false;
+            }
+
+            if (waitingProducers.isEmpty() && fits(productUnits)) {
+                store(product, productUnits);
+                return true;
+            }
+
+            Condition turn = lock.newCondition();
+            waitingProducers.addLast(turn);
+
+            try {
+                while (waitingProducers.peekFirst() != turn || !fits(productUnits)) {
+
+                    if (remainingNanos <= 0 || closed) {
+                        return false;
+                    }
+
+                    remainingNanos = turn.awaitNanos(remainingNanos);
+                }
+
+                store(product, productUnits);
+                return true;
+
+            } finally {
+                waitingProducers.remove(turn);
+                signalNextProducer(); // Whoever is next might fit as well (or it is its turn now that we gave up).
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The store takes no more products; the ones in it are still taken as usual (see Kitchen.removeStore()). The
+     * producers waiting for room give up.
+     */
+    public void close() {
 
-        if ((currentOccupiedSize + product.size()) > size){
-            product = null; // THIS IS WRONG, but we are just representing the case when the current interface is forced into our design: "How we deal with it?"
-        } else {
-            storedProducts.add(product);
+        lock.lock();
+        try {
+            closed = true;
+            waitingProducers.forEach(Condition::signal);
+        } finally {
+            lock.unlock();
         }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
 
+    /**
+     * Takes no lock.
+     * @return true if nothing is stored in it.
+     */
+    public boolean isEmpty() {
+        return storedProductsCount == 0;
     }
 
     @Override
     public Product take() {
-        return storedProducts.poll();
+
+        lock.lock();
+        try {
+            Iterator<Product> oldest = storedProducts.iterator();
+
+            if (!oldest.hasNext()) {
+                return null;
+            }
+
+            Product product = oldest.next();
+            oldest.remove();
+            free(product);
+
+            return product;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void take(Product product) {
 
+        lock.lock();
+        try {
+            if (storedProducts.remove(product)) {
+                free(product);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long productUnits) {
+        return occupiedUnits + productUnits <= capacityUnits;
+    }
+
+    private void store(Product product, long productUnits) {
+        storedProducts.add(product);
+        storedProductsCount = storedProducts.size();
+        occupiedUnits += productUnits;
+    }
+
+    private void free(Product product) {
+        storedProductsCount = storedProducts.size();
+        occupiedUnits -= toUnits(product.size());
+        signalNextProducer();
+    }
+
+    private void signalNextProducer() {
+        Condition next = waitingProducers.peekFirst();
+
+        if (next != null) {
+            next.signal();
+        }
+    }
+
+    private static long toUnits(double cm2) {
+        return Math.round(cm2 * UNITS_PER_CM2);
     }
 }
@@ -0,0 +1,14 @@
+package com.foodfactory.scheduling;
+
+/**
+ * The source of time of the whole factory. It might follow the wall clock (live runs)
+ * or a virtual clock that jumps from event to event (simulations).
+ */
+public interface Clock {
+
+    /**
+     * Nanoseconds elapsed since the clock started; only meaningful to measure intervals.
+     * @return
+     */
+    long nanoTime();
+}
@@ -0,0 +1,175 @@
+package com.foodfactory.scheduling;
+
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A discrete-event simulation engine: the clock is virtual and it jumps straight from one
+ * scheduled event to the next one, instead of sleeping through the gap. Hours of factory
+ * time are replayed in the time it takes to run the events themselves.
+ *
+ * The events run on the thread that calls runFor(); events scheduled at the same virtual
+ * time run in the order they were scheduled.
+ */
+public class DiscreteEventScheduler implements TaskScheduler {
+
+    private final PriorityQueue<SimulatedEvent> events = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+    private long generation = 0;
+    private long processedEvents = 0;
+    private boolean running = true;
+
+    @Override
+    public synchronized long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+
+        if (!running) {
+            throw new IllegalStateException("The simulation has been stopped.");
+        }
+
+        SimulatedEvent event = new SimulatedEvent(task, now + Math.max(unit.toNanos(delay), 0), sequence++, generation);
+        events.add(event);
+
+        return event;
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        generation++;
+        events.clear();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        cancelAll();
+    }
+
+    /**
+     * Runs every event due within the given amount of virtual time, then leaves the clock at the end of it.
+     * @param duration virtual time to advance.
+     * @param afterEachEvent runs after every event (and once at the beginning); this is where whoever reacts
+     *                       to the state of the factory (e.g. the Kitchen dispatching products) gets its turn.
+     */
+    public void runFor(Duration duration, Runnable afterEachEvent) {
+
+        long end;
+
+        synchronized (this) {
+            end = now + duration.toNanos();
+        }
+
+        afterEachEvent.run();
+
+        SimulatedEvent event = nextEventUntil(end);
+
+        while (event != null) {
+
+            if (event.expire()) {
+                event.task.run();
+                afterEachEvent.run();
+            }
+
+            event = nextEventUntil(end);
+        }
+
+        synchronized (this) {
+            now = Math.max(now, end);
+        }
+    }
+
+    /**
+     * Amount of events run since the simulation started.
+     * @return
+     */
+    public synchronized long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    /**
+     * Takes the earliest event due before the end, moving the clock up to it.
+     */
+    private synchronized SimulatedEvent nextEventUntil(long end) {
+
+        SimulatedEvent event = events.peek();
+
+        while (event != null && event.isCancelled()) {
+            events.poll(); // Cancelled events are dropped lazily, when they reach the head.
+            event = events.peek();
+        }
+
+        if (!running || event == null || event.time > end) {
+            return null;
+        }
+
+        events.poll();
+        now = event.time;
+        processedEvents++;
+
+        return event;
+    }
+
+    private final class SimulatedEvent implements Timeout, Comparable<SimulatedEvent> {
+
+        private final Runnable task;
+        private final long time;
+        private final long eventSequence;
+        private final long eventGeneration;
+        private boolean cancelled = false;
+        private boolean expired = false;
+
+        SimulatedEvent(Runnable task, long time, long eventSequence, long eventGeneration) {
+            this.task = task;
+            this.time = time;
+            this.eventSequence = eventSequence;
+            this.eventGeneration = eventGeneration;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (DiscreteEventScheduler.this) {
+                if (cancelled || expired) {
+                    return false;
+                }
+                cancelled = true;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (DiscreteEventScheduler.this) {
+                return cancelled || eventGeneration != generation;
+            }
+        }
+
+        @Override
+        public boolean isExpired() {
+            synchronized (DiscreteEventScheduler.this) {
+                return expired;
+            }
+        }
+
+        boolean expire() {
+            synchronized (DiscreteEventScheduler.this) {
+                if (cancelled || expired || eventGeneration != generation) {
+                    return false;
+                }
+                expired = true;
+                return true;
+            }
+        }
+
+        @Override
+        public int compareTo(SimulatedEvent other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(eventSequence, other.eventSequence);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.foodfactory.scheduling;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel: every pending timer lives in one of a fixed number of buckets,
+ * indexed by its deadline (in ticks) modulo the wheel size. A single "ticker" thread moves
+ * over one bucket per tick and hands the expired tasks to a small fixed pool of workers; so
+ * the amount of threads never depends on how many products are cooking at the same time.
+ *
+ * Scheduling and cancelling are O(1): new timers and cancellations are queued and the
+ * ticker thread links/unlinks them from their bucket (a doubly linked list) on its next tick.
+ * Cancelling everything at once is O(1) too; we just move on to a new "generation" of timers.
+ *
+ * The price to pay is precision: a timer fires within one tick of its deadline.
+ */
+public class HashedTimingWheel implements TaskScheduler {
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong generation = new AtomicLong(0);
+    private final ExecutorService workers;
+    private final Thread ticker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick = 0; // Only touched by the ticker thread.
+
+    /**
+     * @param tickDuration the precision of the wheel.
+     * @param unit the unit of the tickDuration.
+     * @param ticksPerWheel amount of buckets; it is rounded up to a power of two.
+     * @param workerThreads amount of threads that run the expired tasks.
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, int workerThreads) {
+
+        if (tickDuration <= 0 || ticksPerWheel <= 0 || workerThreads <= 0) {
+            throw new IllegalArgumentException("The tick duration, the ticks per wheel and the worker threads must be positive.");
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[powerOfTwoAtLeast(ticksPerWheel)];
+        this.mask = wheel.length - 1;
+
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        AtomicInteger workerNumber = new AtomicInteger(0);
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread worker = new Thread(runnable, "timing-wheel-worker-" + workerNumber.getAndIncrement());
+            worker.setDaemon(true);
+            return worker;
+        });
+
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::tickUntilStopped, "timing-wheel-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime() - startTime;
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+
+        if (!running) {
+            throw new IllegalStateException("The timing wheel has been stopped.");
+        }
+
+        long deadline = nanoTime() + Math.max(unit.toNanos(delay), 0);
+        WheelTimeout timeout = new WheelTimeout(task, deadline, generation.get());
+
+        pendingTimeouts.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * The buckets are cleaned up lazily by the ticker.
+     */
+    @Override
+    public void cancelAll() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        cancelAll();
+        ticker.interrupt();
+        workers.shutdownNow();
+    }
+
+    /**
+     * The ticker thread loop.
+     */
+    private void tickUntilStopped() {
+
+        while (running) {
+
+            long deadline = waitForNextTick();
+
+            if (deadline < 0) {
+                continue; // Interrupted, the loop condition decides if we are done.
+            }
+
+            removeCancelledTimeouts();
+            transferPendingTimeoutsToBuckets();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     * @return the time of the tick (relative to the start of the wheel), or -1 if interrupted.
+     */
+    private long waitForNextTick() {
+
+        long deadline = tickNanos * (tick + 1);
+        long sleepNanos = deadline - nanoTime();
+
+        if (sleepNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
+
+        return deadline;
+    }
+
+    private void transferPendingTimeoutsToBuckets() {
+
+        WheelTimeout timeout = pendingTimeouts.poll();
+
+        while (timeout != null) {
+
+            if (timeout.isCancelled()) {
+                timeout = pendingTimeouts.poll();
+                continue; // Cancelled before it even reached the wheel.
+            }
+
+            long calculatedTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+
+            // If it is already late, it goes into the current bucket.
+            long targetTick = Math.max(calculatedTick, tick);
+            wheel[(int) (targetTick & mask)].add(timeout);
+
+            timeout = pendingTimeouts.poll();
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+
+        WheelTimeout timeout = cancelledTimeouts.poll();
+
+        while (timeout != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            timeout = cancelledTimeouts.poll();
+        }
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        int powerOfTwo = 1;
+        while (powerOfTwo < value) {
+            powerOfTwo <<= 1;
+        }
+        return powerOfTwo;
+    }
+
+    /**
+     * One slot of the wheel. It is a doubly linked list only accessed by the ticker thread.
+     */
+    private final class Bucket {
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Runs every timeout of this bucket whose rounds are over; the rest wait for another lap.
+         */
+        void expireTimeouts(long deadline) {
+
+            WheelTimeout timeout = head;
+
+            while (timeout != null) {
+
+                WheelTimeout next = timeout.next;
+
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+    }
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final class WheelTimeout implements Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private final long timeoutGeneration;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // These belong to the ticker thread.
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline, long timeoutGeneration) {
+            this.task = task;
+            this.deadline = deadline;
+            this.timeoutGeneration = timeoutGeneration;
+        }
+
+        @Override
+        public boolean cancel() {
+
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED || timeoutGeneration != generation.get();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+
+            if (!running || timeoutGeneration != generation.get() || !state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // A failing task must not take the worker down with it.
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.foodfactory.scheduling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay, measured in the time of its own Clock.
+ * Every timing of the factory (production rates, cooking times) goes through here; so we can
+ * swap the wall clock for a virtual one without touching the Kitchen, the Cooker or the lines.
+ */
+public interface TaskScheduler extends Clock {
+
+    /**
+     * Schedules a task to be run once, after the given delay.
+     * @return a handle to cancel the task.
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Cancels every task scheduled so far, in one shot.
+     */
+    void cancelAll();
+
+    /**
+     * Stops the scheduler; the pending tasks are never run.
+     */
+    void stop();
+}
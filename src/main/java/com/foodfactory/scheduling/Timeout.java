@@ -0,0 +1,18 @@
+package com.foodfactory.scheduling;
+
+/**
+ * A handle over a task that has been scheduled to run later on.
+ * It allows us to cancel the task before it fires without looking for it.
+ */
+public interface Timeout {
+
+    /**
+     * Cancels the scheduled task. It does nothing if the task already ran.
+     * @return true if the task was cancelled by this call.
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    boolean isExpired();
+}
@@ -0,0 +1,329 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sizes the kitchen for a given traffic, instead of guessing the OvensSize and StoresSize of the config: it runs the
+ * same scenario on every kitchen of a grid (so many ovens of such size, so many stores of such size), and reports the
+ * throughput, the p99 latency and the halt percentage of each one; and the cheapest one that meets the target.
+ *
+ * Every kitchen is a FactorySimulation of its own, on its own virtual clock, with nothing shared with the rest; so
+ * they all run at once, on a fork-join pool with a thread per core. The grid is split in halves until there is one
+ * kitchen left to simulate; the idle threads steal the halves of the busy ones (the big kitchens take longer).
+ *
+ *   java -cp FoodFactory-1.0.jar com.foodfactory.simulation.CapacityPlanner --lines 8 --arrivals poisson:0.5 \
+ *        --ovens 1,2,4 --oven-sizes 100,200,400 --store-sizes 100,200 --min-throughput 3.5 --max-p99 30s
+ *
+ * Options (the traffic ones default to the config, as in ScenarioRunner):
+ *   --lines N            assembly lines (2).
+ *   --duration D         how long each kitchen runs, e.g. 90s, 10m, 2h (10m).
+ *   --arrivals, --sizes, --cook-times, --seed, --pool    the traffic; see ScenarioRunner.
+ *   --ovens N,N...       how many ovens (1,2,3,4).
+ *   --oven-sizes S,S...  of what size, in cm2 (50,100,200,400).
+ *   --stores N,N...      how many stores (1).
+ *   --store-sizes S,S... of what size, in cm2 (50,100,200,400).
+ *   --min-throughput X   the target: at least these products per second (none).
+ *   --max-p99 D          the target: the p99 latency at most this (none).
+ *   --max-halt P         the target: the lines halted at most this percentage of the time (5).
+ *   --parallelism N      threads of the pool (one per core).
+ */
+public class CapacityPlanner {
+
+    private static final String DEFAULT_LINES = "2";
+    private static final String DEFAULT_DURATION = "10m";
+    private static final String DEFAULT_OVENS = "1,2,3,4";
+    private static final String DEFAULT_OVEN_SIZES = "50,100,200,400";
+    private static final String DEFAULT_STORES = "1";
+    private static final String DEFAULT_STORE_SIZES = "50,100,200,400";
+    private static final String DEFAULT_MAX_HALT = "5";
+    private static final String LIST_SEPARATOR = ",";
+    private static final double PERCENTILE = 99;
+
+    private final int lines;
+    private final Duration duration;
+    private final LoadProfile loadProfile;
+    private final int poolSize;
+    private final int parallelism;
+
+    /**
+     * @param lines assembly lines of every kitchen.
+     * @param duration of factory time every kitchen runs.
+     * @param loadProfile the traffic of the lines.
+     * @param poolSize consumed products each line keeps to make new ones (0, none).
+     * @param parallelism threads of the pool.
+     */
+    public CapacityPlanner(int lines, Duration duration, LoadProfile loadProfile, int poolSize, int parallelism) {
+        this.lines = lines;
+        this.duration = duration;
+        this.loadProfile = loadProfile;
+        this.poolSize = poolSize;
+        this.parallelism = parallelism;
+        KitchenBuilder.getInstance(); // Loaded here, once: the simulations only read it, from many threads.
+    }
+
+    public static void main(String[] args) {
+
+        Map<String, String> options = ScenarioRunner.parseOptions(args);
+        KitchenBuilder kitchenBuilder = KitchenBuilder.getInstance();
+
+        int lines = Integer.parseInt(options.getOrDefault("lines", DEFAULT_LINES));
+        Duration duration = ScenarioRunner.parseDuration(options.getOrDefault("duration", DEFAULT_DURATION));
+        LoadProfile loadProfile = kitchenBuilder.getLoadProfile(options.get("arrivals"), options.get("sizes"), options.get("cook-times"), options.get("seed"));
+        int poolSize = options.containsKey("pool") ? Integer.parseInt(options.get("pool")) : kitchenBuilder.getProductPoolSize();
+        int parallelism = options.containsKey("parallelism") ? Integer.parseInt(options.get("parallelism")) : Runtime.getRuntime().availableProcessors();
+
+        List<Configuration> grid = grid(parseInts(options.getOrDefault("ovens", DEFAULT_OVENS)),
+                parseDoubles(options.getOrDefault("oven-sizes", DEFAULT_OVEN_SIZES)),
+                parseInts(options.getOrDefault("stores", DEFAULT_STORES)),
+                parseDoubles(options.getOrDefault("store-sizes", DEFAULT_STORE_SIZES)));
+
+        Target target = new Target(
+                options.containsKey("min-throughput") ? Double.parseDouble(options.get("min-throughput")) : 0,
+                options.containsKey("max-p99") ? ScenarioRunner.parseDuration(options.get("max-p99")) : null,
+                Double.parseDouble(options.getOrDefault("max-halt", DEFAULT_MAX_HALT)) / 100);
+
+        EventLog.getInstance().setLevel(LogLevel.OFF); // A few hundred kitchens printing every product is only noise.
+
+        CapacityPlanner planner = new CapacityPlanner(lines, duration, loadProfile, poolSize, parallelism);
+
+        System.out.println("Sweeping " + grid.size() + " kitchens of " + lines + " lines for " + duration.getSeconds()
+                + "s on " + parallelism + " threads - " + loadProfile);
+
+        long wallStart = System.nanoTime();
+        List<Result> results = planner.sweep(grid);
+        Duration wallTime = Duration.ofNanos(System.nanoTime() - wallStart);
+
+        System.out.println(String.format("%-36s %10s %12s %10s %8s", "KITCHEN", "COST(cm2)", "PRODUCTS/S", "P99(ms)", "HALTED"));
+        results.forEach(System.out::println);
+        System.out.println("Swept in " + wallTime.toMillis() + "ms of wall time.");
+
+        Result cheapest = cheapest(results, target);
+        System.out.println(cheapest == null
+                ? "No kitchen of the grid meets the target (" + target + ")."
+                : "The cheapest kitchen that meets the target (" + target + "): " + cheapest.getConfiguration());
+    }
+
+    /**
+     * Runs the scenario on every kitchen, at once.
+     * @param configurations
+     * @return a result for each one, in the same order.
+     */
+    public List<Result> sweep(List<Configuration> configurations) {
+
+        if (configurations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            return pool.invoke(new Sweep(this, configurations));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the scenario on the given kitchen; on the calling thread.
+     * @param configuration
+     * @return
+     */
+    public Result simulate(Configuration configuration) {
+
+        FactorySimulation simulation = new FactorySimulation(configuration.getOvenSizes(), configuration.getStoreSizes());
+        simulation.setProductPoolSize(poolSize);
+
+        return new Result(configuration, ScenarioRunner.runSimulated(simulation, lines, duration, loadProfile));
+    }
+
+    /**
+     * @param results
+     * @param target
+     * @return the one of least cost that meets the target (the most throughput, of two of the same cost); null if none.
+     */
+    public static Result cheapest(List<Result> results, Target target) {
+        return results.stream()
+                .filter(result -> target.isMetBy(result.getReport()))
+                .min(Comparator.comparingDouble((Result result) -> result.getConfiguration().getCost())
+                        .thenComparing(result -> -result.getReport().getThroughput()))
+                .orElse(null);
+    }
+
+    /**
+     * Every combination of the given values, the ovens first.
+     */
+    public static List<Configuration> grid(int[] ovens, double[] ovenSizes, int[] stores, double[] storeSizes) {
+
+        List<Configuration> grid = new ArrayList<>();
+
+        for (int ovenCount : ovens) {
+            for (double ovenSize : ovenSizes) {
+                for (int storeCount : stores) {
+                    for (double storeSize : storeSizes) {
+                        grid.add(new Configuration(ovenCount, ovenSize, storeCount, storeSize));
+                    }
+                }
+            }
+        }
+
+        return grid;
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(LIST_SEPARATOR)).mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+    }
+
+    private static double[] parseDoubles(String list) {
+        return Arrays.stream(list.split(LIST_SEPARATOR)).mapToDouble(value -> Double.parseDouble(value.trim())).toArray();
+    }
+
+    /**
+     * Half of the grid for this thread, the other half for whoever steals it; down to a single kitchen.
+     * It only reads the planner, so every half shares it.
+     */
+    private static final class Sweep extends RecursiveTask<List<Result>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CapacityPlanner planner;
+        private final transient List<Configuration> configurations;
+
+        Sweep(CapacityPlanner planner, List<Configuration> configurations) {
+            this.planner = planner;
+            this.configurations = configurations;
+        }
+
+        @Override
+        protected List<Result> compute() {
+
+            if (configurations.size() == 1) {
+                return Collections.singletonList(planner.simulate(configurations.get(0)));
+            }
+
+            int half = configurations.size() / 2;
+            Sweep second = new Sweep(planner, configurations.subList(half, configurations.size()));
+            second.fork();
+
+            List<Result> results = new ArrayList<>(new Sweep(planner, configurations.subList(0, half)).compute());
+            results.addAll(second.join());
+
+            return results;
+        }
+    }
+
+    /**
+     * A kitchen to try out: so many ovens of a size, and so many stores of a size.
+     */
+    public static class Configuration {
+
+        private final int ovens;
+        private final double ovenSize;
+        private final int stores;
+        private final double storeSize;
+
+        public Configuration(int ovens, double ovenSize, int stores, double storeSize) {
+            this.ovens = ovens;
+            this.ovenSize = ovenSize;
+            this.stores = stores;
+            this.storeSize = storeSize;
+        }
+
+        public double[] getOvenSizes() {
+            double[] sizes = new double[ovens];
+            Arrays.fill(sizes, ovenSize);
+            return sizes;
+        }
+
+        public double[] getStoreSizes() {
+            double[] sizes = new double[stores];
+            Arrays.fill(sizes, storeSize);
+            return sizes;
+        }
+
+        /**
+         * @return what it takes of the kitchen: the cm2 of all its ovens and stores.
+         */
+        public double getCost() {
+            return ovens * ovenSize + stores * storeSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d x %.0fcm2 ovens, %d x %.0fcm2 stores", ovens, ovenSize, stores, storeSize);
+        }
+    }
+
+    /**
+     * What a kitchen must do to be good enough. The throughput is products per second of all the lines.
+     */
+    public static class Target {
+
+        private final double minThroughput;
+        private final Duration maxP99; // null: any latency will do.
+        private final double maxHaltFraction;
+
+        /**
+         * @param minThroughput products per second (0, any).
+         * @param maxP99 null, any.
+         * @param maxHaltFraction from 0 to 1.
+         */
+        public Target(double minThroughput, Duration maxP99, double maxHaltFraction) {
+            this.minThroughput = minThroughput;
+            this.maxP99 = maxP99;
+            this.maxHaltFraction = maxHaltFraction;
+        }
+
+        public boolean isMetBy(ScenarioReport report) {
+            return report.getThroughput() >= minThroughput
+                    && (maxP99 == null || report.getLatencyPercentile(PERCENTILE).compareTo(maxP99) <= 0)
+                    && report.getHaltFraction() <= maxHaltFraction;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("at least %.2f products/s, p99 %s, halted at most %.1f%%", minThroughput,
+                    maxP99 == null ? "any" : "at most " + maxP99.toMillis() + "ms", maxHaltFraction * 100);
+        }
+    }
+
+    /**
+     * How the scenario went on a kitchen.
+     */
+    public static class Result {
+
+        private final Configuration configuration;
+        private final ScenarioReport report;
+
+        public Result(Configuration configuration, ScenarioReport report) {
+            this.configuration = configuration;
+            this.report = report;
+        }
+
+        public Configuration getConfiguration() {
+            return configuration;
+        }
+
+        public ScenarioReport getReport() {
+            return report;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-36s %10.0f %12.2f %10d %7.1f%%", configuration, configuration.getCost(),
+                    report.getThroughput(), report.getLatencyPercentile(PERCENTILE).toMillis(), report.getHaltFraction() * 100);
+        }
+    }
+}
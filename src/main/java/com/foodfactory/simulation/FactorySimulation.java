@@ -0,0 +1,182 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.AssemblyLineRegistry;
+import com.foodfactory.model.ProductPool;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The same Kitchen, Cooker and AssemblyLines of a live run, but on a virtual clock.
+ * Time does not pass by itself: runFor() jumps from one event (a product produced, a product cooked)
+ * to the next one and lets the Kitchen dispatch after each of them. Hours of factory time take seconds.
+ *
+ * It is the counterpart of the AssemblyLineServer for simulations; nothing runs in other threads.
+ */
+public class FactorySimulation {
+
+    private final DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+    private final Kitchen kitchen;
+    private final LoadProfile loadProfile;
+    private int productPoolSize;
+
+    public FactorySimulation() {
+        this.kitchen = KitchenBuilder.getInstance().buildKitchenStructure(scheduler);
+        this.loadProfile = KitchenBuilder.getInstance().getLoadProfile();
+        this.productPoolSize = KitchenBuilder.getInstance().getProductPoolSize();
+    }
+
+    /**
+     * The kitchen of the config, with other ovens and stores (and no journal, nor autoscaler): see
+     * KitchenBuilder.buildKitchenStructure(). Nothing is shared with other simulations, so many can run at once.
+     * @param ovenSizes
+     * @param storeSizes
+     */
+    public FactorySimulation(double[] ovenSizes, double[] storeSizes) {
+        this.kitchen = KitchenBuilder.getInstance().buildKitchenStructure(scheduler, ovenSizes, storeSizes);
+        this.loadProfile = KitchenBuilder.getInstance().getLoadProfile();
+        this.productPoolSize = KitchenBuilder.getInstance().getProductPoolSize();
+    }
+
+    /**
+     * Adds a new assembly line, with the traffic of the config; it starts producing at the current virtual time.
+     * @return
+     */
+    public AssemblyLine addAssemblyLine() {
+        return addAssemblyLine(loadProfile);
+    }
+
+    /**
+     * Adds a new assembly line with the given traffic; it starts producing at the current virtual time.
+     * @param loadProfile
+     * @return
+     */
+    public AssemblyLine addAssemblyLine(LoadProfile loadProfile) {
+        AssemblyLine newAssemblyLine = plugInAssemblyLine(loadProfile);
+        newAssemblyLine.start();
+
+        return newAssemblyLine;
+    }
+
+    /**
+     * Takes the line out: it stops producing at once, and leaves the kitchen once all its products are back on it
+     * (see Kitchen.retire()); with the virtual clock, that happens as runFor() goes on.
+     * @param assemblyLine
+     * @return completes with the line when it is gone.
+     */
+    public CompletableFuture<AssemblyLine> retireAssemblyLine(AssemblyLine assemblyLine) {
+        return kitchen.retire(assemblyLine);
+    }
+
+    /**
+     * Brings back the lines of the former run, from the kitchen's journal: each one with the products it had
+     * (see Kitchen.restore()), and the traffic of the config. They go on producing from the current virtual time.
+     * @return the restored lines; none if the kitchen has no journal, or the journal had nothing.
+     */
+    public List<AssemblyLine> restoreAssemblyLines() {
+        return restoreAssemblyLines(loadProfile);
+    }
+
+    /**
+     * The same as restoreAssemblyLines(), with the given traffic.
+     * @param loadProfile
+     * @return
+     */
+    public List<AssemblyLine> restoreAssemblyLines(LoadProfile loadProfile) {
+
+        ProductJournal journal = kitchen.getJournal();
+
+        if (journal == null || journal.getRecoveredState().getAssemblyLineIds().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<AssemblyLine> restored = new ArrayList<>();
+
+        for (int id : journal.getRecoveredState().getAssemblyLineIds()) { // By id; the retired ones are not there anymore.
+            getAssemblyLines().skipTo(id);
+            AssemblyLine assemblyLine = plugInAssemblyLine(loadProfile);
+            kitchen.restore(assemblyLine);
+            restored.add(assemblyLine);
+        }
+
+        restored.forEach(AssemblyLine::start);
+
+        return restored;
+    }
+
+    private AssemblyLine plugInAssemblyLine(LoadProfile loadProfile) {
+        return kitchen.plugIn(id -> {
+            AssemblyLine newAssemblyLine = new AssemblyLine(id, scheduler, loadProfile);
+            if (productPoolSize > 0) {
+                newAssemblyLine.setProductPool(new ProductPool(productPoolSize));
+            }
+            return newAssemblyLine;
+        });
+    }
+
+    /**
+     * How many consumed products each line added from now on keeps, to make new ones (0: none); the config's by default.
+     * @param productPoolSize
+     */
+    public void setProductPoolSize(int productPoolSize) {
+        this.productPoolSize = productPoolSize;
+    }
+
+    /**
+     * Advances the factory the given amount of virtual time.
+     * @param duration
+     */
+    public void runFor(Duration duration) {
+        scheduler.runFor(duration, kitchen::dispatchUntilIdle);
+    }
+
+    /**
+     * Stops the lines and the kitchen; the pending events are dropped. The journal, if any, is closed with what was
+     * left in the kitchen: the next run recovers it.
+     */
+    public void stop() {
+        getAssemblyLines().forEach(AssemblyLine::stop);
+        kitchen.stop();
+        scheduler.stop();
+        if (kitchen.getJournal() != null) {
+            kitchen.getJournal().close();
+        }
+    }
+
+    /**
+     * Stops everything as a crash would: the journal, if any, is left as it was.
+     */
+    public void kill() {
+        getAssemblyLines().forEach(AssemblyLine::kill);
+        kitchen.kill();
+    }
+
+    /**
+     * Virtual time elapsed since the simulation started.
+     * @return
+     */
+    public Duration getElapsedTime() {
+        return Duration.ofNanos(scheduler.nanoTime());
+    }
+
+    public long getProcessedEvents() {
+        return scheduler.getProcessedEvents();
+    }
+
+    public Kitchen getKitchen() {
+        return kitchen;
+    }
+
+    public AssemblyLineRegistry getAssemblyLines() {
+        return kitchen.getAssemblyLines();
+    }
+}
@@ -0,0 +1,96 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.metrics.LatencyHistogram;
+import com.foodfactory.model.AssemblyLine;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * How a scenario went: how much the factory got through, how long the products took, and how long the lines were
+ * parked for the lack of room (the halt percentage).
+ */
+public class ScenarioReport {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final LoadProfile loadProfile;
+    private final int assemblyLines;
+    private final Duration runTime;
+    private final Duration wallTime;
+    private final long produced;
+    private final long completed;
+    private final LatencyHistogram latency;
+    private final double haltFraction;
+
+    /**
+     * Reads the figures of the lines, at the end of the run.
+     * @param assemblyLines
+     * @param loadProfile
+     * @param runTime the time of the factory (virtual or wall) the scenario ran.
+     * @param wallTime what it took in real time.
+     */
+    public ScenarioReport(Collection<AssemblyLine> assemblyLines, LoadProfile loadProfile, Duration runTime, Duration wallTime) {
+
+        this.loadProfile = loadProfile;
+        this.assemblyLines = assemblyLines.size();
+        this.runTime = runTime;
+        this.wallTime = wallTime;
+        this.produced = assemblyLines.stream().mapToLong(line -> line.getMetrics().getArrivals()).sum();
+        this.completed = assemblyLines.stream().mapToLong(line -> line.getMetrics().getCompletions()).sum();
+        this.latency = LatencyHistogram.merge(assemblyLines.stream().map(line -> line.getMetrics().getLatency()).collect(Collectors.toList()));
+
+        long parkedNanos = assemblyLines.stream().mapToLong(AssemblyLine::getParkedNanos).sum();
+        long lineNanos = assemblyLines.stream().mapToLong(line -> line.getMetrics().getElapsedNanos()).sum();
+        this.haltFraction = lineNanos == 0 ? 0 : (double) parkedNanos / lineNanos;
+    }
+
+    public long getProduced() {
+        return produced;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return products cooked per second of the factory's time.
+     */
+    public double getThroughput() {
+        return runTime.isZero() ? 0 : completed / (runTime.toNanos() / NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return the end-to-end latency (creation to putAfter) under which that percentage of the products fall.
+     */
+    public Duration getLatencyPercentile(double percentile) {
+        return Duration.ofNanos(latency.getPercentile(percentile));
+    }
+
+    /**
+     * @return the fraction (from 0 to 1) of the lines' time they spent parked for the lack of credits.
+     */
+    public double getHaltFraction() {
+        return haltFraction;
+    }
+
+    public Duration getWallTime() {
+        return wallTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SCENARIO %d lines for %ds (%dms of wall time) - %s%n"
+                        + "produced: %d completed: %d throughput: %.2f products/s%n"
+                        + "latency p50: %.0fms p90: %.0fms p99: %.0fms max: %.0fms%n"
+                        + "halted: %.1f%% of the time",
+                assemblyLines, runTime.getSeconds(), wallTime.toMillis(), loadProfile,
+                produced, completed, getThroughput(),
+                latency.getPercentile(50) / NANOS_PER_MILLI, latency.getPercentile(90) / NANOS_PER_MILLI,
+                latency.getPercentile(99) / NANOS_PER_MILLI, latency.getMax() / NANOS_PER_MILLI,
+                haltFraction * 100);
+    }
+}
@@ -0,0 +1,192 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.exceptions.KitchenRequiredException;
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.view.AssemblyLineServer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a scenario from the command line, with no JUnit around it: so many lines, with such traffic, for so long;
+ * then it prints a ScenarioReport. The kitchen comes from config.properties, as always. Somebody downstream takes
+ * the finished products of every line once a second (of factory time), as a real consumer would.
+ *
+ *   java -jar FoodFactory-1.0.jar --lines 8 --duration 2h --arrivals poisson:0.5 --sizes normal:20:5 --seed 7
+ *
+ * Options (the traffic ones default to the config):
+ *   --lines N            assembly lines (2).
+ *   --duration D         how long, e.g. 90s, 10m, 2h (1h).
+ *   --arrivals SPEC      fixed:RATE, poisson:RATE, uniform:MIN:MAX or onoff:RATE:ON:OFF.
+ *   --sizes SPEC         constant:V, uniform:MIN:MAX, normal:MEAN:STDDEV or exponential:MEAN (cm2).
+ *   --cook-times SPEC    the same, in seconds.
+ *   --seed N
+ *   --pool N             consumed products each line keeps to make new ones (the config's ProductPoolSize; 0, none).
+ *   --live               on the wall clock, with the AssemblyLineServer; the virtual clock otherwise (hours in seconds).
+ *   --log LEVEL          the event log (OFF); DEBUG prints every product.
+ */
+public class ScenarioRunner {
+
+    private static final String DEFAULT_LINES = "2";
+    private static final String DEFAULT_DURATION = "1h";
+    private static final String DEFAULT_LOG_LEVEL = "OFF";
+    private static final Duration CONSUMER_INTERVAL = Duration.ofSeconds(1);
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Map<String, String> options = parseOptions(args);
+        KitchenBuilder kitchenBuilder = KitchenBuilder.getInstance();
+
+        int lines = Integer.parseInt(options.getOrDefault("lines", DEFAULT_LINES));
+        Duration duration = parseDuration(options.getOrDefault("duration", DEFAULT_DURATION));
+        LoadProfile loadProfile = kitchenBuilder.getLoadProfile(options.get("arrivals"), options.get("sizes"), options.get("cook-times"), options.get("seed"));
+        LogLevel logLevel = LogLevel.valueOf(options.getOrDefault("log", DEFAULT_LOG_LEVEL).toUpperCase());
+        int poolSize = options.containsKey("pool") ? Integer.parseInt(options.get("pool")) : kitchenBuilder.getProductPoolSize();
+
+        ScenarioReport report = options.containsKey("live")
+                ? runLive(lines, duration, loadProfile, logLevel, poolSize)
+                : runSimulated(lines, duration, loadProfile, logLevel, poolSize);
+
+        EventLog.getInstance().flush(1, TimeUnit.SECONDS);
+        System.out.println(report);
+    }
+
+    /**
+     * On the virtual clock: every line starts at time zero, and the run takes as long as the computer needs.
+     */
+    public static ScenarioReport runSimulated(int lines, Duration duration, LoadProfile loadProfile, LogLevel logLevel, int poolSize) {
+
+        FactorySimulation simulation = new FactorySimulation();
+        simulation.setProductPoolSize(poolSize);
+        EventLog.getInstance().setLevel(logLevel); // After the builder, that sets the level of the config.
+
+        return runSimulated(simulation, lines, duration, loadProfile);
+    }
+
+    /**
+     * Runs the scenario on the given simulation, and stops it at the end; e.g. one of the many of a CapacityPlanner.
+     */
+    static ScenarioReport runSimulated(FactorySimulation simulation, int lines, Duration duration, LoadProfile loadProfile) {
+
+        long wallStart = System.nanoTime();
+
+        simulation.restoreAssemblyLines(loadProfile); // With a JournalDirectory in the config, a run goes on from where the last one was left.
+        for (int i = simulation.getAssemblyLines().size(); i < lines; i++) {
+            simulation.addAssemblyLine(loadProfile);
+        }
+
+        for (Duration left = duration; !left.isZero(); left = left.minus(min(left, CONSUMER_INTERVAL))) {
+            simulation.runFor(min(left, CONSUMER_INTERVAL));
+            consumeFinishedProducts(simulation.getAssemblyLines());
+        }
+
+        ScenarioReport report = new ScenarioReport(simulation.getAssemblyLines(), loadProfile, duration, Duration.ofNanos(System.nanoTime() - wallStart));
+        simulation.stop();
+
+        return report;
+    }
+
+    /**
+     * On the wall clock, as Main runs it. The factory is cut off at the end: what is still in the kitchen is not drained.
+     */
+    public static ScenarioReport runLive(int lines, Duration duration, LoadProfile loadProfile, LogLevel logLevel, int poolSize) throws InterruptedException {
+
+        Kitchen kitchen = KitchenBuilder.getInstance().buildKitchenStructure();
+        EventLog.getInstance().setLevel(logLevel);
+
+        AssemblyLineServer server;
+        try {
+            server = new AssemblyLineServer(kitchen);
+        } catch (KitchenRequiredException e) {
+            throw new IllegalStateException(e); // We just built it.
+        }
+        server.setLoadProfile(loadProfile);
+        server.setProductPoolSize(poolSize);
+
+        long wallStart = System.nanoTime();
+
+        for (int i = server.getAssemblyLines().size(); i < lines; i++) {
+            server.addAssemblyLine();
+        }
+
+        long deadline = wallStart + duration.toNanos();
+        for (long left = duration.toNanos(); left > 0; left = deadline - System.nanoTime()) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(left, CONSUMER_INTERVAL.toNanos()));
+            consumeFinishedProducts(server.getAssemblyLines());
+        }
+
+        ScenarioReport report = new ScenarioReport(server.getAssemblyLines(), loadProfile, duration, Duration.ofNanos(System.nanoTime() - wallStart));
+
+        server.getAssemblyLines().forEach(AssemblyLine::stop);
+        kitchen.stop();
+        server.kill();
+
+        return report;
+    }
+
+    /**
+     * The downstream consumer: it takes every finished product (which goes back to its line's pool, if there is one).
+     */
+    private static void consumeFinishedProducts(Collection<AssemblyLine> assemblyLines) {
+        assemblyLines.forEach(line -> line.consumeFinishedProducts(product -> { }));
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * "--name value" pairs; a flag (like --live) takes no value.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+
+        Map<String, String> options = new HashMap<>();
+
+        for (int i = 0; args != null && i < args.length; i++) {
+
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+
+            options.put(name, hasValue ? args[++i] : "true");
+        }
+
+        return options;
+    }
+
+    /**
+     * @param text a number and its unit: ms, s, m or h (e.g. 90s, 10m, 2h).
+     */
+    static Duration parseDuration(String text) {
+
+        String value = text.trim().toLowerCase();
+
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+
+        switch (value.charAt(value.length() - 1)) {
+            case 's':
+                return Duration.ofSeconds(amount);
+            case 'm':
+                return Duration.ofMinutes(amount);
+            case 'h':
+                return Duration.ofHours(amount);
+            default:
+                throw new IllegalArgumentException("Wrong duration: " + text + " (e.g. 90s, 10m, 2h)");
+        }
+    }
+}
@@ -1,18 +1,32 @@
 package com.foodfactory.view;
 
 import com.foodfactory.exceptions.KitchenRequiredException;
+import com.foodfactory.ingress.IngressServer;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.journal.ProductJournal;
+import com.foodfactory.load.LoadProfile;
 import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.AssemblyLineRegistry;
+import com.foodfactory.model.ProductPool;
+import com.foodfactory.controllers.FairShareScheduler;
 import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.controllers.OvenCycles;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 /**
  * Receives all the requests from an external source.
- * For this implementation, we will use a unit test.
- * For future use, we will go for the implementation of
- * a REST api (Throught Spring MVC) or hearing in a socket directly.
+ * For this implementation, we will use a unit test; or real lines, over a socket (see listen() and IngressServer).
  *
  * Its major aim is to build the kitchen, start it up.
  * And hear for new assembly lines to appear, dynamically over an external source.
@@ -20,10 +34,20 @@ import java.util.concurrent.CopyOnWriteArrayList;
  */
 public class AssemblyLineServer {
 
-    private final List<AssemblyLine> assemblyLines; //This is not how the request will be implemented in a real app!
+    private static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(30);
+    private static final long DRAIN_CHECK_INTERVAL_MILLIS = 10;
+
+    private final AssemblyLineRegistry assemblyLines; // The Kitchen's own: lines come and go from any thread.
     private LocalDateTime startDateTime;
     private final Kitchen kitchen;
     private volatile boolean endProgram = false;
+    private final CountDownLatch endProgramRequested = new CountDownLatch(1);
+    private final CountDownLatch shutdownCompleted = new CountDownLatch(1);
+    private volatile Duration drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+    private volatile ShutdownReport shutdownReport = null;
+    private volatile LoadProfile loadProfile = LoadProfile.defaultProfile();
+    private volatile int productPoolSize = 0;
+    private volatile IngressServer ingressServer = null;
 
     /**
      * Defines the major controllers to operate the simulation.
@@ -36,37 +60,212 @@ public class AssemblyLineServer {
         }
 
         this.kitchen = kitchen;
-        this.assemblyLines = new CopyOnWriteArrayList<>();
-        kitchen.setAssemblyLines(assemblyLines); // We do this to give the Kitchen visibility over what happens on the AssemblyLines, at this time it will be EMPTY.
+        this.assemblyLines = kitchen.getAssemblyLines(); // At this time it will be EMPTY.
 
+        kitchen.getMetrics().registerMBeans(); // So the factory can be watched from JConsole, or any JMX client.
+        restoreAssemblyLines(); // The ones a former run left in the journal, if any.
         kitchen.start();
+        this.startDateTime = LocalDateTime.now();
 
     }
 
     public void addAssemblyLine() {
-        AssemblyLine newAssemblyLine = new AssemblyLine(this.assemblyLines.size());
-        newAssemblyLine.start();
+        plugInAssemblyLine().start();
+    }
+
+    /**
+     * Takes the line out of the factory: it stops producing at once, and leaves the kitchen once all its products
+     * are back on it (see Kitchen.retire()). Its finished products are still there for whoever holds it.
+     * @param assemblyLine
+     * @return completes with the line when it is gone.
+     */
+    public CompletableFuture<AssemblyLine> retireAssemblyLine(AssemblyLine assemblyLine) {
+        return kitchen.retire(assemblyLine);
+    }
+
+    /**
+     * Starts hearing for remote assembly lines on the given address (see IngressProtocol); they come and go with
+     * their connections. The shutdown closes them first.
+     * @param address port 0 takes any free one.
+     * @return the server; it tells the port.
+     * @throws IOException
+     */
+    public IngressServer listen(InetSocketAddress address) throws IOException {
+        ingressServer = new IngressServer(this, address);
+        ingressServer.start();
+
+        return ingressServer;
+    }
+
+    /**
+     * Adds a line that is fed from outside (see IngressServer): it is not started, its products are submitted.
+     * @param creditsGrantedListener gets the credits granted to the line; it is set before the Kitchen sees the line.
+     * @param finishedProductsListener called when some of its products might be finished.
+     * @return
+     */
+    public AssemblyLine addRemoteAssemblyLine(IntConsumer creditsGrantedListener, Runnable finishedProductsListener) {
+
+        return kitchen.plugIn(id -> {
+            AssemblyLine newAssemblyLine = newAssemblyLine(id);
+            newAssemblyLine.setCreditsGrantedListener(creditsGrantedListener);
+            newAssemblyLine.setFinishedProductsListener(finishedProductsListener);
+            return newAssemblyLine;
+        });
+    }
+
+    private AssemblyLine plugInAssemblyLine() {
+        return kitchen.plugIn(this::newAssemblyLine); // Every id once, whoever adds lines.
+    }
+
+    private AssemblyLine newAssemblyLine(int id) {
+        AssemblyLine newAssemblyLine = new AssemblyLine(id, kitchen.getScheduler(), loadProfile);
+        if (productPoolSize > 0) {
+            newAssemblyLine.setProductPool(new ProductPool(productPoolSize));
+        }
 
-        this.assemblyLines.add(newAssemblyLine);
+        return newAssemblyLine;
     }
 
     /**
-     * Loops for requests over the creation of new assembly lines
-     * (Threads), and starts all the simulation.
+     * Brings back the lines the kitchen's journal recovered, with their ids and products (see Kitchen.restore());
+     * they start producing again right away. The retired ones are not in the journal anymore.
+     */
+    private void restoreAssemblyLines() {
+
+        ProductJournal journal = kitchen.getJournal();
+
+        if (journal == null || journal.getRecoveredState().getAssemblyLineIds().isEmpty()) {
+            return;
+        }
+
+        List<AssemblyLine> restored = new ArrayList<>();
+
+        for (int id : journal.getRecoveredState().getAssemblyLineIds()) { // By id.
+            assemblyLines.skipTo(id);
+            AssemblyLine assemblyLine = plugInAssemblyLine();
+            kitchen.restore(assemblyLine);
+            restored.add(assemblyLine);
+        }
+
+        restored.forEach(AssemblyLine::start);
+    }
+
+    /**
+     * Hears for requests over the creation of new assembly lines until the end of the program
+     * is requested, then shuts everything down without losing track of any product.
+     * The calling thread sleeps all along; it does not spin.
      */
     public void waitForNewAssemblyLines() {
-        this.startDateTime = LocalDateTime.now();
 
         // Hearing the creation of the new product assembly lines
-        while (!endProgram) {
-            Thread.onSpinWait();
+        try {
+            endProgramRequested.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // We shut down anyway; nobody else will do it.
+        }
+
+        shutdownReport = shutdown();
+        EventLog.getInstance().flush(1, TimeUnit.SECONDS); // The report goes after the events of the shutdown.
+        System.out.println(shutdownReport);
+        shutdownCompleted.countDown();
+    }
+
+    /**
+     * Shuts the factory down in phases, all of them bounded by the drain timeout:
+     * 1. stops the production of every line.
+     * 2. lets the kitchen drain what is waiting on the lines and in the stores.
+     * 3. waits for the products in the ovens to be cooked.
+     * 4. stops the kitchen and flushes the finished products of every line.
+     * waitForNewAssemblyLines() calls it once the end is requested; whoever hosts the server with no thread waiting
+     * there (see KitchenHost) calls it right away, and the calling thread does the draining.
+     * @return an exact account of what could not be drained.
+     */
+    public ShutdownReport shutdown() {
+
+        long startTime = System.nanoTime();
+        long deadline = startTime + drainTimeout.toNanos();
+
+        // No more remote lines, nor products from them.
+        if (ingressServer != null) {
+            ingressServer.stop();
         }
 
         // Stop all the Assembly lines, one by one!
         this.getAssemblyLines().forEach(AssemblyLine::stop);
 
+        boolean drained = awaitUntil(() -> countWaitingProducts() == 0 && kitchen.countStoredProducts() == 0, deadline)
+                && awaitUntil(() -> kitchen.countProductsInOvens() == 0, deadline);
+
         //Stops the kitchen
         this.getKitchen().stop();
+
+        // Whatever somebody else did not take yet, we flush it now.
+        assemblyLines.forEach(AssemblyLine::printAllFinishedProductsInOrder);
+
+        // The journal keeps what could not be drained, for the next run.
+        if (kitchen.getJournal() != null) {
+            kitchen.getJournal().close();
+        }
+
+        long delivered = assemblyLines.stream().mapToLong(AssemblyLine::getDeliveredCount).sum();
+        long produced = assemblyLines.stream().mapToLong(AssemblyLine::getProducedCount).sum();
+
+        return new ShutdownReport(produced, delivered, countWaitingProducts(), kitchen.countStoredProducts(),
+                kitchen.countProductsInOvens(), assemblyLines.stream().mapToLong(AssemblyLine::getHeldFinishedProductsCount).sum(), Duration.ofNanos(System.nanoTime() - startTime), !drained);
+    }
+
+    /**
+     * Checks the condition every few milliseconds, until it holds or the deadline passes.
+     * @return false if the deadline passed first.
+     */
+    private static boolean awaitUntil(BooleanSupplier condition, long deadline) {
+
+        while (!condition.getAsBoolean()) {
+
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DRAIN_CHECK_INTERVAL_MILLIS));
+        }
+
+        return true;
+    }
+
+    private long countWaitingProducts() {
+        return assemblyLines.stream().mapToLong(AssemblyLine::getWaitingProductsCount).sum();
+    }
+
+    /**
+     * Blocks until the shutdown requested with setEndProgram(true) is over.
+     * @return the shutdown report, or null if it did not finish in time.
+     */
+    public ShutdownReport awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        return shutdownCompleted.await(timeout, unit) ? shutdownReport : null;
+    }
+
+    /**
+     * The traffic of the lines added from now on.
+     * @param loadProfile
+     */
+    public void setLoadProfile(LoadProfile loadProfile) {
+        this.loadProfile = loadProfile;
+    }
+
+    /**
+     * How many consumed products each line added from now on keeps, to make its new ones out of them (0: none).
+     * @param productPoolSize
+     */
+    public void setProductPoolSize(int productPoolSize) {
+        this.productPoolSize = productPoolSize;
+    }
+
+    /**
+     * How long the shutdown may spend draining products before it gives up on them.
+     * @param drainTimeout
+     */
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
     }
 
     /**
@@ -85,21 +284,39 @@ public class AssemblyLineServer {
     public void setEndProgram(boolean endProgram) {
         this.endProgram = endProgram;
         this.startDateTime = null;
+
+        if (endProgram) {
+            endProgramRequested.countDown();
+        }
     }
 
     /**
-     * We go AssemblyLine by AssemblyLine Asking for the number of
-     * Elements in its "waiting" and "finished" lines.
+     * We print a snapshot of the metrics: the rates, latencies and queues of every line, and how full the kitchen is
+     * (it is made of counters; nothing is walked nor locked). Then the oven capacity every line got, and the ovens' cycles.
      */
     public void printStatusAllAssemblyLines() {
-        this.assemblyLines.forEach(AssemblyLine::printStatus); // We do not needed to use, neither implement "countCookedItems" (see design docs).
+        System.out.println(kitchen.getMetrics().snapshot()); // We do not needed to use, neither implement "countCookedItems" (see design docs).
+
+        FairShareScheduler fairShare = kitchen.getFairShare();
+        this.assemblyLines.forEach(line -> System.out.println("Assembly Line #" + line.getId() + ": oven capacity received - "
+                + Math.round(fairShare.getReceivedCapacity(line.getId())) + " cm2·s (" + Math.round(fairShare.getReceivedShare(line.getId()) * 100) + "% of the total, weight " + fairShare.getWeight(line.getId()) + ")"));
+
+        if (kitchen.getAutoscaler() != null) {
+            System.out.println(kitchen.getAutoscaler() + " - ovens now: " + kitchen.getOvens().size());
+        }
+
+        OvenCycles ovenCycles = kitchen.getOvenCycles();
+        if (ovenCycles != null) {
+            System.out.println("Ovens: " + ovenCycles.getFinishedCycles() + " cycles (" + Math.round(ovenCycles.getCyclesPerHour()) + " per hour) - wasted area: "
+                    + Math.round(ovenCycles.getWastedArea()) + " cm2 (" + Math.round(ovenCycles.getWastedAreaFraction() * 100) + "%)");
+        }
     }
 
     public Kitchen getKitchen() {
         return kitchen;
     }
 
-    public List<AssemblyLine> getAssemblyLines() {
+    public AssemblyLineRegistry getAssemblyLines() {
         return assemblyLines;
     }
 
@@ -107,6 +324,9 @@ public class AssemblyLineServer {
      * We kill the process in cold blood; losing state and data.
      */
     public void kill() {
+        if (ingressServer != null) {
+            ingressServer.stop();
+        }
         assemblyLines.forEach(AssemblyLine::kill);
         kitchen.kill();
     }
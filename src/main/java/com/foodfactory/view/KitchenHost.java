@@ -0,0 +1,250 @@
+package com.foodfactory.view;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.exceptions.KitchenRequiredException;
+import com.foodfactory.logging.FullRingPolicy;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.metrics.KitchenAccount;
+import com.foodfactory.scheduling.HashedTimingWheel;
+import com.foodfactory.scheduling.TaskScheduler;
+import com.foodfactory.scheduling.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many factory sites in one JVM: every site is a kitchen of its own (its own config, ovens, stores and lines) with
+ * its AssemblyLineServer, but none of them has threads of its own. They all share:
+ * - one timing wheel, for every timer of every kitchen (the lines' production, the cook times, the autoscalers...).
+ * - one bounded pool of dispatch threads: a kitchen that has products to move gets a turn on it (see
+ *   KitchenDispatcher.runOn()), and gives the thread back when it is done; the turns go in the order they came.
+ * So the threads are the ones given here (plus the ticker of the wheel), whatever the number of kitchens. The only
+ * thread a site may bring is the syncer of its journal, if its config has a JournalDirectory; the lines always
+ * produce on the wheel (the ProducerMode of the config is not used here). The event log is still one for all, so the
+ * sites open at the same time must agree on its EventLogLevel and EventLogFullPolicy; a site that does not is refused.
+ *
+ * What every kitchen takes of the shared threads is in its KitchenAccount.
+ */
+public class KitchenHost {
+
+    private static final long TIMER_TICK_MILLIS = 100; // The same precision of a kitchen with a wheel of its own.
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private final HashedTimingWheel timers;
+    private final ExecutorService dispatchPool;
+    private final Map<String, Site> sites = new LinkedHashMap<>(); // Guarded by this.
+    private LogLevel eventLogLevel = null; // The one of the open sites; guarded by this.
+    private FullRingPolicy eventLogFullPolicy = null; // The same.
+
+    /**
+     * @param dispatchThreads the threads that dispatch the products of every kitchen.
+     * @param timerThreads the threads that run the timers of every kitchen.
+     */
+    public KitchenHost(int dispatchThreads, int timerThreads) {
+
+        this.timers = new HashedTimingWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE, timerThreads);
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.dispatchPool = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "kitchen-host-dispatch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds the kitchen of the given config, on the shared threads, and starts it with an AssemblyLineServer of its own.
+     * @param name of the site; one per host.
+     * @param kitchenBuilder the config of the site (see KitchenBuilder(Properties)).
+     * @return the server of the site: its lines are added, and retired, there.
+     * @throws IllegalArgumentException if the name is taken, or if the config wants the event log other than the
+     * open sites have it: the last one would win for all of them.
+     */
+    public synchronized AssemblyLineServer openSite(String name, KitchenBuilder kitchenBuilder) {
+
+        if (sites.containsKey(name)) {
+            throw new IllegalArgumentException("There is a site named " + name + " already");
+        }
+
+        if (!sites.isEmpty() && (kitchenBuilder.getEventLogLevel() != eventLogLevel || kitchenBuilder.getEventLogFullPolicy() != eventLogFullPolicy)) {
+            throw new IllegalArgumentException("The event log is one for all the sites: " + name + " wants it "
+                    + kitchenBuilder.getEventLogLevel() + "/" + kitchenBuilder.getEventLogFullPolicy()
+                    + ", the open sites have it " + eventLogLevel + "/" + eventLogFullPolicy);
+        }
+
+        KitchenAccount account = new KitchenAccount(name);
+        Kitchen kitchen = kitchenBuilder.buildKitchenStructure(new HostedScheduler(timers, account));
+
+        kitchen.setDispatchPool(turn -> dispatchPool.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                turn.run();
+            } finally {
+                account.recordDispatchTurn(System.nanoTime() - start);
+            }
+        }));
+
+        AssemblyLineServer server;
+        try {
+            server = new AssemblyLineServer(kitchen); // This starts the Kitchen, on the pool.
+        } catch (KitchenRequiredException e) {
+            throw new IllegalStateException(e); // We just built it.
+        }
+        server.setDrainTimeout(kitchenBuilder.getShutdownDrainTimeout());
+        server.setLoadProfile(kitchenBuilder.getLoadProfile());
+        server.setProductPoolSize(kitchenBuilder.getProductPoolSize());
+
+        sites.put(name, new Site(server, account));
+        eventLogLevel = kitchenBuilder.getEventLogLevel();
+        eventLogFullPolicy = kitchenBuilder.getEventLogFullPolicy();
+
+        return server;
+    }
+
+    /**
+     * Shuts the site down (see AssemblyLineServer.shutdown()), on the calling thread; the rest go on as they were.
+     * @param name
+     * @return what could not be drained.
+     */
+    public ShutdownReport closeSite(String name) {
+
+        Site site;
+        synchronized (this) {
+            site = sites.remove(name);
+        }
+
+        if (site == null) {
+            throw new IllegalArgumentException("There is no site named " + name);
+        }
+
+        ShutdownReport report = site.server.shutdown();
+        site.server.getKitchen().getScheduler().stop(); // Its timers that are still in the wheel never run.
+
+        return report;
+    }
+
+    /**
+     * Closes every site, one after the other, and lets the shared threads go.
+     * @return the shutdown report of every site, by its name.
+     */
+    public Map<String, ShutdownReport> shutdown() {
+
+        Map<String, ShutdownReport> reports = new LinkedHashMap<>();
+
+        for (String name : getSiteNames()) {
+            reports.put(name, closeSite(name));
+        }
+
+        dispatchPool.shutdown();
+        timers.stop();
+
+        return reports;
+    }
+
+    /**
+     * @param name
+     * @return null if there is no such site (anymore).
+     */
+    public synchronized AssemblyLineServer getSite(String name) {
+        Site site = sites.get(name);
+        return site == null ? null : site.server;
+    }
+
+    /**
+     * @param name
+     * @return null if there is no such site (anymore).
+     */
+    public synchronized KitchenAccount getAccount(String name) {
+        Site site = sites.get(name);
+        return site == null ? null : site.account;
+    }
+
+    /**
+     * @return the sites open now, in the order they were opened.
+     */
+    public synchronized List<String> getSiteNames() {
+        return Collections.unmodifiableList(new ArrayList<>(sites.keySet()));
+    }
+
+    /**
+     * We print what every site took of the shared threads.
+     */
+    public synchronized void printAccounts() {
+        sites.values().forEach(site -> System.out.println(site.account + " - " + site.server.getAssemblyLines().size() + " lines"));
+    }
+
+    private static final class Site {
+
+        private final AssemblyLineServer server;
+        private final KitchenAccount account;
+
+        Site(AssemblyLineServer server, KitchenAccount account) {
+            this.server = server;
+            this.account = account;
+        }
+    }
+
+    /**
+     * The shared wheel, as one kitchen sees it: it counts the kitchen's timers, and cancelling or stopping only
+     * touches them (the ones already in the wheel just do nothing when they expire).
+     */
+    private static final class HostedScheduler implements TaskScheduler {
+
+        private final TaskScheduler timers;
+        private final KitchenAccount account;
+        private final AtomicLong generation = new AtomicLong(0);
+        private volatile boolean stopped = false;
+
+        HostedScheduler(TaskScheduler timers, KitchenAccount account) {
+            this.timers = timers;
+            this.account = account;
+        }
+
+        @Override
+        public long nanoTime() {
+            return timers.nanoTime();
+        }
+
+        @Override
+        public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+
+            if (stopped) {
+                throw new IllegalStateException("The kitchen's timers have been stopped.");
+            }
+
+            long scheduledGeneration = generation.get();
+            account.recordTimerScheduled();
+
+            return timers.schedule(() -> {
+                if (stopped || generation.get() != scheduledGeneration) {
+                    return; // Cancelled with the rest of the kitchen's.
+                }
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    account.recordTimerRun(System.nanoTime() - start);
+                }
+            }, delay, unit);
+        }
+
+        @Override
+        public void cancelAll() {
+            generation.incrementAndGet();
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.foodfactory.view;
+
+import java.time.Duration;
+
+/**
+ * What was left behind when the AssemblyLineServer shut down.
+ * Every product produced is either delivered or counted in one of the "not drained" buckets;
+ * whatever we cannot find anywhere is reported as lost.
+ */
+public class ShutdownReport {
+
+    private final long produced;
+    private final long delivered;
+    private final long waitingOnLines;
+    private final long inStores;
+    private final long inOvens;
+    private final long heldForOrder;
+    private final Duration elapsed;
+    private final boolean deadlineExceeded;
+
+    public ShutdownReport(long produced, long delivered, long waitingOnLines, long inStores, long inOvens, long heldForOrder, Duration elapsed, boolean deadlineExceeded) {
+        this.produced = produced;
+        this.delivered = delivered;
+        this.waitingOnLines = waitingOnLines;
+        this.inStores = inStores;
+        this.inOvens = inOvens;
+        this.heldForOrder = heldForOrder;
+        this.elapsed = elapsed;
+        this.deadlineExceeded = deadlineExceeded;
+    }
+
+    public long getProduced() {
+        return produced;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getWaitingOnLines() {
+        return waitingOnLines;
+    }
+
+    public long getInStores() {
+        return inStores;
+    }
+
+    public long getInOvens() {
+        return inOvens;
+    }
+
+    /**
+     * Cooked products that could not be delivered because an earlier one of their line was not.
+     * @return
+     */
+    public long getHeldForOrder() {
+        return heldForOrder;
+    }
+
+    /**
+     * Products that are neither delivered nor anywhere in the kitchen.
+     * @return
+     */
+    public long getLost() {
+        return getNotDrained() - waitingOnLines - inStores - inOvens - heldForOrder;
+    }
+
+    /**
+     * Every product produced that did not make it back to its line.
+     * @return
+     */
+    public long getNotDrained() {
+        return produced - delivered;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    @Override
+    public String toString() {
+        return "SHUTDOWN in " + elapsed.toMillis() + "ms" + (deadlineExceeded ? " (drain deadline exceeded)" : "")
+                + " - produced: " + produced
+                + " delivered: " + delivered
+                + " not drained: " + getNotDrained()
+                + " (waiting on lines: " + waitingOnLines
+                + ", in stores: " + inStores
+                + ", in ovens: " + inOvens
+                + ", held for order: " + heldForOrder
+                + ", lost: " + getLost() + ")";
+    }
+}
@@ -0,0 +1,102 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+/**
+ * Plays rounds of the deficit round robin with lines that always have something waiting.
+ */
+class FairShareSchedulerTest {
+
+    /**
+     * One turn of the line: it takes products while its credit pays for them.
+     * @return the oven capacity it took in the turn.
+     */
+    private double playTurn(FairShareScheduler fairShare, Integer lineId, Product product) {
+
+        double taken = 0;
+
+        fairShare.beginTurn(lineId, product);
+
+        while (fairShare.canAfford(lineId, product)) {
+            fairShare.charge(lineId, product);
+            fairShare.recordOvenPlacement(lineId, product);
+            taken += FairShareScheduler.cost(product);
+        }
+
+        return taken;
+    }
+
+    @Test
+    void bigProductsDoNotStarveTheSmallOnesTest() {
+
+        FairShareScheduler fairShare = new FairShareScheduler();
+        Product big = new Food(29, 14L);
+        Product small = new Food(10, 5L);
+
+        for (int round = 0; round < 1000; round++) {
+            playTurn(fairShare, 0, big);
+            playTurn(fairShare, 1, small);
+        }
+
+        assert(Math.abs(fairShare.getReceivedShare(0) - 0.5) < 0.01);
+        assert(Math.abs(fairShare.getReceivedShare(1) - 0.5) < 0.01);
+    }
+
+    @Test
+    void capacityFollowsTheWeightsTest() {
+
+        FairShareScheduler fairShare = new FairShareScheduler();
+        fairShare.setWeight(0, 2.0);
+        Product product = new Food(20, 10L);
+
+        for (int round = 0; round < 1000; round++) {
+            playTurn(fairShare, 0, product);
+            playTurn(fairShare, 1, product);
+        }
+
+        assert(Math.abs(fairShare.getReceivedShare(0) - 2.0 / 3) < 0.01);
+    }
+
+    @Test
+    void anEmptyLineLosesItsCreditTest() {
+
+        FairShareScheduler fairShare = new FairShareScheduler();
+        Product product = new Food(29, 14L);
+
+        fairShare.beginTurn(0, new Food(29, 15L)); // It earns a quantum, but cannot afford its product.
+        fairShare.beginTurn(0, null);
+
+        assert(!fairShare.canAfford(0, new Food(1, 1L)));
+
+        fairShare.beginTurn(0, product);
+        assert(fairShare.canAfford(0, product));
+    }
+
+    @Test
+    void theQuantumFollowsTheTrafficOfTheConfigTest() {
+
+        Properties config = new Properties();
+        config.setProperty("OvensSize", "100");
+        config.setProperty("StoresSize", "50");
+        config.setProperty("EventLogLevel", "OFF");
+        config.setProperty("LoadSizes", "uniform:10:50"); // The lines trim them to 30cm2.
+        config.setProperty("LoadCookTimes", "uniform:30:60");
+
+        Kitchen kitchen = new KitchenBuilder(config).buildKitchenStructure(new DiscreteEventScheduler(), new double[]{100}, new double[0]);
+        FairShareScheduler fairShare = kitchen.getFairShare();
+        Product slowest = new Food(30, 60L); // Four times the cost of the old fixed quantum.
+
+        assert(fairShare.getQuantum() == 30 * 60);
+
+        fairShare.beginTurn(0, slowest);
+        assert(fairShare.canAfford(0, slowest)); // In one round, as with the default traffic.
+
+        kitchen.stop();
+    }
+}
@@ -0,0 +1,99 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Oven;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ovens come and go while the kitchen cooks, on the virtual clock: by hand, and by the load.
+ */
+class KitchenAutoscalerTest {
+
+    private static final LoadProfile PEAK_HOUR = LoadProfile.parse("poisson:2", "uniform:10:30", "uniform:5:15", 1);
+
+    private final DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+    private Kitchen kitchen;
+
+    @BeforeEach
+    void setUp() {
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+        kitchen = new Kitchen(scheduler);
+        kitchen.addOven(new OvenImpl(100));
+        kitchen.addStore(new StoreImpl(50));
+    }
+
+    @Test
+    void aRemovedOvenFinishesWhatItIsCookingTest() {
+
+        Oven extra = new OvenImpl(500);
+        kitchen.addOven(extra);
+        List<AssemblyLine> lines = startLines(4);
+        runFor(Duration.ofMinutes(2));
+
+        CompletableFuture<Oven> removed = kitchen.removeOven(extra);
+
+        assert(!removed.isDone() && ((OvenImpl) extra).getCookingProductsCount() > 0);
+
+        runFor(Duration.ofSeconds(30)); // Longer than any cook time.
+
+        assert(removed.isDone() && ((OvenImpl) extra).isEmpty());
+        assert(kitchen.getOvens().size() == 1);
+
+        lines.forEach(line -> kitchen.retire(line));
+        runFor(Duration.ofMinutes(2));
+
+        for (AssemblyLine line : lines) {
+            assert(line.getFinishedProductsCount() + line.getHeldFinishedProductsCount() == line.getProducedCount()); // Nothing lost.
+        }
+    }
+
+    @Test
+    void ovensAreAddedAtThePeakAndRemovedWhenIdleTest() {
+
+        KitchenAutoscaler autoscaler = new KitchenAutoscaler(kitchen, Duration.ofSeconds(10), 200, 6, 0.2, 0.8, 0.3);
+        kitchen.setAutoscaler(autoscaler);
+        List<AssemblyLine> lines = startLines(4);
+
+        runFor(Duration.ofMinutes(10));
+
+        int peakOvens = kitchen.getOvens().size();
+        assert(autoscaler.getOvensAdded() > 0 && peakOvens > 1 && peakOvens <= 6);
+
+        lines.forEach(line -> kitchen.retire(line)); // The peak is over.
+        runFor(Duration.ofMinutes(10));
+
+        assert(autoscaler.getOvensRemoved() == autoscaler.getOvensAdded());
+        assert(kitchen.getOvens().size() == 1); // Only the one it did not add.
+
+        kitchen.stop();
+    }
+
+    private List<AssemblyLine> startLines(int count) {
+
+        List<AssemblyLine> lines = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            AssemblyLine line = kitchen.plugIn(id -> new AssemblyLine(id, scheduler, PEAK_HOUR));
+            line.start();
+            lines.add(line);
+        }
+
+        return lines;
+    }
+
+    private void runFor(Duration duration) {
+        scheduler.runFor(duration, kitchen::dispatchUntilIdle);
+    }
+}
@@ -0,0 +1,149 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A live kitchen, with many dispatch workers: whatever lines are left, somebody serves them.
+ */
+class KitchenTest {
+
+    private static final int WORKERS = 4;
+    private static final LoadProfile SLOW_LINES = LoadProfile.parse("fixed:0.5", "uniform:10:30", "constant:1", 1);
+    private static final int ROUNDS = 50;
+    private static final int PRODUCTS_PER_LINE = 16;
+
+    @Test
+    void theLinesLeftAfterRetirementsStillDrainTest() throws Exception {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        Kitchen kitchen = new Kitchen();
+        kitchen.addOven(new OvenImpl(300));
+        kitchen.addStore(new StoreImpl(50));
+        kitchen.setDispatchWorkers(WORKERS);
+        kitchen.start();
+
+        List<AssemblyLine> lines = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            AssemblyLine line = kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler(), SLOW_LINES));
+            line.start();
+            lines.add(line);
+        }
+
+        TimeUnit.SECONDS.sleep(1);
+
+        // All but the last one go away: one line is left, #3, in the shard of the worker #3; more than the lines left.
+        for (int i = 0; i < WORKERS - 1; i++) {
+            kitchen.retire(lines.get(i)).get(10, TimeUnit.SECONDS);
+        }
+
+        AssemblyLine last = lines.get(WORKERS - 1);
+        long finished = last.getDeliveredCount() + last.getFinishedProductsCount();
+
+        TimeUnit.SECONDS.sleep(6); // A few products, with the ovens empty in between: nobody else is woken up for them.
+
+        assert(last.getDeliveredCount() + last.getFinishedProductsCount() > finished);
+
+        // It stops, and everything it made comes back.
+        last.stop();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!last.isDrained() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+
+        assert(last.isDrained());
+
+        kitchen.stop();
+        kitchen.kill();
+    }
+
+    @Test
+    void aStolenLineGoesBackToItsOwnerTest() throws InterruptedException {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        // On a clock nobody advances, the one wake up is ours: a line left half done by a thief would just sit there.
+        for (int round = 0; round < ROUNDS; round++) {
+
+            Kitchen kitchen = new Kitchen(new DiscreteEventScheduler());
+            kitchen.setDispatchWorkers(WORKERS);
+            long products = (long) WORKERS * 8 * PRODUCTS_PER_LINE;
+            kitchen.addOven(new OvenImpl(products * 20));
+
+            for (int n = 0; n < WORKERS * 8; n++) {
+                AssemblyLine line = kitchen.plugIn(id -> new AssemblyLine(id, kitchen.getScheduler()));
+                List<Food> waiting = new ArrayList<>();
+                for (long order = 0; order < PRODUCTS_PER_LINE; order++) {
+                    Food food = new Food(20, 10L);
+                    food.setAssemblyLineId(line.getId());
+                    food.setOrderNumber(order);
+                    waiting.add(food);
+                }
+                line.putBackAll(waiting);
+            }
+
+            kitchen.start();
+            kitchen.getDispatcher().signal(KitchenDispatcher.WakeUpReason.CAPACITY_CHANGED);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (kitchen.countProductsInOvens() < products && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+
+            assert(kitchen.countProductsInOvens() == products);
+
+            kitchen.stop();
+            kitchen.kill();
+        }
+    }
+
+    @Test
+    void aProducerBlockedOnARemovedStoreKeepsItsProductTest() throws InterruptedException {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        Kitchen kitchen = new Kitchen(new DiscreteEventScheduler());
+        StoreImpl store = new StoreImpl(20);
+        kitchen.addStore(store);
+        store.put(new Food(20, 10L));
+
+        Food product = new Food(10, 10L);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        new Thread(() -> {
+            try {
+                store.put(product); // No room: it blocks.
+            } catch (IllegalStateException e) {
+                failure.set(e);
+            }
+            done.countDown();
+        }).start();
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        assert(done.getCount() == 1);
+
+        kitchen.removeStore(store);
+
+        // It is told, instead of the product just going nowhere.
+        assert(done.await(1, TimeUnit.SECONDS));
+        assert(failure.get() != null);
+        assert(store.getStoredProductsCount() == 1);
+
+        kitchen.stop();
+    }
+}
@@ -0,0 +1,68 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs batch cycles on the virtual clock: compatible products share a cycle, and come out together.
+ */
+class OvenCyclesTest {
+
+    private final DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+    private final OvenImpl oven = new OvenImpl(100.0);
+    private final List<List<OvenSlot>> finishedBatches = new ArrayList<>();
+
+    private OvenCycles buildCycles(Duration tolerance) {
+        OvenPlacementEngine engine = new OvenPlacementEngine(OvenPlacementEngine.PlacementPolicy.FIRST_FIT);
+        engine.addOven(oven);
+
+        return new OvenCycles(engine, scheduler, tolerance, batch -> {
+            finishedBatches.add(batch);
+            batch.forEach(OvenSlot::release);
+        });
+    }
+
+    @Test
+    void compatibleProductsShareOneCycleTest() {
+
+        OvenCycles cycles = buildCycles(Duration.ofSeconds(2));
+
+        assert(cycles.load(new Food(20, 10L)) != null);
+        scheduler.runFor(Duration.ofSeconds(1), () -> {});
+        assert(cycles.load(new Food(30, 8L)) != null); // 9s left of the cycle: one second overcooked, at most.
+        assert(cycles.load(new Food(10, 5L)) == null); // Too short for this cycle, and there is no idle oven.
+        assert(oven.getCycleDuration().equals(Duration.ofSeconds(10)));
+
+        scheduler.runFor(Duration.ofSeconds(20), () -> {});
+
+        assert(finishedBatches.size() == 1);
+        assert(finishedBatches.get(0).size() == 2);
+        assert(cycles.getFinishedCycles() == 1);
+        assert(!oven.isOn());
+        assert(oven.getFreeSize() == 100.0);
+
+        // 100cm2 for 10s, of which 20cm2 x 10s and 30cm2 x 9s were loaded.
+        assert(Math.abs(cycles.getWastedAreaFraction() - (1000.0 - 200 - 270) / 1000) < 1e-9);
+    }
+
+    @Test
+    void anIdleOvenTakesAnyProductTest() {
+
+        OvenCycles cycles = buildCycles(Duration.ZERO);
+
+        assert(cycles.load(new Food(20, 10L)) != null);
+        scheduler.runFor(Duration.ofSeconds(10), () -> {});
+        assert(cycles.load(new Food(20, 5L)) != null);
+        scheduler.runFor(Duration.ofSeconds(5), () -> {});
+
+        assert(finishedBatches.size() == 2);
+        assert(cycles.getFinishedCycles() == 2);
+    }
+}
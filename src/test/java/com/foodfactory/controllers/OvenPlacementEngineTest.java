@@ -0,0 +1,84 @@
+package com.foodfactory.controllers;
+
+import com.foodfactory.model.Food;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.OvenSlot;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks which oven every policy picks, and that the index follows the products going in and out.
+ */
+class OvenPlacementEngineTest {
+
+    private final OvenImpl small = new OvenImpl(30.0);
+    private final OvenImpl large = new OvenImpl(100.0);
+    private final OvenImpl medium = new OvenImpl(50.0);
+
+    private OvenPlacementEngine buildEngine(OvenPlacementEngine.PlacementPolicy policy) {
+        OvenPlacementEngine engine = new OvenPlacementEngine(policy);
+        engine.addOven(small);
+        engine.addOven(large);
+        engine.addOven(medium);
+        return engine;
+    }
+
+    @Test
+    void everyPolicyPicksItsOvenTest() {
+
+        assert(buildEngine(OvenPlacementEngine.PlacementPolicy.FIRST_FIT).place(new Food(40, 5L)).getOven() == large);
+        assert(buildEngine(OvenPlacementEngine.PlacementPolicy.BEST_FIT).place(new Food(40, 5L)).getOven() == medium);
+        assert(buildEngine(OvenPlacementEngine.PlacementPolicy.WORST_FIT).place(new Food(10, 5L)).getOven() == large);
+    }
+
+    @Test
+    void noRoomIsReportedWithoutExceptionsTest() {
+
+        OvenPlacementEngine engine = buildEngine(OvenPlacementEngine.PlacementPolicy.BEST_FIT);
+
+        assert(engine.place(new Food(101, 5L)) == null);
+    }
+
+    @Test
+    void indexFollowsTheProductsGoingInAndOutTest() {
+
+        OvenPlacementEngine engine = buildEngine(OvenPlacementEngine.PlacementPolicy.FIRST_FIT);
+
+        OvenSlot first = engine.place(new Food(30, 5L));
+        OvenSlot second = engine.place(new Food(30, 5L));
+
+        assert(first.getOven() == small);
+        assert(second.getOven() == large);
+
+        first.release();
+
+        assert(engine.place(new Food(30, 5L)).getOven() == small);
+    }
+
+    @Test
+    void aClosedOvenIsNeverPickedAndAnotherOneTakesItsPlaceTest() {
+
+        for (OvenPlacementEngine.PlacementPolicy policy : OvenPlacementEngine.PlacementPolicy.values()) {
+
+            OvenImpl closing = new OvenImpl(100.0);
+            OvenImpl open = new OvenImpl(30.0);
+            OvenPlacementEngine engine = new OvenPlacementEngine(policy);
+            engine.addOven(closing);
+            engine.addOven(open);
+
+            OvenSlot cooking = engine.place(new Food(80, 5L));
+            assert(cooking.getOven() == closing);
+
+            engine.closeOven(closing);
+            assert(engine.place(new Food(10, 5L)).getOven() == open);
+            assert(engine.place(new Food(25, 5L)) == null); // The closed one has room, but takes nothing.
+
+            cooking.release(); // What was cooking in it still comes out.
+            assert(closing.isEmpty());
+            engine.removeOven(closing);
+
+            OvenImpl added = new OvenImpl(50.0);
+            engine.addOven(added);
+            assert(engine.place(new Food(25, 5L)).getOven() == added);
+        }
+    }
+}
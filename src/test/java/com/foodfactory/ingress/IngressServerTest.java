@@ -0,0 +1,130 @@
+package com.foodfactory.ingress;
+
+import com.foodfactory.controllers.Kitchen;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.model.OvenImpl;
+import com.foodfactory.model.StoreImpl;
+import com.foodfactory.view.AssemblyLineServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Real lines, over the loopback: what they submit comes back finished, in order, through the same connection.
+ */
+class IngressServerTest {
+
+    private AssemblyLineServer server;
+    private IngressServer ingress;
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        Kitchen kitchen = new Kitchen();
+        kitchen.addOven(new OvenImpl(5_000_000)); // Room for the credit window of every line.
+        kitchen.addStore(new StoreImpl(3_000));
+
+        server = new AssemblyLineServer(kitchen);
+        ingress = server.listen(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.kill();
+    }
+
+    @Test
+    void aBatchComesBackFinishedInOrderTest() throws Exception {
+
+        try (IngressClient client = IngressClient.connect(new InetSocketAddress("127.0.0.1", ingress.getPort()))) {
+
+            int line = client.registerAssemblyLine();
+            client.awaitCredits(line, 50);
+
+            int[] sizes = new int[50];
+            int[] cookTimes = new int[50];
+            Arrays.fill(sizes, 10);
+
+            assert(client.submit(line, sizes, cookTimes, 50) == 50);
+            assert(client.getFirstAcceptedOrderNumber() == 0);
+
+            long[] finished = client.awaitFinished(line, 50);
+
+            for (int i = 0; i < finished.length; i++) {
+                assert(finished[i] == i);
+            }
+        }
+
+        assert(ingress.getAcceptedProducts() == 50);
+    }
+
+    @Test
+    void oneSelectorServesHundredsOfConnectionsTest() throws Exception {
+
+        List<IngressClient> clients = new ArrayList<>();
+        int[] lines = new int[300];
+        int[] sizes = {5, 15, 25};
+        int[] cookTimes = {0, 0, 0};
+
+        for (int i = 0; i < lines.length; i++) {
+            IngressClient client = IngressClient.connect(new InetSocketAddress("127.0.0.1", ingress.getPort()));
+            clients.add(client);
+            lines[i] = client.registerAssemblyLine();
+        }
+
+        assert(ingress.getOpenConnections() == lines.length);
+
+        for (int i = 0; i < lines.length; i++) {
+            clients.get(i).awaitCredits(lines[i], 3);
+            assert(clients.get(i).submit(lines[i], sizes, cookTimes, 3) == 3);
+        }
+
+        for (int i = 0; i < lines.length; i++) {
+            assert(Arrays.equals(clients.get(i).awaitFinished(lines[i], 3), new long[] {0, 1, 2}));
+            clients.get(i).close();
+        }
+
+        assert(ingress.getDeliveredProducts() == 3L * lines.length);
+    }
+
+    @Test
+    void aShortFrameOnlyGetsAnErrorTest() throws Exception {
+
+        try (Socket socket = new Socket("127.0.0.1", ingress.getPort())) {
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            socket.setSoTimeout(10_000);
+
+            out.writeInt(5); // A SUBMIT with a line id, and nothing else: the last frame in the buffer.
+            out.writeByte(IngressProtocol.SUBMIT);
+            out.writeInt(0);
+            out.flush();
+
+            int length = in.readInt();
+            assert(in.readByte() == IngressProtocol.ERROR);
+            in.skipBytes(length - 1);
+        }
+
+        // The selector is still there, for everybody else.
+        try (IngressClient client = IngressClient.connect(new InetSocketAddress("127.0.0.1", ingress.getPort()))) {
+
+            int line = client.registerAssemblyLine();
+            client.awaitCredits(line, 1);
+
+            assert(client.submit(line, new int[] {10}, new int[] {0}, 1) == 1);
+            assert(client.awaitFinished(line, 1)[0] == 0);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.foodfactory.journal;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.simulation.FactorySimulation;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The journal survives a crash: what was journaled comes back, in the state it was left.
+ */
+class ProductJournalTest {
+
+    @Test
+    void aCrashedJournalRecoversTheLastStateOfEveryProductTest() throws Exception {
+
+        Path directory = Files.createTempDirectory("journal");
+        long[] now = {0};
+        ProductJournal journal = ProductJournal.open(directory, () -> now[0], Duration.ofMillis(10), Duration.ofHours(1), 16);
+
+        Food delivered = food(0, 10);
+        Food cooking = food(1, 10);
+        Food stored = food(2, 5);
+
+        for (Food product : new Food[] {delivered, cooking, stored}) {
+            journal.append(ProductState.WAITING, product);
+        }
+        journal.append(ProductState.IN_OVEN, delivered);
+        journal.append(ProductState.FINISHED, delivered);
+        journal.append(ProductState.DELIVERED, delivered);
+
+        now[0] = TimeUnit.SECONDS.toNanos(2);
+        journal.append(ProductState.IN_OVEN, cooking);
+        journal.append(ProductState.STORED, stored);
+
+        now[0] = TimeUnit.SECONDS.toNanos(5);
+        journal.append(ProductState.WAITING, food(3, 5));
+        journal.abandon();
+
+        JournalState state = ProductJournal.open(directory, () -> 0, Duration.ofMillis(10), Duration.ofHours(1), 16).getRecoveredState();
+        List<JournaledProduct> inOven = state.getProducts(0, ProductState.IN_OVEN);
+
+        assert(state.getNextOrderNumber(0) == 4 && state.getDeliveredCount(0) == 1);
+        assert(state.getProductCount() == 3);
+        assert(inOven.size() == 1 && inOven.get(0).getOrderNumber() == 1);
+        assert(state.getRemainingCookNanos(inOven.get(0)) == TimeUnit.SECONDS.toNanos(7)); // 10s, minus the 3 it cooked before the crash.
+        assert(state.getProducts(0, ProductState.STORED).get(0).getOrderNumber() == 2);
+        assert(state.getProducts(0, ProductState.WAITING).get(0).getOrderNumber() == 3);
+    }
+
+    @Test
+    void aRestartedFactoryGoesOnWhereTheCrashedOneWasLeftTest() throws Exception {
+
+        Path directory = Files.createTempDirectory("journal");
+
+        FactorySimulation crashed = new FactorySimulation();
+        crashed.getKitchen().setJournal(ProductJournal.open(directory, crashed.getKitchen().getScheduler(), Duration.ofMillis(10), Duration.ofMillis(50), 256));
+        crashed.addAssemblyLine();
+        crashed.addAssemblyLine();
+        crashed.runFor(Duration.ofMinutes(10));
+        crashed.getAssemblyLines().get(0).consumeFinishedProducts(product -> { });
+        crashed.runFor(Duration.ofSeconds(20)); // So there is some of everything: waiting, stored, cooking, finished.
+
+        long produced = crashed.getAssemblyLines().stream().mapToLong(AssemblyLine::getProducedCount).sum();
+        long delivered = crashed.getAssemblyLines().stream().mapToLong(AssemblyLine::getDeliveredCount).sum();
+        long deliveredByLine0 = crashed.getAssemblyLines().get(0).getDeliveredCount();
+        crashed.kill();
+
+        FactorySimulation restarted = new FactorySimulation();
+        restarted.getKitchen().setJournal(ProductJournal.open(directory, restarted.getKitchen().getScheduler(), Duration.ofMillis(10), Duration.ofMillis(50), 256));
+        List<AssemblyLine> lines = restarted.restoreAssemblyLines();
+
+        long restored = restarted.getKitchen().countProductsInOvens() + restarted.getKitchen().countStoredProducts()
+                + lines.stream().mapToLong(line -> line.getWaitingProductsCount() + line.getFinishedProductsCount() + line.getHeldFinishedProductsCount()).sum();
+
+        assert(lines.size() == 2);
+        assert(lines.stream().mapToLong(AssemblyLine::getProducedCount).sum() == produced);
+        assert(restored == produced - delivered); // Nothing lost, nothing twice.
+
+        // What came back into the ovens counts for the fair share of its lines, as if they had just placed it.
+        double received = lines.stream().mapToDouble(line -> restarted.getKitchen().getFairShare().getReceivedCapacity(line.getId())).sum();
+        assert(restarted.getKitchen().countProductsInOvens() > 0 && received > 0);
+
+        restarted.runFor(Duration.ofMinutes(10));
+
+        long[] expected = {deliveredByLine0};
+        boolean[] inOrder = {true};
+        lines.get(0).consumeFinishedProducts(product -> inOrder[0] &= ((Food) product).getOrderNumber() == expected[0]++);
+
+        assert(inOrder[0] && expected[0] > deliveredByLine0);
+
+        restarted.stop();
+    }
+
+    private static Food food(long orderNumber, long cookTime) {
+        Food food = new Food(10, cookTime);
+        food.setOrderNumber(orderNumber);
+        return food;
+    }
+}
@@ -0,0 +1,70 @@
+package com.foodfactory.load;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The traffic must be the same on every run with the same seed, and the arrival processes must keep their rates.
+ */
+class LoadProfileTest {
+
+    private List<String> produce(LoadProfile loadProfile) {
+
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+        AssemblyLine line = new AssemblyLine(0, scheduler, loadProfile);
+        List<String> products = new ArrayList<>();
+
+        line.grantCredits(100);
+        line.start();
+        scheduler.runFor(Duration.ofMinutes(1), () -> {});
+
+        Product product = line.take();
+        while (product != null) {
+            products.add(((Food) product).getCreatedAt() + "/" + product.size() + "/" + product.cookTime());
+            product = line.take();
+        }
+
+        return products;
+    }
+
+    @Test
+    void theSameSeedMakesTheSameProductsTest() {
+
+        LoadProfile loadProfile = LoadProfile.parse("poisson:2", "normal:20:5", "exponential:8", 7);
+
+        List<String> firstRun = produce(loadProfile);
+
+        assert(firstRun.size() == 100); // One per credit: about 120 would be ready in a minute.
+        assert(firstRun.equals(produce(loadProfile)));
+        assert(!firstRun.equals(produce(LoadProfile.parse("poisson:2", "normal:20:5", "exponential:8", 8))));
+    }
+
+    @Test
+    void theArrivalProcessesKeepTheirRatesTest() {
+
+        SplittableRandom random = new SplittableRandom(1);
+        ArrivalProcess poisson = ArrivalProcess.parse("poisson:1000");
+        ArrivalProcess bursts = ArrivalProcess.parse("onoff:1000:1:3"); // One second on, three off.
+
+        long now = 0;
+        for (int i = 0; i < 100_000; i++) {
+            now += poisson.nextDelayNanos(now, random);
+        }
+        assert(Math.abs(now / 1e9 - 100) < 2); // 100.000 products at 1000/s: about 100 seconds.
+
+        now = 0;
+        for (int i = 0; i < 10_000; i++) {
+            now += bursts.nextDelayNanos(now, random);
+            assert(now % 4_000_000_000L < 1_000_000_000L); // Nothing arrives while it is off.
+        }
+        assert(Math.abs(now / 1e9 - 37) < 1); // 10 seconds on: nine whole periods, and the tenth burst.
+    }
+}
@@ -0,0 +1,81 @@
+package com.foodfactory.logging;
+
+import com.foodfactory.model.Food;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks what the writer prints, what the level filters out, and what each policy does with a full ring.
+ */
+class EventLogTest {
+
+    private Food buildProduct(long orderNumber) {
+        Food food = new Food(20, 10L);
+        food.setAssemblyLineId(3);
+        food.setOrderNumber(orderNumber);
+        return food;
+    }
+
+    @Test
+    void writesTheEnabledEventsInOrderTest() {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EventLog log = new EventLog(16, new PrintStream(output), LogLevel.DEBUG, FullRingPolicy.BLOCK);
+
+        for (long order = 0; order < 100; order++) {
+            log.log(EventType.PRODUCT_COOKING, buildProduct(order));
+        }
+        log.setLevel(LogLevel.INFO);
+        log.log(EventType.PRODUCT_FINISHED, buildProduct(0)); // DEBUG: filtered out.
+        log.log(EventType.LINE_PARKED, 3, 0, 0, 0);
+
+        assert(log.flush(5, TimeUnit.SECONDS));
+        log.close();
+
+        String[] lines = output.toString().split(System.lineSeparator());
+
+        assert(lines.length == 101); // Nothing was dropped: the producer waited for the writer.
+        assert(lines[42].endsWith("COOKING product #: 42 from lane #: 3 - size: 20.0 cooking time: 10"));
+        assert(lines[100].endsWith("Production STOPPED in Assembly line: 3 (no credits)"));
+        assert(log.getDroppedEvents() == 0);
+    }
+
+    @Test
+    void aFullRingDropsWithoutWaitingTest() throws InterruptedException {
+
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+
+        // The writer gets stuck on the first print, so the ring fills up behind it.
+        PrintStream slowOutput = new PrintStream(new ByteArrayOutputStream()) {
+            @Override
+            public void print(Object text) {
+                writerBlocked.countDown();
+                try {
+                    releaseWriter.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        EventLog log = new EventLog(8, slowOutput, LogLevel.DEBUG, FullRingPolicy.DROP);
+
+        log.log(EventType.PRODUCT_ADDED, buildProduct(0));
+        assert(writerBlocked.await(5, TimeUnit.SECONDS));
+
+        for (long order = 1; order <= 20; order++) {
+            log.log(EventType.PRODUCT_ADDED, buildProduct(order));
+        }
+
+        assert(log.getDroppedEvents() == 12); // 8 slots; the other 12 events were dropped.
+
+        releaseWriter.countDown();
+        assert(log.flush(5, TimeUnit.SECONDS));
+        log.close();
+    }
+}
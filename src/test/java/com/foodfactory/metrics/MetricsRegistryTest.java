@@ -0,0 +1,55 @@
+package com.foodfactory.metrics;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.simulation.FactorySimulation;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+/**
+ * Reads the figures of a simulated factory, from the snapshot and from the MXBeans.
+ */
+class MetricsRegistryTest {
+
+    @Test
+    void aSnapshotAddsUpWithTheLinesTest() {
+
+        FactorySimulation simulation = new FactorySimulation();
+        AssemblyLine line = simulation.addAssemblyLine();
+        simulation.runFor(Duration.ofHours(1));
+
+        LineMetricsSnapshot lineSnapshot = simulation.getKitchen().getMetrics().snapshot().getAssemblyLines().get(0);
+
+        assert(lineSnapshot.getArrivals() == line.getProducedCount());
+        assert(lineSnapshot.getCompletions() == line.getFinishedProductsCount() + line.getHeldFinishedProductsCount());
+        assert(lineSnapshot.getArrivalRate() > 0.2 && lineSnapshot.getArrivalRate() < 0.34); // A product every 3 to 5 seconds.
+        assert(lineSnapshot.getLatencyP50Millis() >= 5000); // Nothing cooks in less than five seconds.
+        assert(lineSnapshot.getLatencyP50Millis() <= lineSnapshot.getLatencyP99Millis());
+        assert(lineSnapshot.getLatencyP99Millis() <= lineSnapshot.getLatencyMaxMillis());
+
+        simulation.stop();
+    }
+
+    @Test
+    void theLinesArePublishedAsMXBeansTest() throws Exception {
+
+        FactorySimulation simulation = new FactorySimulation();
+        MetricsRegistry metrics = simulation.getKitchen().getMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        metrics.registerMBeans();
+        simulation.addAssemblyLine();
+        simulation.runFor(Duration.ofMinutes(10));
+
+        ObjectName line = new ObjectName("com.foodfactory:type=AssemblyLine,kitchen=" + metrics.getKitchenName() + ",id=0");
+
+        assert((Long) server.getAttribute(line, "Arrivals") == simulation.getAssemblyLines().get(0).getProducedCount());
+
+        simulation.stop(); // The kitchen takes its beans out.
+
+        assert(!server.isRegistered(line));
+    }
+}
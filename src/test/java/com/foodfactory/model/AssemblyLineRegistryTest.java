@@ -0,0 +1,74 @@
+package com.foodfactory.model;
+
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lines come and go from many threads: every one gets an id of its own, and is found by it until it leaves.
+ */
+class AssemblyLineRegistryTest {
+
+    private final DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+
+    @Test
+    void linesAddedAtOnceGetAnIdEachTest() throws Exception {
+
+        AssemblyLineRegistry registry = new AssemblyLineRegistry();
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1500; i++) {
+                    AssemblyLine line = registry.register(id -> new AssemblyLine(id, scheduler));
+                    ids.add(line.getId());
+                    if (i % 3 == 0) {
+                        registry.remove(line); // Some leave at once: their ids are not handed out again.
+                    }
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert(ids.size() == 6000);
+        assert(registry.size() == 4000);
+        assert(registry.register(id -> new AssemblyLine(id, scheduler)).getId() == 6000);
+    }
+
+    @Test
+    void aLineThatLeftIsNotFoundAnymoreTest() {
+
+        AssemblyLineRegistry registry = new AssemblyLineRegistry();
+        List<AssemblyLine> lines = new ArrayList<>();
+
+        for (int i = 0; i < 3000; i++) { // More than one chunk of ids.
+            lines.add(registry.register(id -> new AssemblyLine(id, scheduler)));
+        }
+
+        for (int id = 0; id < 2048; id++) { // The first two chunks go away whole.
+            assert(registry.remove(lines.get(id)));
+        }
+        assert(!registry.remove(lines.get(0)));
+
+        assert(registry.get(0) == null && registry.get(2047) == null);
+        assert(registry.get(2048) == lines.get(2048) && registry.get(2999) == lines.get(2999));
+        assert(registry.get(3000) == null && registry.get(-1) == null);
+
+        Set<AssemblyLine> walked = new HashSet<>();
+        registry.forEach(line -> {
+            assert(walked.add(line)); // Once each.
+        });
+
+        assert(walked.size() == 952 && walked.containsAll(lines.subList(2048, 3000)));
+    }
+}
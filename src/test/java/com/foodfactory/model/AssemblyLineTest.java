@@ -0,0 +1,88 @@
+package com.foodfactory.model;
+
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.scheduling.DiscreteEventScheduler;
+import com.foodfactory.scheduling.HashedTimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A line on the virtual clock: it makes one product per credit, and parks (with nothing scheduled) without them.
+ * On a thread of its own, the same.
+ */
+class AssemblyLineTest {
+
+    @Test
+    void aLineWithoutCreditsParksAndAsksForThemTest() {
+
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+        AssemblyLine line = new AssemblyLine(0, scheduler);
+        AtomicInteger requests = new AtomicInteger(0);
+        line.setCreditsWantedListener(requests::incrementAndGet);
+
+        line.start();
+        scheduler.runFor(Duration.ofMinutes(1), () -> {});
+
+        assert(line.getProducedCount() == 0);
+        assert(line.isHalted());
+        assert(requests.get() == 1);
+        assert(scheduler.getProcessedEvents() == 1); // A parked line costs nothing: no timer goes off for it.
+        assert(line.getParkedNanos() >= Duration.ofSeconds(55).toNanos());
+    }
+
+    @Test
+    void everyCreditIsOneProductTest() {
+
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+        AssemblyLine line = new AssemblyLine(0, scheduler);
+
+        line.start();
+        scheduler.runFor(Duration.ofSeconds(10), () -> {});
+        line.grantCredits(3);
+        scheduler.runFor(Duration.ofMinutes(1), () -> {});
+
+        assert(line.getProducedCount() == 3);
+        assert(line.getWaitingProductsCount() == 3);
+        assert(line.getCredits() == 0);
+        assert(line.isHalted());
+    }
+
+    @Test
+    void aLineOnItsOwnThreadParksItTooTest() throws InterruptedException {
+
+        HashedTimingWheel clock = new HashedTimingWheel(100, TimeUnit.MILLISECONDS, 512, 1);
+        ExecutorService producers = AssemblyLine.ProducerMode.PLATFORM_THREADS.newExecutor();
+        AssemblyLine line = new AssemblyLine(0, clock, LoadProfile.parse("fixed:200", "constant:10", "constant:5", 1));
+        AtomicInteger requests = new AtomicInteger(0);
+        line.setCreditsWantedListener(requests::incrementAndGet);
+        line.setProducers(producers);
+
+        line.start();
+        awaitUntil(line::isHalted);
+
+        assert(line.getProducedCount() == 0);
+        assert(requests.get() == 1);
+
+        line.grantCredits(5);
+        awaitUntil(() -> line.getProducedCount() == 5 && line.isHalted());
+
+        assert(line.getWaitingProductsCount() == 5);
+
+        line.stop();
+        producers.shutdown();
+
+        assert(producers.awaitTermination(1, TimeUnit.SECONDS)); // The stop woke it up; it did not wait for a credit.
+        clock.stop();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+    }
+}
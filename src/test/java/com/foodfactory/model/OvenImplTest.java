@@ -0,0 +1,92 @@
+package com.foodfactory.model;
+
+import com.foodfactory.exceptions.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks that the oven never gets overfilled, even when many threads race for the last room.
+ */
+class OvenImplTest {
+
+    @Test
+    void fractionalSizesAreAccountedExactlyTest() throws CapacityExceededException {
+
+        OvenImpl oven = new OvenImpl(1.5);
+
+        oven.put(new Food(1, 1L));
+        assert(oven.tryPut(new Food(1, 1L)) == null);
+        assert(oven.getFreeSize() == 0.5);
+
+        try {
+            oven.put(new Food(1, 1L));
+            assert(false);
+        } catch (CapacityExceededException e) {
+            assert(oven.getCookingProductsCount() == 1);
+        }
+    }
+
+    @Test
+    void slotsFreeTheirRoomOnlyOnceTest() {
+
+        OvenImpl oven = new OvenImpl(50.0);
+        Food food = new Food(30, 5L);
+
+        OvenSlot slot = oven.tryPut(food);
+
+        assert(slot != null);
+        assert(oven.getOccupiedSize() == 30);
+        assert(slot.release());
+        assert(!slot.release());
+
+        oven.take(food); // Already out, nothing happens.
+
+        assert(oven.getOccupiedSize() == 0);
+        assert(oven.getCookingProductsCount() == 0);
+    }
+
+    @Test
+    void concurrentPutsNeverOverfillTheOvenTest() throws InterruptedException {
+
+        OvenImpl oven = new OvenImpl(100.0);
+        ConcurrentLinkedQueue<OvenSlot> slots = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < 1000; j++) {
+                    OvenSlot slot = oven.tryPut(new Food(3, 1L));
+                    if (slot != null) {
+                        slots.add(slot);
+                    }
+                    assert(oven.getOccupiedSize() <= oven.size());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 33 products of size 3 fit in 100; not a single one more.
+        assert(slots.size() == 33);
+        assert(oven.getCookingProductsCount() == 33);
+
+        slots.forEach(OvenSlot::release);
+        assert(oven.getOccupiedSize() == 0);
+    }
+}
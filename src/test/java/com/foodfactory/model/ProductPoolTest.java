@@ -0,0 +1,57 @@
+package com.foodfactory.model;
+
+import com.foodfactory.simulation.FactorySimulation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+/**
+ * Products consumed from a line come back as new products of the same line.
+ */
+class ProductPoolTest {
+
+    @Test
+    void aReleasedProductIsReusedAsANewOneTest() {
+
+        ProductPool pool = new ProductPool(1);
+        Food first = pool.acquire(10, 5);
+        first.setOrderNumber(7);
+
+        pool.release(first);
+        pool.release(new Food(20, 5)); // The pool is full: this one is left to the GC.
+
+        Food second = pool.acquire(25, 8);
+
+        assert(second == first);
+        assert(second.size() == 25 && second.cookTime().equals(Duration.ofSeconds(8)));
+        assert(second.getOrderNumber() == 0); // Nothing of its former life is left.
+        assert(pool.getCreatedCount() == 1 && pool.getReusedCount() == 1);
+    }
+
+    @Test
+    void aPooledLineDeliversEverythingInOrderTest() {
+
+        FactorySimulation simulation = new FactorySimulation();
+        simulation.setProductPoolSize(64);
+        AssemblyLine line = simulation.addAssemblyLine();
+        long[] lastOrder = {-1};
+        boolean[] inOrder = {true};
+
+        for (int second = 0; second < 3600; second++) {
+            simulation.runFor(Duration.ofSeconds(1));
+            line.consumeFinishedProducts(product -> {
+                inOrder[0] &= ((Food) product).getOrderNumber() == lastOrder[0] + 1;
+                lastOrder[0] = ((Food) product).getOrderNumber();
+            });
+        }
+
+        ProductPool pool = line.getProductPool();
+
+        assert(inOrder[0]);
+        assert(line.getDeliveredCount() == lastOrder[0] + 1);
+        assert(pool.getCreatedCount() + pool.getReusedCount() == line.getProducedCount());
+        assert(pool.getReusedCount() > pool.getCreatedCount()); // Most of the hour was made out of recycled products.
+
+        simulation.stop();
+    }
+}
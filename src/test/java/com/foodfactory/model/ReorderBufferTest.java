@@ -0,0 +1,91 @@
+package com.foodfactory.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that only the contiguous prefix of the products is released, whatever the order they arrive in.
+ */
+class ReorderBufferTest {
+
+    @Test
+    void holdsProductsBehindTheGapTest() {
+
+        ReorderBuffer buffer = new ReorderBuffer();
+        Food first = new Food(10, 5L);
+        Food second = new Food(10, 5L);
+        Food third = new Food(10, 5L);
+
+        buffer.put(2, third);
+        buffer.put(1, second);
+
+        assert(buffer.poll() == null);
+        assert(buffer.getGap() == 1);
+        assert(buffer.getHeldCount() == 2);
+
+        buffer.put(0, first);
+
+        assert(buffer.getGap() == 0);
+        assert(buffer.getHeldCount() == 0);
+        assert(buffer.poll() == first);
+        assert(buffer.poll() == second);
+        assert(buffer.poll() == third);
+        assert(buffer.poll() == null);
+    }
+
+    @Test
+    void aBatchIsReleasedInOrderTest() {
+
+        ReorderBuffer buffer = new ReorderBuffer();
+        List<Food> batch = new ArrayList<>();
+
+        for (long order = 40; order >= 0; order--) {
+            Food food = new Food(10, 5L);
+            food.setOrderNumber(order);
+            batch.add(food);
+        }
+
+        buffer.putAll(batch, product -> ((Food)product).getOrderNumber());
+
+        for (long order = 0; order <= 40; order++) {
+            assert(((Food)buffer.poll()).getOrderNumber() == order);
+        }
+        assert(buffer.poll() == null);
+    }
+
+    @Test
+    void growsWhenProductsArriveFarAheadTest() {
+
+        ReorderBuffer buffer = new ReorderBuffer();
+        int products = 1000;
+
+        // Every odd product first, then the even ones backwards: the head is blocked all along.
+        for (int sequence = 1; sequence < products; sequence += 2) {
+            buffer.put(sequence, new Food(10, (long) sequence));
+        }
+        for (int sequence = products - 2; sequence >= 0; sequence -= 2) {
+            buffer.put(sequence, new Food(10, (long) sequence));
+        }
+
+        for (int sequence = 0; sequence < products; sequence++) {
+            assert(buffer.poll().cookTime().getSeconds() == sequence);
+        }
+        assert(buffer.getNextSequence() == products);
+    }
+
+    @Test
+    void rejectsDuplicatesTest() {
+
+        ReorderBuffer buffer = new ReorderBuffer();
+        buffer.put(0, new Food(10, 5L));
+
+        try {
+            buffer.put(0, new Food(10, 5L));
+            assert(false);
+        } catch (IllegalStateException e) {
+            assert(buffer.getReleasedCount() == 1);
+        }
+    }
+}
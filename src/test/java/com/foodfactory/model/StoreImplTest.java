@@ -0,0 +1,86 @@
+package com.foodfactory.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the Store contract: FIFO order, no silent drops, and producers let in by order of arrival.
+ */
+class StoreImplTest {
+
+    @Test
+    void tryPutReportsWhenThereIsNoRoomTest() {
+
+        StoreImpl store = new StoreImpl(25.0);
+        Food first = new Food(20, 5L);
+        Food second = new Food(10, 5L);
+
+        assert(store.tryPut(first));
+        assert(!store.tryPut(second));
+        assert(store.getStoredProductsCount() == 1);
+
+        store.take(first); // Targeted removal frees the room.
+
+        assert(store.tryPut(second));
+        assert(store.take() == second);
+        assert(store.take() == null);
+        assert(store.getOccupiedSize() == 0);
+    }
+
+    @Test
+    void offerGivesUpAfterTheTimeoutTest() throws InterruptedException {
+
+        StoreImpl store = new StoreImpl(10.0);
+        store.put(new Food(10, 5L));
+
+        long start = System.nanoTime();
+        assert(!store.offer(new Food(5, 5L), 50, TimeUnit.MILLISECONDS));
+        assert(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        // Nobody is left waiting after a timeout.
+        store.take();
+        assert(store.tryPut(new Food(5, 5L)));
+    }
+
+    @Test
+    void blockedProducersGetInInArrivalOrderTest() throws InterruptedException {
+
+        StoreImpl store = new StoreImpl(30.0);
+        Food blocker = new Food(30, 5L);
+        Food big = new Food(20, 5L);
+        Food small = new Food(5, 5L);
+        List<Product> stored = new CopyOnWriteArrayList<>();
+
+        store.put(blocker);
+
+        CountDownLatch bigDone = startProducer(store, big, stored);
+        TimeUnit.MILLISECONDS.sleep(100);
+        CountDownLatch smallDone = startProducer(store, small, stored);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // Both wait; the small one would fit first, but the big one arrived before.
+        assert(stored.isEmpty());
+        assert(store.take() == blocker);
+
+        assert(bigDone.await(1, TimeUnit.SECONDS));
+        assert(smallDone.await(1, TimeUnit.SECONDS));
+        assert(store.take() == big);
+        assert(store.take() == small);
+    }
+
+    private static CountDownLatch startProducer(StoreImpl store, Product product, List<Product> stored) {
+        CountDownLatch done = new CountDownLatch(1);
+
+        new Thread(() -> {
+            store.put(product);
+            stored.add(product);
+            done.countDown();
+        }).start();
+
+        return done;
+    }
+}
@@ -0,0 +1,75 @@
+package com.foodfactory.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the timing wheel fires, cancels and bulk-cancels its timers.
+ */
+class HashedTimingWheelTest {
+
+    @Test
+    void firesManyTimersWithFewThreadsTest() throws InterruptedException {
+
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, 2);
+        CountDownLatch fired = new CountDownLatch(500);
+        int threadsBefore = Thread.activeCount();
+
+        // Delays longer than a lap of the wheel (8 x 10ms) must wait for their rounds.
+        for (int i = 0; i < 500; i++) {
+            wheel.schedule(fired::countDown, i % 200, TimeUnit.MILLISECONDS);
+        }
+
+        assert(Thread.activeCount() <= threadsBefore + 2);
+        assert(fired.await(5, TimeUnit.SECONDS));
+
+        wheel.stop();
+    }
+
+    @Test
+    void cancelledTimersNeverFireTest() throws InterruptedException {
+
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, 1);
+        AtomicInteger fired = new AtomicInteger(0);
+
+        Timeout cancelled = wheel.schedule(fired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        Timeout kept = wheel.schedule(fired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+        assert(cancelled.cancel());
+        assert(!cancelled.cancel());
+
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        assert(fired.get() == 1);
+        assert(kept.isExpired());
+        assert(cancelled.isCancelled());
+
+        wheel.stop();
+    }
+
+    @Test
+    void cancelAllDropsEveryPendingTimerTest() throws InterruptedException {
+
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, 1);
+        AtomicInteger fired = new AtomicInteger(0);
+
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(fired::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+        }
+
+        wheel.cancelAll();
+
+        // The wheel keeps working after a bulk cancel.
+        CountDownLatch afterCancel = new CountDownLatch(1);
+        wheel.schedule(afterCancel::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assert(afterCancel.await(1, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(200);
+        assert(fired.get() == 0);
+
+        wheel.stop();
+    }
+}
@@ -0,0 +1,44 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.load.LoadProfile;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Many kitchens at once, each on its own clock: they must come out as if they had run one after the other.
+ */
+class CapacityPlannerTest {
+
+    private static final LoadProfile RUSH_HOUR = LoadProfile.parse("poisson:1", "uniform:10:30", "uniform:5:15", 5);
+
+    @Test
+    void aSweepOnManyThreadsGetsWhatItGetsOnOneTest() {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        List<CapacityPlanner.Configuration> grid = CapacityPlanner.grid(new int[] {1, 3}, new double[] {200, 600}, new int[] {1}, new double[] {50, 400});
+
+        List<CapacityPlanner.Result> parallel = new CapacityPlanner(4, Duration.ofMinutes(5), RUSH_HOUR, 0, 4).sweep(grid);
+        List<CapacityPlanner.Result> sequential = new CapacityPlanner(4, Duration.ofMinutes(5), RUSH_HOUR, 0, 1).sweep(grid);
+
+        assert(parallel.size() == grid.size());
+        for (int i = 0; i < grid.size(); i++) {
+            assert(parallel.get(i).getConfiguration() == grid.get(i)); // In the order of the grid.
+            assert(parallel.get(i).getReport().getCompleted() == sequential.get(i).getReport().getCompleted());
+            assert(parallel.get(i).getReport().getHaltFraction() == sequential.get(i).getReport().getHaltFraction());
+        }
+
+        // The smallest kitchen cannot keep up with the traffic; the biggest one can, but it is not the cheapest that does.
+        CapacityPlanner.Result smallest = parallel.get(0);
+        CapacityPlanner.Result biggest = parallel.get(grid.size() - 1);
+        assert(smallest.getReport().getHaltFraction() > biggest.getReport().getHaltFraction());
+
+        CapacityPlanner.Result cheapest = CapacityPlanner.cheapest(parallel, new CapacityPlanner.Target(0, null, 0.1));
+        assert(cheapest != null && cheapest.getConfiguration().getCost() < biggest.getConfiguration().getCost());
+        assert(CapacityPlanner.cheapest(parallel, new CapacityPlanner.Target(1000, null, 1)) == null); // Nobody cooks that fast.
+    }
+}
@@ -0,0 +1,74 @@
+package com.foodfactory.simulation;
+
+import com.foodfactory.model.AssemblyLine;
+import com.foodfactory.model.Food;
+import com.foodfactory.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the factory on the virtual clock: hours of production must take a few seconds.
+ */
+class FactorySimulationTest {
+
+    @Test
+    void replaysHoursOfProductionInSecondsTest() {
+
+        FactorySimulation simulation = new FactorySimulation();
+        long wallStart = System.nanoTime();
+
+        simulation.addAssemblyLine();
+        simulation.runFor(Duration.ofSeconds(3));
+        simulation.addAssemblyLine();
+        simulation.runFor(Duration.ofHours(3));
+
+        Duration wallTime = Duration.ofNanos(System.nanoTime() - wallStart);
+
+        assert(simulation.getElapsedTime().equals(Duration.ofHours(3).plusSeconds(3)));
+        assert(wallTime.compareTo(Duration.ofMinutes(1)) < 0);
+
+        // A product every 3 to 5 seconds, per line.
+        int finishedProducts = simulation.getAssemblyLines().stream().mapToInt(line -> line.getFinishedProductsCount()).sum();
+        assert(finishedProducts > 1000);
+
+        // Every line hands its products back in the order they were produced, with no gaps.
+        simulation.getAssemblyLines().forEach(line -> {
+            long expectedOrderNumber = 0;
+            Product product = line.pollFinishedProduct();
+
+            while (product != null) {
+                assert(((Food) product).getOrderNumber() == expectedOrderNumber++);
+                product = line.pollFinishedProduct();
+            }
+        });
+
+        simulation.stop();
+    }
+
+    @Test
+    void aRetiredLineLeavesOnceItsProductsAreBackTest() {
+
+        FactorySimulation simulation = new FactorySimulation();
+        AssemblyLine staying = simulation.addAssemblyLine();
+        AssemblyLine leaving = simulation.addAssemblyLine();
+        simulation.runFor(Duration.ofMinutes(5));
+
+        CompletableFuture<AssemblyLine> retired = simulation.retireAssemblyLine(leaving);
+        long produced = leaving.getProducedCount();
+
+        assert(!retired.isDone()); // Some of its products are still cooking.
+
+        simulation.runFor(Duration.ofMinutes(5));
+
+        assert(retired.isDone() && retired.join() == leaving);
+        assert(!simulation.getAssemblyLines().contains(leaving) && simulation.getAssemblyLines().get(leaving.getId()) == null);
+        assert(leaving.getProducedCount() == produced); // It made nothing more.
+        assert(leaving.getFinishedProductsCount() + leaving.getHeldFinishedProductsCount() == produced); // Everything came back.
+        assert(simulation.getAssemblyLines().size() == 1 && staying.getProducedCount() > produced);
+        assert(simulation.addAssemblyLine().getId() == 2); // Its id is not handed out again.
+
+        simulation.stop();
+    }
+}
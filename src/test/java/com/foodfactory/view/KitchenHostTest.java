@@ -0,0 +1,102 @@
+package com.foodfactory.view;
+
+import com.foodfactory.builders.KitchenBuilder;
+import com.foodfactory.logging.EventLog;
+import com.foodfactory.logging.LogLevel;
+import com.foodfactory.metrics.KitchenAccount;
+import com.foodfactory.model.AssemblyLine;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dozen sites in one JVM, each with its own config and lines, on the same few threads.
+ */
+class KitchenHostTest {
+
+    private static final int SITES = 12;
+    private static final int DISPATCH_THREADS = 2;
+    private static final int TIMER_THREADS = 1;
+
+    @Test
+    void manySitesShareTheSameThreadsTest() throws InterruptedException {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+        Set<Thread> threadsBefore = new HashSet<>(Thread.getAllStackTraces().keySet());
+
+        KitchenHost host = new KitchenHost(DISPATCH_THREADS, TIMER_THREADS);
+
+        for (int i = 0; i < SITES; i++) {
+            AssemblyLineServer site = host.openSite("site-" + i, new KitchenBuilder(siteConfig(100 + 10 * i)));
+            site.addAssemblyLine();
+            site.addAssemblyLine();
+        }
+
+        TimeUnit.SECONDS.sleep(3);
+
+        Set<Thread> newThreads = new HashSet<>(Thread.getAllStackTraces().keySet());
+        newThreads.removeAll(threadsBefore);
+        assert(newThreads.size() <= DISPATCH_THREADS + TIMER_THREADS + 1); // The ticker of the wheel; none per site.
+
+        for (int i = 0; i < SITES; i++) {
+            AssemblyLineServer site = host.getSite("site-" + i);
+            KitchenAccount account = host.getAccount("site-" + i);
+
+            assert(site.getKitchen().getOvens().get(0).size() == 100 + 10 * i); // Its own config.
+            assert(site.getAssemblyLines().stream().mapToLong(AssemblyLine::getFinishedProductsCount).sum() > 0);
+            assert(account.getDispatchTurns() > 0 && account.getTimersRun() > 0 && account.getBusyNanos() > 0);
+        }
+
+        Map<String, ShutdownReport> reports = host.shutdown();
+
+        assert(reports.size() == SITES && host.getSiteNames().isEmpty());
+        reports.values().forEach(report -> {
+            assert(report.getProduced() > 0 && report.getLost() == 0 && report.getNotDrained() == 0);
+        });
+    }
+
+    @Test
+    void aSiteThatWantsAnotherEventLogIsRefusedTest() {
+
+        EventLog.getInstance().setLevel(LogLevel.OFF);
+
+        KitchenHost host = new KitchenHost(DISPATCH_THREADS, TIMER_THREADS);
+        host.openSite("quiet", new KitchenBuilder(siteConfig(100)));
+
+        Properties verbose = siteConfig(100);
+        verbose.setProperty("EventLogLevel", "INFO");
+
+        boolean refused = false;
+        try {
+            host.openSite("verbose", new KitchenBuilder(verbose));
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        }
+
+        assert(refused);
+        assert(host.getSiteNames().size() == 1);
+
+        host.openSite("quiet-too", new KitchenBuilder(siteConfig(200))); // The same log as the rest: welcome.
+        assert(host.getSiteNames().size() == 2);
+
+        host.shutdown();
+    }
+
+    private static Properties siteConfig(int ovenSize) {
+
+        Properties config = new Properties();
+
+        config.setProperty("OvensSize", String.valueOf(ovenSize));
+        config.setProperty("StoresSize", "50");
+        config.setProperty("EventLogLevel", "OFF");
+        config.setProperty("ShutdownDrainSeconds", "5");
+        config.setProperty("LoadArrivals", "fixed:5");
+        config.setProperty("LoadCookTimes", "constant:1");
+
+        return config;
+    }
+}